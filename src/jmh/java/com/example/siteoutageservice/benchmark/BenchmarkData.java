@@ -0,0 +1,109 @@
+package com.example.siteoutageservice.benchmark;
+
+import ch.qos.logback.classic.Level;
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import com.example.siteoutageservice.web.RequestCoalescer;
+import com.example.siteoutageservice.web.ResponseCache;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic outage and site data for the benchmarks, generated from a fixed seed.
+ */
+final class BenchmarkData {
+
+    static final String SITE_ID = "benchmark-site";
+    static final String TIME_FILTER = "2022-01-01T00:00:00.000Z";
+
+    private static final DateTimeFormatter KRAKEN_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+    private static final long FROM = Instant.parse("2021-01-01T00:00:00Z").toEpochMilli();
+    private static final long UNTIL = Instant.parse("2023-01-01T00:00:00Z").toEpochMilli();
+
+    private BenchmarkData(){
+    }
+
+    /**
+     * @param duplicateIdRate fraction of devices that reuse the id of an earlier device on the site
+     */
+    static Site site(final int deviceCount, final double duplicateIdRate, final long seed){
+        final SplittableRandom random = new SplittableRandom(seed);
+        final List<Device> devices = new ArrayList<>(deviceCount);
+        for (int i = 0; i < deviceCount; i++) {
+            final String id = i > 0 && random.nextDouble() < duplicateIdRate
+                    ? devices.get(random.nextInt(i)).id()
+                    : "site-device-" + i;
+            devices.add(new Device(id, "Device " + i));
+        }
+        return new Site(SITE_ID, "Benchmark Site", devices);
+    }
+
+    /**
+     * Outages spread evenly over 2021-2022, so about half are before {@link #TIME_FILTER}.
+     *
+     * @param matchRatio fraction of outages belonging to one of the site's devices, the rest belong to other sites
+     */
+    static List<Outage> outages(final int outageCount, final Site site, final double matchRatio, final long seed){
+        final SplittableRandom random = new SplittableRandom(seed);
+        final List<Device> devices = List.copyOf(site.devices());
+        final int otherDevices = Math.max(devices.size(), 1_000);
+
+        final List<Outage> outages = new ArrayList<>(outageCount);
+        for (int i = 0; i < outageCount; i++) {
+            final String id = random.nextDouble() < matchRatio
+                    ? devices.get(random.nextInt(devices.size())).id()
+                    : "other-device-" + random.nextInt(otherDevices);
+            final long begin = random.nextLong(FROM, UNTIL);
+            final long end = begin + random.nextLong(60_000L, 7 * 86_400_000L);
+            outages.add(new Outage(id, KRAKEN_FORMAT.format(Instant.ofEpochMilli(begin)), KRAKEN_FORMAT.format(Instant.ofEpochMilli(end))));
+        }
+        return outages;
+    }
+
+    /**
+     * KrakenWebClient that serves fixed data without any http calls.
+     */
+    static KrakenWebClient stubClient(final List<Outage> outages, final Site site){
+        return new KrakenWebClient(WebClient.create(), 0, 0, ResponseCache.disabled(), KrakenMetrics.disabled(), 0.5, Duration.ofSeconds(60), RequestCoalescer.disabled()) {
+            @Override
+            public List<Outage> getOutages() {
+                return outages;
+            }
+
+            @Override
+            public Optional<Site> getSiteInfoFor(String siteId) {
+                return Optional.of(site);
+            }
+
+            @Override
+            public Mono<List<Outage>> getOutagesAsync() {
+                return Mono.just(outages);
+            }
+
+            @Override
+            public Mono<Site> getSiteInfoForAsync(String siteId) {
+                return Mono.just(site);
+            }
+        };
+    }
+
+    /**
+     * Keeps per-call info logs and duplicate id warnings from dominating the measurement.
+     */
+    static void silenceLogging(){
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.example.siteoutageservice")).setLevel(Level.OFF);
+    }
+}
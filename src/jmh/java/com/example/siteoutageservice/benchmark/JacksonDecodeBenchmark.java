@@ -0,0 +1,61 @@
+package com.example.siteoutageservice.benchmark;
+
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson decoding of the /outages and /site-info bodies on their own, using an ObjectMapper configured the same
+ * way as the WebClient's codecs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class JacksonDecodeBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int outageCount;
+
+    @Param({"10", "1000", "100000"})
+    public int deviceCount;
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+    private byte[] outagesBody;
+    private byte[] siteBody;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        final Site site = BenchmarkData.site(deviceCount, 0, 42);
+        outagesBody = mapper.writeValueAsBytes(BenchmarkData.outages(outageCount, site, 0.5, 43));
+        siteBody = mapper.writeValueAsBytes(site);
+    }
+
+    @Benchmark
+    public Outage[] decodeOutages() throws IOException {
+        return mapper.readValue(outagesBody, Outage[].class);
+    }
+
+    @Benchmark
+    public Site decodeSite() throws IOException {
+        return mapper.readValue(siteBody, Site.class);
+    }
+}
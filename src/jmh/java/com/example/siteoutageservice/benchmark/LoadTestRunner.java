@@ -0,0 +1,219 @@
+package com.example.siteoutageservice.benchmark;
+
+import com.example.siteoutageservice.SiteOutageServiceApplication;
+import com.example.siteoutageservice.batch.BatchOutageService;
+import com.example.siteoutageservice.batch.BatchReport;
+import com.example.siteoutageservice.batch.SiteResult;
+import com.example.siteoutageservice.simulator.KrakenSimulator;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadInfo;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.example.siteoutageservice.config.WebConfiguration.OUTAGES_ENDPOINT;
+import static com.example.siteoutageservice.config.WebConfiguration.SITE_INFO_ENDPOINT;
+import static com.example.siteoutageservice.config.WebConfiguration.SITE_OUTAGES_ENDPOINT;
+
+/**
+ * Runs the whole application, from its Spring context down to HTTP, against a {@link KrakenSimulator} in the same
+ * JVM, and reports sites per second, per-site latency, allocation rate and peak heap for batches over every
+ * simulated site. Run with:
+ * <p>
+ * {@code ./mvnw -Pbenchmarks test-compile exec:exec "-Dexec.args=-Xmx4g -classpath %classpath com.example.siteoutageservice.benchmark.LoadTestRunner --loadtest.sites=5000 --loadtest.outages=1000000"}
+ * <p>
+ * {@code loadtest.*} options shape the simulated Kraken and the runs; every other option, such as
+ * {@code --kraken.batch.concurrency=32}, configures the application as usual. Latencies are given as {@code none},
+ * {@code fixed:50ms}, {@code uniform:10ms:100ms} or {@code logNormal:20ms:500ms} (median and p99).
+ * <p>
+ * Allocation only counts threads outside the simulator's own. Peak heap is sampled, and includes the simulator's
+ * {@code /outages} body; the heap left after a GC before the first run is printed alongside it for reference.
+ */
+public final class LoadTestRunner {
+
+    private static final Duration SAMPLE_INTERVAL = Duration.ofMillis(10);
+
+    private LoadTestRunner(){
+    }
+
+    public static void main(String[] args) throws Exception {
+        final SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        final KrakenSimulator.Latency latency = latency(option(options, "loadtest.latency", "logNormal:20ms:200ms"));
+        final KrakenSimulator.Settings settings = KrakenSimulator.Settings.DEFAULTS.toBuilder()
+                .seed(Long.parseLong(option(options, "loadtest.seed", "42")))
+                .siteCount(Integer.parseInt(option(options, "loadtest.sites", "1000")))
+                .devicesPerSite(Integer.parseInt(option(options, "loadtest.devices", "20")))
+                .outageCount(Integer.parseInt(option(options, "loadtest.outages", "100000")))
+                .matchRatio(Double.parseDouble(option(options, "loadtest.matchRatio", "0.5")))
+                .outagesLatency(optionalLatency(options, "loadtest.outagesLatency", latency))
+                .siteInfoLatency(optionalLatency(options, "loadtest.siteInfoLatency", latency))
+                .siteOutagesLatency(optionalLatency(options, "loadtest.siteOutagesLatency", latency))
+                .serverErrorRate(Double.parseDouble(option(options, "loadtest.serverErrorRate", "0")))
+                .tooManyRequestsRate(Double.parseDouble(option(options, "loadtest.tooManyRequestsRate", "0")))
+                .retryAfter(DurationStyle.detectAndParse(option(options, "loadtest.retryAfter", "1s")))
+                .paddingBytes(Integer.parseInt(option(options, "loadtest.padding", "0")))
+                .build();
+        final int warmups = Integer.parseInt(option(options, "loadtest.warmups", "1"));
+        final int runs = Integer.parseInt(option(options, "loadtest.runs", "3"));
+
+        try (KrakenSimulator kraken = KrakenSimulator.start(settings)) {
+            //system properties outrank application.properties, while command line options still outrank them
+            System.setProperty("kraken.rest.baseUrl", kraken.baseUrl());
+            System.setProperty("kraken.rest.apiKey", "load-test");
+            //no runner matches, so the context starts without running anything
+            System.setProperty("kraken.mode", "load-test");
+            System.setProperty("logging.level.com.example.siteoutageservice", "WARN");
+
+            System.out.printf("Simulated Kraken: %d sites of %d devices, %d outages (%d KB), %.1f%% 503s and %.1f%% 429s, seed %d%n",
+                    settings.siteCount(), settings.devicesPerSite(), settings.outageCount(), kraken.outagesBodySize() / 1024,
+                    settings.serverErrorRate() * 100, settings.tooManyRequestsRate() * 100, settings.seed());
+
+            try (ConfigurableApplicationContext context = new SpringApplicationBuilder(SiteOutageServiceApplication.class).run(args)) {
+                final BatchOutageService batchOutageService = context.getBean(BatchOutageService.class);
+                final List<String> siteIds = kraken.siteIds();
+
+                System.gc();
+                System.out.printf("Heap after GC before the first run: %d MB%n", ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() >> 20);
+
+                for (int i = 1; i <= warmups; i++) {
+                    report("warmup " + i, batchOutageService, siteIds);
+                }
+                final List<Duration> latencies = new ArrayList<>();
+                long sites = 0;
+                long elapsedNanos = 0;
+                for (int i = 1; i <= runs; i++) {
+                    final BatchReport report = report("run " + i, batchOutageService, siteIds);
+                    report.results().forEach(result -> latencies.add(result.elapsed()));
+                    sites += report.results().size();
+                    elapsedNanos += report.elapsed().toNanos();
+                }
+
+                if (runs > 0) {
+                    System.out.printf("Overall: %.1f sites/s, per-site p50 %.1f ms, p99 %.1f ms%n",
+                            sites / (elapsedNanos / 1e9), millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.99)));
+                }
+                System.out.printf("Kraken requests: %d /outages, %d /site-info, %d /site-outages, with %d 503s and %d 429s injected%n",
+                        kraken.requestCount(OUTAGES_ENDPOINT), kraken.requestCount(SITE_INFO_ENDPOINT), kraken.requestCount(SITE_OUTAGES_ENDPOINT),
+                        kraken.failureCount(503), kraken.failureCount(429));
+            }
+        }
+    }
+
+    private static BatchReport report(final String name, final BatchOutageService batchOutageService, final List<String> siteIds){
+        final ResourceSampler sampler = ResourceSampler.start();
+        final BatchReport report = batchOutageService.run(siteIds);
+        final ResourceSampler.Usage usage = sampler.stop();
+
+        final List<Duration> latencies = report.results().stream().map(SiteResult::elapsed).toList();
+        System.out.printf("%s: %d sites (%d failed) in %d ms - %.1f sites/s, per-site p50 %.1f ms, p99 %.1f ms, allocated %.1f MB/s, peak heap %d MB%n",
+                name, report.results().size(), report.failed(), report.elapsed().toMillis(),
+                report.results().size() / (report.elapsed().toNanos() / 1e9),
+                millis(percentile(latencies, 0.50)), millis(percentile(latencies, 0.99)),
+                usage.allocatedBytes() / (1 << 20) / (usage.elapsedNanos() / 1e9), usage.peakHeapBytes() >> 20);
+        return report;
+    }
+
+    private static Duration percentile(final List<Duration> latencies, final double percentile){
+        if (latencies.isEmpty()) {
+            return Duration.ZERO;
+        }
+        final List<Duration> sorted = latencies.stream().sorted().toList();
+        final int rank = (int) Math.ceil(percentile * sorted.size());
+        return sorted.get(Math.max(rank - 1, 0));
+    }
+
+    private static double millis(final Duration duration){
+        return duration.toNanos() / 1e6;
+    }
+
+    private static String option(final SimpleCommandLinePropertySource options, final String name, final String defaultValue){
+        final String value = options.getProperty(name);
+        return value == null ? defaultValue : value;
+    }
+
+    private static KrakenSimulator.Latency optionalLatency(final SimpleCommandLinePropertySource options, final String name,
+                                                          final KrakenSimulator.Latency defaultLatency){
+        final String value = options.getProperty(name);
+        return value == null ? defaultLatency : latency(value);
+    }
+
+    private static KrakenSimulator.Latency latency(final String spec){
+        final String[] parts = spec.split(":");
+        return switch (parts[0]) {
+            case "none" -> KrakenSimulator.Latency.none();
+            case "fixed" -> KrakenSimulator.Latency.fixed(DurationStyle.detectAndParse(parts[1]));
+            case "uniform" -> KrakenSimulator.Latency.uniform(DurationStyle.detectAndParse(parts[1]), DurationStyle.detectAndParse(parts[2]));
+            case "logNormal" -> KrakenSimulator.Latency.logNormal(DurationStyle.detectAndParse(parts[1]), DurationStyle.detectAndParse(parts[2]));
+            default -> throw new IllegalArgumentException("Unknown latency [" + spec + "], expected none, fixed, uniform or logNormal.");
+        };
+    }
+
+    /**
+     * Samples heap use and the bytes allocated by each application thread every {@link #SAMPLE_INTERVAL}. Threads
+     * are followed by id, so threads that start and finish during a run are counted up to their last sample.
+     */
+    private static final class ResourceSampler {
+
+        private final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, KrakenSimulator.THREAD_PREFIX + "-load-test-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        private final Map<Long, long[]> allocated = new HashMap<>();
+        private final long start = System.nanoTime();
+        private long peakHeap;
+
+        static ResourceSampler start(){
+            final ResourceSampler sampler = new ResourceSampler();
+            sampler.sample(true);
+            sampler.executor.scheduleAtFixedRate(() -> sampler.sample(false), SAMPLE_INTERVAL.toNanos(), SAMPLE_INTERVAL.toNanos(), TimeUnit.NANOSECONDS);
+            return sampler;
+        }
+
+        Usage stop(){
+            executor.shutdown();
+            try {
+                executor.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            sample(false);
+            final long bytes = allocated.values().stream().mapToLong(range -> range[1] - range[0]).sum();
+            return new Usage(bytes, peakHeap, System.nanoTime() - start);
+        }
+
+        /**
+         * @param baseline whether threads seen now existed before the run, rather than starting during it
+         */
+        private synchronized void sample(final boolean baseline){
+            peakHeap = Math.max(peakHeap, memory.getHeapMemoryUsage().getUsed());
+
+            final long[] ids = threads.getAllThreadIds();
+            final long[] bytes = threads.getThreadAllocatedBytes(ids);
+            final ThreadInfo[] infos = threads.getThreadInfo(ids, 0);
+            for (int i = 0; i < ids.length; i++) {
+                if (infos[i] == null || bytes[i] < 0 || infos[i].getThreadName().startsWith(KrakenSimulator.THREAD_PREFIX)) {
+                    continue;
+                }
+                final long current = bytes[i];
+                allocated.computeIfAbsent(ids[i], id -> new long[]{baseline ? current : 0, current})[1] = current;
+            }
+        }
+
+        record Usage(long allocatedBytes, long peakHeapBytes, long elapsedNanos) {
+        }
+    }
+}
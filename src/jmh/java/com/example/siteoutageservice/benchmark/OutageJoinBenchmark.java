@@ -0,0 +1,88 @@
+package com.example.siteoutageservice.benchmark;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.index.OutageIndex;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.ParallelJoin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filter and join hot path of {@link OutageDetailService} against a stubbed KrakenWebClient, so only the
+ * service's own work is measured. The full parameter matrix is large; narrow it with {@code -p}, for example
+ * {@code -p outageCount=1000000 -p deviceCount=1000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class OutageJoinBenchmark {
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    public int outageCount;
+
+    @Param({"10", "1000", "100000"})
+    public int deviceCount;
+
+    @Param({"0.1", "0.9"})
+    public double matchRatio;
+
+    @Param({"0.0", "0.05"})
+    public double duplicateIdRate;
+
+    private OutageDetailService outageDetailService;
+    private List<Outage> outages;
+    private OutageIndex outageIndex;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        BenchmarkData.silenceLogging();
+
+        final Site site = BenchmarkData.site(deviceCount, duplicateIdRate, 42);
+        outages = BenchmarkData.outages(outageCount, site, matchRatio, 43);
+        outageDetailService = new OutageDetailService(BenchmarkData.stubClient(outages, site), BenchmarkData.TIME_FILTER, "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        outageIndex = outageDetailService.indexOutages(outages);
+    }
+
+    /**
+     * Parse, filter and join every outage, as a single site run does.
+     */
+    @Benchmark
+    public List<DeviceOutage> getDeviceOutagesFor(){
+        return outageDetailService.getDeviceOutagesFor(BenchmarkData.SITE_ID);
+    }
+
+    /**
+     * One-off cost of indexing /outages for a batch run.
+     */
+    @Benchmark
+    public OutageIndex indexOutages(){
+        return outageDetailService.indexOutages(outages);
+    }
+
+    /**
+     * Per-site cost of a batch run once the index exists.
+     */
+    @Benchmark
+    public List<DeviceOutage> getDeviceOutagesForFromIndex(){
+        return outageDetailService.getDeviceOutagesFor(BenchmarkData.SITE_ID, outageIndex);
+    }
+}
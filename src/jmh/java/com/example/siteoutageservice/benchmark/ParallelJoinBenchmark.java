@@ -0,0 +1,71 @@
+package com.example.siteoutageservice.benchmark;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.ParallelJoin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sequential against parallel filter and join over growing outage lists, to find where the parallel join starts to
+ * pay off on a given machine and set {@code kraken.join.parallelThreshold} just above it. The parallel runs always
+ * split, whatever the list size, and use {@code parallelism} threads (every core when 0).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+public class ParallelJoinBenchmark {
+
+    @Param({"1000", "10000", "50000", "100000", "500000", "1000000", "5000000"})
+    public int outageCount;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    @Param({"0"})
+    public int parallelism;
+
+    private OutageDetailService outageDetailService;
+    private ParallelJoin parallelJoin;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        BenchmarkData.silenceLogging();
+
+        final Site site = BenchmarkData.site(1000, 0.0, 42);
+        final List<Outage> outages = BenchmarkData.outages(outageCount, site, 0.5, 43);
+        parallelJoin = new ParallelJoin(parallel, parallelism, 1);
+        outageDetailService = new OutageDetailService(BenchmarkData.stubClient(outages, site), BenchmarkData.TIME_FILTER, "",
+                KrakenMetrics.disabled(), 0, 1, parallelJoin);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown(){
+        parallelJoin.shutdown();
+    }
+
+    @Benchmark
+    public List<DeviceOutage> getDeviceOutagesFor(){
+        return outageDetailService.getDeviceOutagesFor(BenchmarkData.SITE_ID);
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.siteoutageservice.benchmark;
+
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.server.OutageQueryCache;
+import com.example.siteoutageservice.server.SiteOutagesController;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import com.example.siteoutageservice.service.ParallelJoin;
+import com.example.siteoutageservice.snapshot.OutageSnapshotStore;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.ResponseEntity;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server mode's {@code GET /sites/{siteId}/outages} for a site already in memory, from the controller down, without
+ * HTTP. Sampled, so JMH reports the p99 and p99.9 latency as well as the mean.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx4g"})
+public class SiteOutagesQueryBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int outageCount;
+
+    @Param({"10", "100"})
+    public int deviceCount;
+
+    private SiteOutagesController controller;
+
+    @Setup(Level.Trial)
+    public void setup(){
+        BenchmarkData.silenceLogging();
+
+        final Site site = BenchmarkData.site(deviceCount, 0.0, 42);
+        final List<Outage> outages = BenchmarkData.outages(outageCount, site, 0.01, 43);
+        final KrakenWebClient krakenWebClient = BenchmarkData.stubClient(outages, site);
+        final OutageDetailService outageDetailService = new OutageDetailService(krakenWebClient, BenchmarkData.TIME_FILTER, "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        final OutageIndexProvider outageIndexProvider = new OutageIndexProvider(krakenWebClient, outageDetailService,
+                new OutageSnapshotStore(false, Path.of("unused"), Duration.ZERO), false);
+
+        final OutageQueryCache cache = new OutageQueryCache(krakenWebClient, outageDetailService, outageIndexProvider,
+                List.of(BenchmarkData.SITE_ID), Duration.ofMinutes(1), 1, Duration.ofHours(1));
+        cache.refresh().block();
+        controller = new SiteOutagesController(cache, outageDetailService);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> cachedSite(){
+        return controller.getOutages(BenchmarkData.SITE_ID, null, null).block();
+    }
+
+    @Benchmark
+    public ResponseEntity<?> cachedSiteOneMonth(){
+        return controller.getOutages(BenchmarkData.SITE_ID, "2022-06-01T00:00:00.000Z", "2022-07-01T00:00:00.000Z").block();
+    }
+}
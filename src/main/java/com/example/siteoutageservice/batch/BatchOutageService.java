@@ -0,0 +1,142 @@
+package com.example.siteoutageservice.batch;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.SiteOutages;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.index.OutageIndex;
+import com.example.siteoutageservice.index.TimeWindow;
+import com.example.siteoutageservice.publish.DowntimeReportWriter;
+import com.example.siteoutageservice.publish.OutagePublisher;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Service
+public class BatchOutageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchOutageService.class);
+
+    private final KrakenWebClient krakenWebClient;
+    private final OutageDetailService outageDetailService;
+    private final OutageIndexProvider outageIndexProvider;
+    private final OutagePublisher outagePublisher;
+    private final DowntimeReportWriter downtimeReportWriter;
+    private final int concurrency;
+
+    @Autowired
+    public BatchOutageService(KrakenWebClient krakenWebClient, OutageDetailService outageDetailService, OutageIndexProvider outageIndexProvider,
+                              OutagePublisher outagePublisher, DowntimeReportWriter downtimeReportWriter,
+                              @Value("${kraken.batch.concurrency}") int concurrency) {
+        Assert.isTrue(concurrency > 0, "kraken.batch.concurrency must be greater than 0.");
+        this.krakenWebClient = krakenWebClient;
+        this.outageDetailService = outageDetailService;
+        this.outageIndexProvider = outageIndexProvider;
+        this.outagePublisher = outagePublisher;
+        this.downtimeReportWriter = downtimeReportWriter;
+        this.concurrency = concurrency;
+    }
+
+    public BatchReport run(final Collection<String> siteIds){
+        return runAsync(siteIds).block();
+    }
+
+    /**
+     * Gets the outage index once (from a fresh snapshot, or by fetching /outages), then collects and publishes outages for every site with at most
+     * {@code kraken.batch.concurrency} sites in flight. A failing site is reported and does not stop the batch,
+     * however a failure fetching /outages fails the whole batch since no site can be processed without it.
+     */
+    public Mono<BatchReport> runAsync(final Collection<String> siteIds){
+        return runAsync(siteIds, outageDetailService.getOutagesTimeFilter());
+    }
+
+    /**
+     * Same as {@link #runAsync(Collection)} but publishes outages beginning in the given window
+     * rather than the configured time filter.
+     */
+    public Mono<BatchReport> runAsync(final Collection<String> siteIds, final TimeWindow window){
+        return runAsync(siteIds, window, result -> {});
+    }
+
+    /**
+     * Same as {@link #runAsync(Collection, TimeWindow)}, calling {@code onSiteFinished} as soon as each site has
+     * succeeded or failed rather than once the whole batch is done.
+     */
+    public Mono<BatchReport> runAsync(final Collection<String> siteIds, final TimeWindow window, final Consumer<SiteResult> onSiteFinished){
+        Assert.notEmpty(siteIds, "siteIds cannot be empty.");
+        Assert.notNull(window, "window cannot be null.");
+        Assert.notNull(onSiteFinished, "onSiteFinished cannot be null.");
+
+        return Mono.defer(() -> {
+            final long start = System.nanoTime();
+            logger.info("Starting batch of [{}] sites with concurrency [{}]", siteIds.size(), concurrency);
+
+            return outageIndexProvider.getIndex()
+                    .flatMap(index -> Flux.fromIterable(siteIds)
+                            .flatMapSequential(siteId -> processSite(siteId, index, window).doOnNext(onSiteFinished), concurrency)
+                            .collectList())
+                    .map(results -> new BatchReport(results, Duration.ofNanos(System.nanoTime() - start)))
+                    .doOnNext(report -> logger.info("Finished batch of [{}] sites in [{}] ms - [{}] succeeded ([{}] unchanged and skipped), [{}] failed.{}",
+                            report.results().size(), report.elapsed().toMillis(), report.succeeded(), report.skipped(), report.failed(),
+                            krakenWebClient.isCacheEnabled() ? " Response cache: " + krakenWebClient.getCacheStats() : ""));
+        });
+    }
+
+    private Mono<SiteResult> processSite(final String siteId, final OutageIndex outageIndex, final TimeWindow window){
+        return Mono.defer(() -> {
+            final long start = System.nanoTime();
+
+            return collect(siteId, outageIndex, window)
+                    .flatMap(outages -> outagePublisher.publishDeviceOutagesAsync(siteId, outages)
+                            .map(published -> SiteResult.succeeded(siteId, outages.size(), published, Duration.ofNanos(System.nanoTime() - start))))
+                    .doOnNext(result -> logger.info("Site [{}] succeeded - {} [{}] outages in [{}] ms", siteId,
+                            result.published() ? "published" : "skipped unchanged", result.outageCount(), result.elapsed().toMillis()))
+                    .onErrorResume(ex -> Mono.just(failed(siteId, start, describe(ex))));
+        });
+    }
+
+    /**
+     * With the downtime report enabled, the site's device downtime is worked out alongside its outages and written
+     * before they are published.
+     */
+    private Mono<List<DeviceOutage>> collect(final String siteId, final OutageIndex outageIndex, final TimeWindow window){
+        if (!downtimeReportWriter.isEnabled()) {
+            return outageDetailService.getDeviceOutagesForAsync(siteId, outageIndex, window);
+        }
+
+        return outageDetailService.getSiteOutagesForAsync(siteId, outageIndex, window)
+                .flatMap(site -> Mono.fromRunnable(() -> downtimeReportWriter.write(siteId, site.downtime()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(site))
+                .map(SiteOutages::outages);
+    }
+
+    private SiteResult failed(final String siteId, final long start, final String error){
+        final SiteResult result = SiteResult.failed(siteId, Duration.ofNanos(System.nanoTime() - start), error);
+        logger.warn("Site [{}] failed after [{}] ms - {}", siteId, result.elapsed().toMillis(), error);
+        return result;
+    }
+
+    static String describe(final Throwable ex){
+        if (ex instanceof KrakenServerException server) {
+            return ex.getClass().getSimpleName() + " " + server.getStatus() + " - " + ex.getMessage();
+        } else if (ex instanceof KrakenClientException client) {
+            return ex.getClass().getSimpleName() + " " + client.getStatus() + " - " + ex.getMessage();
+        }
+        return ex.getClass().getSimpleName() + " - " + ex.getMessage();
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.siteoutageservice.batch;
+
+import java.time.Duration;
+import java.util.List;
+
+public record BatchReport(List<SiteResult> results, Duration elapsed) {
+
+    public long succeeded(){
+        return results.stream().filter(SiteResult::success).count();
+    }
+
+    public long skipped(){
+        return results.stream().filter(r -> r.success() && !r.published()).count();
+    }
+
+    public long failed(){
+        return results.size() - succeeded();
+    }
+}
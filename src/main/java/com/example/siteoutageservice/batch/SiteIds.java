@@ -0,0 +1,49 @@
+package com.example.siteoutageservice.batch;
+
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Resolves the site ids for a batch run from a comma separated property and/or a file with one id per line.
+ * Blank lines and lines starting with '#' in the file are ignored. Duplicates are dropped, keeping first occurrence.
+ */
+public final class SiteIds {
+
+    private SiteIds(){
+    }
+
+    public static List<String> resolve(final Collection<String> fromProperty, final String file){
+        final Set<String> siteIds = new LinkedHashSet<>();
+
+        if (fromProperty != null) {
+            fromProperty.stream()
+                    .filter(StringUtils::hasText)
+                    .map(String::trim)
+                    .forEach(siteIds::add);
+        }
+
+        if (StringUtils.hasText(file)) {
+            try {
+                Files.readAllLines(Path.of(file.trim())).stream()
+                        .map(String::trim)
+                        .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                        .forEach(siteIds::add);
+            } catch (IOException ex) {
+                throw new IllegalArgumentException("Could not read siteIds file [" + file + "]: " + ex.getMessage(), ex);
+            }
+        }
+
+        if (siteIds.isEmpty()) {
+            throw new IllegalArgumentException("No siteIds configured. Set kraken.batch.siteIds or kraken.batch.siteIdsFile.");
+        }
+        return new ArrayList<>(siteIds);
+    }
+}
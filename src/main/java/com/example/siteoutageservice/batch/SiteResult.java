@@ -0,0 +1,17 @@
+package com.example.siteoutageservice.batch;
+
+import java.time.Duration;
+
+/**
+ * @param published false when the site succeeded without posting, as its outages were unchanged since the last publish
+ */
+public record SiteResult(String siteId, boolean success, int outageCount, boolean published, Duration elapsed, String error) {
+
+    public static SiteResult succeeded(String siteId, int outageCount, boolean published, Duration elapsed){
+        return new SiteResult(siteId, true, outageCount, published, elapsed, null);
+    }
+
+    public static SiteResult failed(String siteId, Duration elapsed, String error){
+        return new SiteResult(siteId, false, 0, false, elapsed, error);
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.siteoutageservice.batch;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.index.OutageIndex;
+import com.example.siteoutageservice.index.TimeWindow;
+import com.example.siteoutageservice.publish.OutagePublisher;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Batch runner built on the blocking {@link OutageDetailService} and {@link OutagePublisher} API, giving every site
+ * its own thread instead of composing the calls reactively. Built with the {@code java21} profile the threads are
+ * virtual (see {@code VirtualThreadConfiguration}), so thousands of sites can block on Kraken at once for the cost of
+ * a few carrier threads. Otherwise it falls back to a platform thread pool of {@code kraken.batch.concurrency}.
+ * <p>
+ * Either way a semaphore of {@code kraken.batch.concurrency} permits caps the sites calling Kraken at the same time.
+ */
+@Service
+@ConditionalOnProperty(name = "kraken.mode", havingValue = "virtual-batch")
+public class ThreadPerSiteBatchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ThreadPerSiteBatchService.class);
+
+    private final OutageDetailService outageDetailService;
+    private final OutageIndexProvider outageIndexProvider;
+    private final OutagePublisher outagePublisher;
+    private final ExecutorService siteExecutor;
+    private final Semaphore permits;
+    private final int concurrency;
+
+    @Autowired
+    public ThreadPerSiteBatchService(OutageDetailService outageDetailService, OutageIndexProvider outageIndexProvider, OutagePublisher outagePublisher,
+                                     @Qualifier("batchSiteExecutor") ObjectProvider<ExecutorService> siteExecutor,
+                                     @Value("${kraken.batch.concurrency}") int concurrency) {
+        Assert.isTrue(concurrency > 0, "kraken.batch.concurrency must be greater than 0.");
+        this.outageDetailService = outageDetailService;
+        this.outageIndexProvider = outageIndexProvider;
+        this.outagePublisher = outagePublisher;
+        this.siteExecutor = siteExecutor.getIfAvailable(() -> platformThreads(concurrency));
+        this.permits = new Semaphore(concurrency);
+        this.concurrency = concurrency;
+    }
+
+    public BatchReport run(final Collection<String> siteIds){
+        return run(siteIds, outageDetailService.getOutagesTimeFilter());
+    }
+
+    /**
+     * Gets the outage index once, then starts every site on its own thread, each waiting for one of the
+     * {@code kraken.batch.concurrency} permits before calling Kraken. A failing site is reported and does not stop
+     * the batch, while a failure getting the index is thrown before any site starts.
+     */
+    public BatchReport run(final Collection<String> siteIds, final TimeWindow window){
+        Assert.notEmpty(siteIds, "siteIds cannot be empty.");
+        Assert.notNull(window, "window cannot be null.");
+
+        final long start = System.nanoTime();
+        logger.info("Starting batch of [{}] sites on a thread each, with at most [{}] calling Kraken at once", siteIds.size(), concurrency);
+
+        final OutageIndex index = outageIndexProvider.getIndex().block();
+
+        final List<Future<SiteResult>> running = new ArrayList<>(siteIds.size());
+        for (String siteId : siteIds) {
+            running.add(siteExecutor.submit(() -> processSite(siteId, index, window)));
+        }
+
+        final List<SiteResult> results = new ArrayList<>(running.size());
+        final Iterator<String> ids = siteIds.iterator();
+        for (Future<SiteResult> site : running) {
+            results.add(await(ids.next(), site, start));
+        }
+
+        final BatchReport report = new BatchReport(results, Duration.ofNanos(System.nanoTime() - start));
+        logger.info("Finished batch of [{}] sites in [{}] ms - [{}] succeeded ([{}] unchanged and skipped), [{}] failed",
+                results.size(), report.elapsed().toMillis(), report.succeeded(), report.skipped(), report.failed());
+        return report;
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        siteExecutor.shutdown();
+    }
+
+    private SiteResult processSite(final String siteId, final OutageIndex index, final TimeWindow window) throws InterruptedException {
+        permits.acquire();
+        final long start = System.nanoTime();
+        try {
+            final List<DeviceOutage> outages = outageDetailService.getDeviceOutagesFor(siteId, index, window);
+            final boolean published = outagePublisher.publishDeviceOutages(siteId, outages);
+
+            final SiteResult result = SiteResult.succeeded(siteId, outages.size(), published, Duration.ofNanos(System.nanoTime() - start));
+            logger.info("Site [{}] succeeded - {} [{}] outages in [{}] ms", siteId,
+                    published ? "published" : "skipped unchanged", outages.size(), result.elapsed().toMillis());
+            return result;
+        } catch (RuntimeException ex) {
+            final SiteResult result = SiteResult.failed(siteId, Duration.ofNanos(System.nanoTime() - start), BatchOutageService.describe(ex));
+            logger.warn("Site [{}] failed after [{}] ms - {}", siteId, result.elapsed().toMillis(), result.error());
+            return result;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * A site thread failing with anything but a {@link RuntimeException}, which {@code processSite} already reports,
+     * fails only that site, timed from the start of the batch.
+     */
+    private static SiteResult await(final String siteId, final Future<SiteResult> site, final long batchStart){
+        try {
+            return site.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for sites to finish", ex);
+        } catch (ExecutionException ex) {
+            final SiteResult result = SiteResult.failed(siteId, Duration.ofNanos(System.nanoTime() - batchStart), BatchOutageService.describe(ex.getCause()));
+            logger.warn("Site [{}] thread failed - {}", siteId, result.error());
+            return result;
+        }
+    }
+
+    private static ExecutorService platformThreads(final int concurrency){
+        logger.warn("Virtual threads need a build with the java21 profile, processing sites on [{}] platform threads instead", concurrency);
+        return Executors.newFixedThreadPool(concurrency, new CustomizableThreadFactory("batch-site-"));
+    }
+}
@@ -0,0 +1,167 @@
+package com.example.siteoutageservice.breaker;
+
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker over a count based window of the last {@code windowSize} calls.
+ * <ul>
+ *     <li>CLOSED - calls go through. Once the window holds {@code minimumCalls}, the breaker opens if the share of failed
+ *     calls reaches {@code failureRateThreshold} or the share of calls slower than {@code slowCallDuration} reaches
+ *     {@code slowCallRateThreshold}.</li>
+ *     <li>OPEN - calls are rejected without being made, until {@code openDuration} has passed.</li>
+ *     <li>HALF_OPEN - up to {@code halfOpenCalls} trial calls are let through and the rest rejected. The breaker closes
+ *     once every trial succeeds quickly, and opens again as soon as one fails or is slow.</li>
+ * </ul>
+ */
+class CircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Told about every state change, while the breaker's lock is held.
+     */
+    interface Listener {
+        void onTransition(State from, State to, String reason);
+    }
+
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallNanos;
+    private final int minimumCalls;
+    private final long openNanos;
+    private final int halfOpenCalls;
+    private final LongSupplier nanoTime;
+    private final Listener listener;
+
+    private final boolean[] failed;
+    private final boolean[] slow;
+    private int recorded;
+    private int next;
+    private int failedCount;
+    private int slowCount;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    CircuitBreaker(final double failureRateThreshold, final double slowCallRateThreshold, final Duration slowCallDuration,
+                   final int windowSize, final int minimumCalls, final Duration openDuration, final int halfOpenCalls,
+                   final LongSupplier nanoTime, final Listener listener) {
+        Assert.isTrue(failureRateThreshold > 0 && failureRateThreshold <= 100, "failureRateThreshold must be a percentage above 0.");
+        Assert.isTrue(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100, "slowCallRateThreshold must be a percentage above 0.");
+        Assert.isTrue(windowSize > 0 && minimumCalls > 0 && minimumCalls <= windowSize, "minimumCalls must be between 1 and windowSize.");
+        Assert.isTrue(halfOpenCalls > 0, "halfOpenCalls must be greater than 0.");
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallNanos = slowCallDuration.toNanos();
+        this.minimumCalls = minimumCalls;
+        this.openNanos = openDuration.toNanos();
+        this.halfOpenCalls = halfOpenCalls;
+        this.nanoTime = nanoTime;
+        this.listener = listener;
+        this.failed = new boolean[windowSize];
+        this.slow = new boolean[windowSize];
+    }
+
+    /**
+     * @return whether a call may be made now. A permitted call must be finished with {@link #onResult} or {@link #onIgnored}.
+     */
+    synchronized boolean tryAcquire() {
+        if (state == State.OPEN && nanoTime.getAsLong() - openedAt >= openNanos) {
+            transition(State.HALF_OPEN, "open for " + Duration.ofNanos(openNanos));
+        }
+
+        if (state == State.HALF_OPEN && trialsStarted < halfOpenCalls) {
+            trialsStarted++;
+            return true;
+        }
+        return state == State.CLOSED;
+    }
+
+    synchronized void onResult(final boolean callFailed, final long latencyNanos) {
+        final boolean callSlow = latencyNanos >= slowCallNanos;
+
+        if (state == State.HALF_OPEN) {
+            if (callFailed || callSlow) {
+                open("trial call " + (callFailed ? "failed" : "was slow"));
+            } else if (++trialsSucceeded >= halfOpenCalls) {
+                transition(State.CLOSED, trialsSucceeded + " trial calls succeeded");
+            }
+        } else if (state == State.CLOSED) {
+            record(callFailed, callSlow);
+            if (recorded >= minimumCalls) {
+                final double failureRate = 100.0 * failedCount / recorded;
+                final double slowCallRate = 100.0 * slowCount / recorded;
+                if (failureRate >= failureRateThreshold) {
+                    open(String.format("%.0f%% of the last %d calls failed", failureRate, recorded));
+                } else if (slowCallRate >= slowCallRateThreshold) {
+                    open(String.format("%.0f%% of the last %d calls were slow", slowCallRate, recorded));
+                }
+            }
+        }
+        //results arriving while open are from calls made before it opened, and are ignored
+    }
+
+    /**
+     * Finishes a permitted call that says nothing about Kraken's health, e.g. one that was cancelled.
+     */
+    synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && trialsStarted > trialsSucceeded) {
+            trialsStarted--;
+        }
+    }
+
+    /**
+     * @return how long until an open breaker lets trial calls through, absent unless it is open
+     */
+    synchronized Optional<Duration> getRemainingOpen() {
+        if (state != State.OPEN) {
+            return Optional.empty();
+        }
+        return Optional.of(Duration.ofNanos(Math.max(openNanos - (nanoTime.getAsLong() - openedAt), 0)));
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    private void record(final boolean callFailed, final boolean callSlow) {
+        if (recorded == failed.length) {
+            failedCount -= failed[next] ? 1 : 0;
+            slowCount -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = callFailed;
+        slow[next] = callSlow;
+        failedCount += callFailed ? 1 : 0;
+        slowCount += callSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+    }
+
+    private void open(final String reason) {
+        openedAt = nanoTime.getAsLong();
+        transition(State.OPEN, reason);
+    }
+
+    private void transition(final State to, final String reason) {
+        final State from = state;
+        state = to;
+        trialsStarted = 0;
+        trialsSucceeded = 0;
+        if (to == State.CLOSED) {
+            recorded = 0;
+            next = 0;
+            failedCount = 0;
+            slowCount = 0;
+        }
+        listener.onTransition(from, to, reason);
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.siteoutageservice.breaker;
+
+import com.example.siteoutageservice.exception.KrakenCircuitOpenException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static com.example.siteoutageservice.config.WebConfiguration.*;
+
+/**
+ * One {@link CircuitBreaker} per Kraken endpoint, configured with {@code kraken.rest.circuitBreaker.*}. A 5xx response
+ * or a call that fails without a response counts as failed; any other response, 4xx included, shows Kraken is up.
+ * While an endpoint's breaker is open its calls fail straight away with {@link KrakenCircuitOpenException}, which is
+ * not retried, so a batch against a dead Kraken fails each site in milliseconds instead of after every backoff.
+ */
+@Component
+public class KrakenCircuitBreakers {
+
+    private static final Logger logger = LoggerFactory.getLogger(KrakenCircuitBreakers.class);
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final Function<String, CircuitBreaker> breakerFactory;
+    private final KrakenMetrics krakenMetrics;
+
+    @Autowired
+    public KrakenCircuitBreakers(@Value("${kraken.rest.circuitBreaker.enabled}") boolean enabled,
+                                 @Value("${kraken.rest.circuitBreaker.failureRateThreshold}") double failureRateThreshold,
+                                 @Value("${kraken.rest.circuitBreaker.slowCallRateThreshold}") double slowCallRateThreshold,
+                                 @Value("${kraken.rest.circuitBreaker.slowCallDuration}") Duration slowCallDuration,
+                                 @Value("${kraken.rest.circuitBreaker.windowSize}") int windowSize,
+                                 @Value("${kraken.rest.circuitBreaker.minimumCalls}") int minimumCalls,
+                                 @Value("${kraken.rest.circuitBreaker.openDuration}") Duration openDuration,
+                                 @Value("${kraken.rest.circuitBreaker.halfOpenCalls}") int halfOpenCalls,
+                                 KrakenMetrics krakenMetrics) {
+        this.krakenMetrics = krakenMetrics;
+        this.breakerFactory = !enabled ? null : endpoint -> {
+            final CircuitBreaker breaker = new CircuitBreaker(failureRateThreshold, slowCallRateThreshold, slowCallDuration,
+                    windowSize, minimumCalls, openDuration, halfOpenCalls, System::nanoTime, (from, to, reason) -> onTransition(endpoint, from, to, reason));
+            krakenMetrics.registerCircuitState(endpoint, () -> breaker.getState().ordinal());
+            return breaker;
+        };
+
+        if (enabled) {
+            for (String endpoint : new String[]{OUTAGES_ENDPOINT, SITE_INFO_ENDPOINT, SITE_OUTAGES_ENDPOINT}) {
+                breakers.computeIfAbsent(KrakenMetrics.endpointTag(endpoint), breakerFactory);
+            }
+        }
+    }
+
+    private KrakenCircuitBreakers() {
+        this.breakerFactory = null;
+        this.krakenMetrics = KrakenMetrics.disabled();
+    }
+
+    /**
+     * Breakers that never open.
+     */
+    public static KrakenCircuitBreakers disabled() {
+        return new KrakenCircuitBreakers();
+    }
+
+    /**
+     * Makes the exchange only if the endpoint's breaker allows it, and records how it went. The call is timed from
+     * subscription, or from when the exchange runs the callback it is given if it does, so an exchange that first
+     * waits its turn can leave that wait out.
+     *
+     * @param endpoint endpoint tag, as returned by {@link KrakenMetrics#endpointOf}
+     * @param exchange the exchange, given a callback to run as the request is sent
+     */
+    public Mono<ClientResponse> guard(final String endpoint, final Function<Runnable, Mono<ClientResponse>> exchange) {
+        if (breakerFactory == null) {
+            return exchange.apply(() -> {});
+        }
+        final CircuitBreaker breaker = breakers.computeIfAbsent(endpoint, breakerFactory);
+
+        return Mono.defer(() -> {
+            if (!breaker.tryAcquire()) {
+                krakenMetrics.recordCircuitRejected(endpoint);
+                return Mono.error(new KrakenCircuitOpenException(endpoint, breaker.getRemainingOpen().orElse(null)));
+            }
+
+            final AtomicLong start = new AtomicLong(System.nanoTime());
+            final AtomicBoolean finished = new AtomicBoolean();
+            return exchange.apply(() -> start.set(System.nanoTime()))
+                    .doOnNext(response -> {
+                        if (finished.compareAndSet(false, true)) {
+                            breaker.onResult(response.statusCode().is5xxServerError(), System.nanoTime() - start.get());
+                        }
+                    })
+                    .doOnError(ex -> {
+                        if (finished.compareAndSet(false, true)) {
+                            breaker.onResult(true, System.nanoTime() - start.get());
+                        }
+                    })
+                    .doFinally(signal -> {
+                        if (finished.compareAndSet(false, true)) {
+                            breaker.onIgnored();
+                        }
+                    });
+        });
+    }
+
+    CircuitBreaker.State getState(final String endpoint) {
+        return breakers.get(endpoint).getState();
+    }
+
+    private void onTransition(final String endpoint, final CircuitBreaker.State from, final CircuitBreaker.State to, final String reason) {
+        if (to == CircuitBreaker.State.OPEN) {
+            logger.warn("Circuit breaker for [{}] {} -> {} - {}", endpoint, from, to, reason);
+        } else {
+            logger.info("Circuit breaker for [{}] {} -> {} - {}", endpoint, from, to, reason);
+        }
+        krakenMetrics.recordCircuitTransition(endpoint, from.name(), to.name());
+    }
+}
@@ -1,41 +1,146 @@
 package com.example.siteoutageservice.config;
 
+import com.example.siteoutageservice.batch.BatchOutageService;
+import com.example.siteoutageservice.batch.SiteIds;
+import com.example.siteoutageservice.batch.ThreadPerSiteBatchService;
 import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.exception.KrakenCircuitOpenException;
 import com.example.siteoutageservice.exception.KrakenClientException;
 import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.publish.OutagePublisher;
+import com.example.siteoutageservice.publish.PublishOutbox;
 import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import com.example.siteoutageservice.snapshot.OutageSnapshotStore;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.List;
 
-@Configuration
+@Configuration(proxyBeanMethods = false)
 public class ApplicationConfiguration {
 
     private static final Logger logger = LoggerFactory.getLogger(ApplicationConfiguration.class);
 
     @Bean
     @Autowired
-    public ApplicationRunner applicationRunner(OutageDetailService outageDetailService, @Value("${kraken.siteId}") String siteId){
+    @ConditionalOnProperty(name = "kraken.mode", havingValue = "single", matchIfMissing = true)
+    public ApplicationRunner applicationRunner(OutageDetailService outageDetailService, OutageIndexProvider outageIndexProvider, OutagePublisher outagePublisher,
+                                               OutageSnapshotStore snapshotStore, PublishOutbox publishOutbox, @Value("${kraken.siteId}") String siteId,
+                                               @Value("${kraken.outages.streaming}") boolean streaming,
+                                               @Value("${kraken.publish.outbox.drainTimeout}") Duration outboxDrainTimeout){
         return args -> {
             logger.debug("Executing with args: [{}]", args.getOptionNames());
 
             try {
-                List<DeviceOutage> outages = outageDetailService.getDeviceOutagesFor(siteId);
-                outageDetailService.publishDeviceOutages(siteId, outages);
+                final Mono<List<DeviceOutage>> deviceOutages;
+                if (snapshotStore.isEnabled()) {
+                    deviceOutages = outageIndexProvider.getIndex().flatMap(index -> outageDetailService.getDeviceOutagesForAsync(siteId, index));
+                } else if (streaming) {
+                    deviceOutages = outageDetailService.streamDeviceOutagesForAsync(siteId);
+                } else {
+                    deviceOutages = outageDetailService.getDeviceOutagesForAsync(siteId);
+                }
+
+                deviceOutages
+                        .flatMap(outages -> outagePublisher.publishDeviceOutagesAsync(siteId, outages))
+                        .block();
 
             } catch (KrakenServerException ex){
                 logger.warn("Kraken server failed after multiple retries. Try again later. - {} - {}", ex.getStatus(), ex.getMessage());
             } catch (KrakenClientException ex) {
                 logger.error("Client failure when communicating with Kraken - {} - {}", ex.getStatus(), ex.getMessage());
+            } catch (KrakenCircuitOpenException ex) {
+                logger.warn("Kraken circuit breaker is open. Try again in [{}]. - {}", retryAfter(ex), ex.getMessage());
             } catch (IllegalArgumentException ex) {
                 logger.error("Misconfigured property - {}", ex.getMessage());
             }
+            drainOutbox(publishOutbox, outboxDrainTimeout);
         };
     }
+
+    @Bean
+    @Autowired
+    @ConditionalOnProperty(name = "kraken.mode", havingValue = "batch")
+    public ApplicationRunner batchApplicationRunner(BatchOutageService batchOutageService, PublishOutbox publishOutbox,
+                                                    @Value("${kraken.batch.siteIds:}") List<String> siteIds,
+                                                    @Value("${kraken.batch.siteIdsFile:}") String siteIdsFile,
+                                                    @Value("${kraken.publish.outbox.drainTimeout}") Duration outboxDrainTimeout){
+        return args -> {
+            logger.debug("Executing batch with args: [{}]", args.getOptionNames());
+
+            try {
+                batchOutageService.run(SiteIds.resolve(siteIds, siteIdsFile));
+
+            } catch (KrakenServerException ex){
+                logger.warn("Kraken server failed fetching outages after multiple retries. Try again later. - {} - {}", ex.getStatus(), ex.getMessage());
+            } catch (KrakenClientException ex) {
+                logger.error("Client failure when fetching outages from Kraken - {} - {}", ex.getStatus(), ex.getMessage());
+            } catch (KrakenCircuitOpenException ex) {
+                logger.warn("Kraken circuit breaker is open, outages were not fetched. Try again in [{}]. - {}", retryAfter(ex), ex.getMessage());
+            } catch (IllegalArgumentException ex) {
+                logger.error("Misconfigured property - {}", ex.getMessage());
+            }
+            drainOutbox(publishOutbox, outboxDrainTimeout);
+        };
+    }
+
+    //not @Autowired like the runners above, as that also makes it an injection method on this configuration, failing
+    //every other mode for want of the ThreadPerSiteBatchService only virtual-batch has
+    @Bean
+    @ConditionalOnProperty(name = "kraken.mode", havingValue = "virtual-batch")
+    public ApplicationRunner virtualBatchApplicationRunner(ThreadPerSiteBatchService threadPerSiteBatchService, PublishOutbox publishOutbox,
+                                                           @Value("${kraken.batch.siteIds:}") List<String> siteIds,
+                                                           @Value("${kraken.batch.siteIdsFile:}") String siteIdsFile,
+                                                           @Value("${kraken.publish.outbox.drainTimeout}") Duration outboxDrainTimeout){
+        return args -> {
+            logger.debug("Executing batch on a thread per site with args: [{}]", args.getOptionNames());
+
+            try {
+                threadPerSiteBatchService.run(SiteIds.resolve(siteIds, siteIdsFile));
+
+            } catch (KrakenServerException ex){
+                logger.warn("Kraken server failed fetching outages after multiple retries. Try again later. - {} - {}", ex.getStatus(), ex.getMessage());
+            } catch (KrakenClientException ex) {
+                logger.error("Client failure when fetching outages from Kraken - {} - {}", ex.getStatus(), ex.getMessage());
+            } catch (KrakenCircuitOpenException ex) {
+                logger.warn("Kraken circuit breaker is open, outages were not fetched. Try again in [{}]. - {}", retryAfter(ex), ex.getMessage());
+            } catch (IllegalArgumentException ex) {
+                logger.error("Misconfigured property - {}", ex.getMessage());
+            } catch (IllegalStateException ex) {
+                logger.error("Batch stopped before every site finished - {}", ex.getMessage());
+            }
+            drainOutbox(publishOutbox, outboxDrainTimeout);
+        };
+    }
+
+    private static String retryAfter(final KrakenCircuitOpenException ex){
+        return ex.getRetryAfter().map(Duration::toString).orElse("a moment");
+    }
+
+    /**
+     * Gives the outbox up to {@code kraken.publish.outbox.drainTimeout} to post what the run queued before a one-shot
+     * run exits. Whatever is left stays in the outbox and is posted by the next run.
+     */
+    private static void drainOutbox(final PublishOutbox publishOutbox, final Duration timeout){
+        if (!publishOutbox.isEnabled()) {
+            return;
+        }
+        try {
+            if (!publishOutbox.awaitDrained(timeout)) {
+                logger.warn("Leaving [{}] sites in the publish outbox for the next run", publishOutbox.pendingCount());
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted waiting for the publish outbox, leaving [{}] sites for the next run", publishOutbox.pendingCount());
+        }
+    }
 }
@@ -0,0 +1,34 @@
+package com.example.siteoutageservice.config;
+
+import com.example.siteoutageservice.ingest.FileOutageEventSource;
+import com.example.siteoutageservice.ingest.OutageEventSource;
+import com.example.siteoutageservice.ingest.QueueOutageEventSource;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "kraken.mode", havingValue = "ingest")
+public class IngestConfiguration {
+
+    /**
+     * The source {@code kraken.ingest.source} names: {@code file} tails {@code kraken.ingest.file.path}, {@code queue}
+     * is an in-process queue other beans can offer events to.
+     */
+    @Bean
+    public OutageEventSource outageEventSource(ObjectMapper mapper, @Value("${kraken.ingest.source}") String source,
+                                              @Value("${kraken.ingest.file.path}") Path path,
+                                              @Value("${kraken.ingest.file.pollInterval}") Duration pollInterval,
+                                              @Value("${kraken.ingest.queue.capacity}") int queueCapacity){
+        return switch (source.trim()) {
+            case "file" -> new FileOutageEventSource(mapper, path, pollInterval);
+            case "queue" -> new QueueOutageEventSource(queueCapacity);
+            default -> throw new IllegalArgumentException("Unknown kraken.ingest.source [" + source + "], expected file or queue.");
+        };
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.siteoutageservice.config;
+
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceDowntime;
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.ErrorMessage;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.OutageEvent;
+import com.example.siteoutageservice.dto.OutboxEntry;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.dto.SiteDowntime;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+/**
+ * Reflection hints for a native image. The dtos are only ever reached through Jackson, which AOT processing cannot
+ * see, so their record components, accessors and canonical constructors are registered here, along with the array
+ * type /outages is decoded to. Lombok builders are registered for callers building dtos reflectively.
+ */
+public class KrakenRuntimeHints implements RuntimeHintsRegistrar {
+
+    private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        bindingRegistrar.registerReflectionHints(hints.reflection(),
+                Outage.class, Outage[].class, Site.class, Device.class, DeviceOutage.class, ErrorMessage.class,
+                SiteDowntime.class, DeviceDowntime.class, DeviceDowntime.Interval.class, OutageEvent.class, OutboxEntry.class);
+
+        for (Class<?> builder : new Class<?>[] {Outage.OutageBuilder.class, Site.SiteBuilder.class, Device.DeviceBuilder.class}) {
+            hints.reflection().registerType(builder, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+    }
+}
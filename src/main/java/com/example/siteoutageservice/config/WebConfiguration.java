@@ -1,20 +1,42 @@
 package com.example.siteoutageservice.config;
 
+import com.example.siteoutageservice.breaker.KrakenCircuitBreakers;
 import com.example.siteoutageservice.dto.ErrorMessage;
 import com.example.siteoutageservice.exception.KrakenClientException;
 import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.throttle.KrakenThrottle;
+import com.example.siteoutageservice.throttle.RetryAfter;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.codec.CodecException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.Assert;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.UnsupportedMediaTypeException;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
 
-@Configuration
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Configuration(proxyBeanMethods = false)
+@ImportRuntimeHints(KrakenRuntimeHints.class)
 public class WebConfiguration {
 
     private static final Logger logger = LoggerFactory.getLogger(WebConfiguration.class);
@@ -23,19 +45,83 @@ public class WebConfiguration {
     public static final String SITE_INFO_ENDPOINT = "/site-info/{siteId}";
     public static final String SITE_OUTAGES_ENDPOINT = "/site-outages/{siteId}";
 
+    //run by the throttle filter when it lets a request through, so the breaker times the call without the queueing
+    private static final String ON_SEND_ATTRIBUTE = WebConfiguration.class.getName() + ".onSend";
+
     @Bean
-    public WebClient webclient(@Value("${kraken.rest.baseUrl}") String baseUrl, @Value("${kraken.rest.apiKey}") String apiKey) {
+    public WebClient webclient(@Value("${kraken.rest.baseUrl}") String baseUrl, @Value("${kraken.rest.apiKey}") String apiKey,
+                               @Value("${kraken.rest.maxInMemorySize}") DataSize maxInMemorySize, HttpClient krakenHttpClient,
+                               KrakenMetrics krakenMetrics, KrakenThrottle krakenThrottle, KrakenCircuitBreakers krakenCircuitBreakers) {
+        Assert.isTrue(maxInMemorySize.toBytes() <= Integer.MAX_VALUE, "kraken.rest.maxInMemorySize cannot be 2GB or more.");
         logger.debug("Loaded Kraken base url [{}]", baseUrl);
         return WebClient
                 .builder()
+                .clientConnector(new ReactorClientHttpConnector(krakenHttpClient))
+                .codecs(configurer -> configurer.defaultCodecs().maxInMemorySize((int) maxInMemorySize.toBytes()))
                 .filter(requestLogger())
                 .filter(errorHandler())
+                //inside errorHandler, so the breaker and throttle see 429 and 5xx responses as responses
+                .filter(circuitBreaker(krakenCircuitBreakers))
+                .filter(throttle(krakenThrottle))
+                //last, so it times the exchange itself and sees error responses before errorHandler turns them into exceptions
+                .filter(requestMetrics(krakenMetrics))
                 .baseUrl(baseUrl)
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
                 .defaultHeader("x-api-key", apiKey)
                 .build();
     }
 
+    /**
+     * Pool shared by every Kraken call, so concurrent sites reuse open (and already TLS negotiated) connections.
+     * Idle connections are closed after {@code maxIdleTime} and, when {@code evictionInterval} is positive,
+     * swept in the background rather than only on the next acquire.
+     */
+    @Bean(destroyMethod = "dispose")
+    public ConnectionProvider krakenConnectionProvider(@Value("${kraken.rest.pool.maxConnections}") int maxConnections,
+                                                       @Value("${kraken.rest.pool.pendingAcquireMaxCount}") int pendingAcquireMaxCount,
+                                                       @Value("${kraken.rest.pool.pendingAcquireTimeout}") Duration pendingAcquireTimeout,
+                                                       @Value("${kraken.rest.pool.maxIdleTime}") Duration maxIdleTime,
+                                                       @Value("${kraken.rest.pool.evictionInterval}") Duration evictionInterval) {
+        logger.debug("Kraken connection pool of [{}] connections, [{}] pending acquires", maxConnections, pendingAcquireMaxCount);
+        return ConnectionProvider.builder("kraken")
+                .maxConnections(maxConnections)
+                .pendingAcquireMaxCount(pendingAcquireMaxCount)
+                .pendingAcquireTimeout(pendingAcquireTimeout)
+                .maxIdleTime(maxIdleTime)
+                .evictInBackground(evictionInterval)
+                .build();
+    }
+
+    /**
+     * HTTP/2 is only offered for https base urls, where it is negotiated with ALPN and falls back to HTTP/1.1 if the
+     * server does not support it. With compression on, requests send {@code Accept-Encoding: gzip} and gzipped
+     * responses are decompressed transparently.
+     */
+    @Bean
+    public HttpClient krakenHttpClient(ConnectionProvider krakenConnectionProvider,
+                                       @Value("${kraken.rest.baseUrl}") String baseUrl,
+                                       @Value("${kraken.rest.connectTimeout}") Duration connectTimeout,
+                                       @Value("${kraken.rest.readTimeout}") Duration readTimeout,
+                                       @Value("${kraken.rest.responseTimeout}") Duration responseTimeout,
+                                       @Value("${kraken.rest.http2}") boolean http2,
+                                       @Value("${kraken.rest.compression}") boolean compression) {
+        HttpClient httpClient = HttpClient.create(krakenConnectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) connectTimeout.toMillis())
+                .responseTimeout(responseTimeout)
+                .compress(compression)
+                //added per request, as handlers added to a pooled connection are removed when it is released
+                .doOnRequest((request, connection) -> connection.addHandlerLast(new ReadTimeoutHandler(readTimeout.toMillis(), TimeUnit.MILLISECONDS)));
+
+        if (http2 && baseUrl.startsWith("https")) {
+            httpClient = httpClient
+                    .secure()
+                    .protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+        } else if (http2) {
+            logger.info("HTTP/2 requires an https base url, using HTTP/1.1 for [{}]", baseUrl);
+        }
+        return httpClient;
+    }
+
     public ExchangeFilterFunction requestLogger() {
         return ExchangeFilterFunction.ofRequestProcessor(clientRequest -> {
             logger.info("Request: {} {}", clientRequest.method(), clientRequest.url());
@@ -43,21 +129,84 @@ public class WebConfiguration {
         });
     }
 
+    /**
+     * Records request latency until the response headers arrive, the response status and, once the body has been
+     * read, its size.
+     */
+    public ExchangeFilterFunction requestMetrics(KrakenMetrics krakenMetrics) {
+        return (clientRequest, next) -> {
+            final String endpoint = KrakenMetrics.endpointOf(clientRequest);
+            final String method = clientRequest.method().name();
+            final long start = System.nanoTime();
+
+            return next.exchange(clientRequest)
+                    .doOnError(ex -> krakenMetrics.recordRequest(endpoint, method, KrakenMetrics.IO_ERROR, System.nanoTime() - start))
+                    .map(clientResponse -> {
+                        krakenMetrics.recordRequest(endpoint, method, String.valueOf(clientResponse.statusCode().value()), System.nanoTime() - start);
+
+                        final AtomicLong bytes = new AtomicLong();
+                        return clientResponse.mutate()
+                                .body(body -> body
+                                        .doOnNext(buffer -> bytes.addAndGet(buffer.readableByteCount()))
+                                        .doOnComplete(() -> krakenMetrics.recordResponseSize(endpoint, bytes.get())))
+                                .build();
+                    });
+        };
+    }
+
+    /**
+     * Fails requests straight away while their endpoint's circuit breaker is open, before they wait on the throttle.
+     * Calls are timed from when the throttle lets them through, so waiting on it never counts as a slow call.
+     */
+    public ExchangeFilterFunction circuitBreaker(KrakenCircuitBreakers krakenCircuitBreakers) {
+        return (clientRequest, next) -> krakenCircuitBreakers.guard(KrakenMetrics.endpointOf(clientRequest),
+                onSend -> next.exchange(ClientRequest.from(clientRequest).attribute(ON_SEND_ATTRIBUTE, onSend).build()));
+    }
+
+    /**
+     * Holds each request back until {@link KrakenThrottle} allows it to be sent.
+     */
+    public ExchangeFilterFunction throttle(KrakenThrottle krakenThrottle) {
+        return (clientRequest, next) -> {
+            final Mono<ClientResponse> exchange = next.exchange(clientRequest);
+            final Mono<ClientResponse> sent = clientRequest.attribute(ON_SEND_ATTRIBUTE)
+                    .map(Runnable.class::cast)
+                    .map(onSend -> Mono.defer(() -> {
+                        onSend.run();
+                        return exchange;
+                    }))
+                    .orElse(exchange);
+            return krakenThrottle.throttle(KrakenMetrics.endpointOf(clientRequest), sent);
+        };
+    }
+
     public ExchangeFilterFunction errorHandler() {
         return ExchangeFilterFunction.ofResponseProcessor(clientResponse -> {
             logger.info("Completed with status: {}", clientResponse.statusCode().value());
 
+            final Duration retryAfter = RetryAfter.parse(clientResponse.headers().asHttpHeaders().getFirst(HttpHeaders.RETRY_AFTER)).orElse(null);
             if (clientResponse.statusCode().is5xxServerError()) {
-                return clientResponse.bodyToMono(ErrorMessage.class)
-                        .flatMap(errorBody -> Mono.error(new KrakenServerException(errorBody.message(), clientResponse.statusCode().value())));
+                return errorMessage(clientResponse)
+                        .flatMap(message -> Mono.error(new KrakenServerException(message, clientResponse.statusCode().value(), retryAfter)));
 
             } else if (clientResponse.statusCode().is4xxClientError()) {
-                return clientResponse.bodyToMono(ErrorMessage.class)
-                        .flatMap(errorBody -> Mono.error(new KrakenClientException(errorBody.message(), clientResponse.statusCode().value())));
+                return errorMessage(clientResponse)
+                        .flatMap(message -> Mono.error(new KrakenClientException(message, clientResponse.statusCode().value(), retryAfter)));
 
             } else {
                 return Mono.just(clientResponse);
             }
         });
     }
+
+    /**
+     * @return the message of a JSON {@link ErrorMessage} body, or the status when the body is empty or not JSON, so
+     * that every error response still fails the exchange rather than completing it empty
+     */
+    private static Mono<String> errorMessage(final ClientResponse clientResponse) {
+        return clientResponse.bodyToMono(ErrorMessage.class)
+                .mapNotNull(ErrorMessage::message)
+                .onErrorResume(ex -> ex instanceof CodecException || ex instanceof UnsupportedMediaTypeException, ex -> Mono.empty())
+                .defaultIfEmpty(clientResponse.statusCode().toString());
+    }
 }
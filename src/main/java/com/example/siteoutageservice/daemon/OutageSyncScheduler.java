@@ -0,0 +1,150 @@
+package com.example.siteoutageservice.daemon;
+
+import com.example.siteoutageservice.batch.BatchOutageService;
+import com.example.siteoutageservice.batch.SiteIds;
+import com.example.siteoutageservice.service.OutageDetailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.scheduling.support.CronTrigger;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the application running and syncs every configured site on a schedule, either {@code kraken.daemon.cron} or,
+ * when that is blank, every {@code kraken.daemon.interval} from when the previous run started. The JIT, connection
+ * pool and caches stay warm between runs instead of paying Spring Boot's start-up on every cron invocation.
+ * <p>
+ * Each run is handed to {@link BatchOutageService} without waiting for it, so a slow site does not hold up the
+ * schedule. A site is never synced twice at once: while its previous run is still in flight it is skipped, and a run
+ * with every site still in flight is skipped entirely. On shutdown no further runs start and in-flight sites are given
+ * up to {@code kraken.daemon.shutdownTimeout} to finish their POSTs.
+ */
+@Component
+@ConditionalOnProperty(name = "kraken.mode", havingValue = "daemon")
+public class OutageSyncScheduler implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutageSyncScheduler.class);
+
+    private final BatchOutageService batchOutageService;
+    private final OutageDetailService outageDetailService;
+    private final List<String> siteIds;
+    private final String cron;
+    private final Duration interval;
+    private final Duration shutdownTimeout;
+
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private ThreadPoolTaskScheduler taskScheduler;
+    private volatile boolean running;
+
+    @Autowired
+    public OutageSyncScheduler(BatchOutageService batchOutageService, OutageDetailService outageDetailService,
+                               @Value("${kraken.daemon.siteIds}") List<String> siteIds,
+                               @Value("${kraken.daemon.siteIdsFile:}") String siteIdsFile,
+                               @Value("${kraken.daemon.cron:}") String cron,
+                               @Value("${kraken.daemon.interval}") Duration interval,
+                               @Value("${kraken.daemon.shutdownTimeout}") Duration shutdownTimeout) {
+        Assert.isTrue(!cron.isBlank() || interval.toMillis() > 0, "kraken.daemon.interval must be greater than 0 when no kraken.daemon.cron is set.");
+        this.batchOutageService = batchOutageService;
+        this.outageDetailService = outageDetailService;
+        this.siteIds = SiteIds.resolve(siteIds, siteIdsFile);
+        this.cron = cron;
+        this.interval = interval;
+        this.shutdownTimeout = shutdownTimeout;
+    }
+
+    @Override
+    public void start() {
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setThreadNamePrefix("outage-sync-");
+        taskScheduler.initialize();
+
+        if (cron.isBlank()) {
+            logger.info("Syncing [{}] sites every [{}]", siteIds.size(), interval);
+            //runOnce only starts the run, so runs are spaced from their starts rather than from when the last one finished
+            taskScheduler.scheduleAtFixedRate(this::runOnce, interval);
+        } else {
+            logger.info("Syncing [{}] sites on cron [{}]", siteIds.size(), cron);
+            taskScheduler.schedule(this::runOnce, new CronTrigger(cron));
+        }
+        running = true;
+    }
+
+    /**
+     * Stops scheduling runs, then waits for in-flight sites to finish.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        taskScheduler.shutdown();
+
+        logger.info("Waiting up to [{}] for [{}] in-flight sites to finish", shutdownTimeout, inFlight.size());
+        try {
+            if (!awaitInFlight(shutdownTimeout)) {
+                logger.warn("Shutting down with sites {} still in flight", inFlight);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for sites {} to finish", inFlight);
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Starts a sync of every site that is not still in flight from an earlier run.
+     */
+    void runOnce() {
+        final List<String> due = siteIds.stream()
+                .filter(inFlight::add)
+                .toList();
+        if (due.isEmpty()) {
+            logger.info("Skipping run, all [{}] sites are still in flight from the previous run", siteIds.size());
+            return;
+        }
+        if (due.size() < siteIds.size()) {
+            logger.info("Skipping [{}] sites still in flight from the previous run", siteIds.size() - due.size());
+        }
+
+        //a failing site is reported and released like any other, so an error here means /outages failed and no site ran
+        batchOutageService.runAsync(due, outageDetailService.getOutagesTimeFilter(), result -> release(result.siteId()))
+                .subscribe(report -> {}, ex -> {
+                    logger.warn("Run failed fetching outages - {} - {}", ex.getClass().getSimpleName(), ex.getMessage());
+                    due.forEach(this::release);
+                });
+    }
+
+    boolean awaitInFlight(final Duration timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (inFlight) {
+            while (!inFlight.isEmpty()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(inFlight, remaining);
+            }
+        }
+        return true;
+    }
+
+    private void release(final String siteId) {
+        synchronized (inFlight) {
+            inFlight.remove(siteId);
+            inFlight.notifyAll();
+        }
+    }
+}
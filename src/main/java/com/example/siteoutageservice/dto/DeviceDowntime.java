@@ -0,0 +1,17 @@
+package com.example.siteoutageservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * A device's outages merged into the disjoint intervals it was down for. {@code longestOutageMillis} is the longest
+ * merged interval, and an interval without an {@code end} is still ongoing.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record DeviceDowntime(String id, String name, int outageCount, long downtimeMillis, long longestOutageMillis, List<Interval> intervals) {
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    public record Interval(String begin, String end) {
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.siteoutageservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+/**
+ * An outage that was created, or updated (e.g. an ongoing outage that ended). The outage is identified by its device
+ * id and begin time, so both are applied the same way: as the latest version of that outage.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record OutageEvent(Type type, Outage outage) {
+
+    public enum Type {
+        CREATED, UPDATED
+    }
+}
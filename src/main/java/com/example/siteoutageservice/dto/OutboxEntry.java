@@ -0,0 +1,17 @@
+package com.example.siteoutageservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+/**
+ * A line of the publish outbox log. A {@code PENDING} entry holds a site's outages waiting to be posted, and a
+ * {@code DELIVERED} entry with the same {@code seq} marks them as posted.
+ */
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record OutboxEntry(Type type, long seq, String siteId, List<DeviceOutage> outages) {
+
+    public enum Type {
+        PENDING, DELIVERED
+    }
+}
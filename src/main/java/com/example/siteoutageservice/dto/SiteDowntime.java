@@ -0,0 +1,9 @@
+package com.example.siteoutageservice.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+
+import java.util.List;
+
+@JsonIgnoreProperties(ignoreUnknown = true)
+public record SiteDowntime(String siteId, List<DeviceDowntime> devices) {
+}
@@ -0,0 +1,9 @@
+package com.example.siteoutageservice.dto;
+
+import java.util.List;
+
+/**
+ * A site's joined outages together with the downtime of each of its devices, worked out from the same site info.
+ */
+public record SiteOutages(List<DeviceOutage> outages, List<DeviceDowntime> downtime) {
+}
@@ -0,0 +1,30 @@
+package com.example.siteoutageservice.exception;
+
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Thrown without calling Kraken while the circuit breaker for an endpoint is open.
+ */
+@Getter
+public class KrakenCircuitOpenException extends RuntimeException{
+
+    private final String endpoint;
+    private final Duration retryAfter;
+
+    public KrakenCircuitOpenException(String endpoint, Duration retryAfter){
+        super("Circuit breaker for " + endpoint + " is open, Kraken was not called");
+        this.endpoint = endpoint;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return how long until the breaker lets trial calls through again, absent while those trial calls are in flight
+     */
+    public Optional<Duration> getRetryAfter(){
+        return Optional.ofNullable(retryAfter);
+    }
+
+}
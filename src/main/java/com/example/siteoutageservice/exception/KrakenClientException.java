@@ -2,14 +2,30 @@ package com.example.siteoutageservice.exception;
 
 import lombok.Getter;
 
+import java.time.Duration;
+import java.util.Optional;
+
 @Getter
 public class KrakenClientException extends RuntimeException{
 
     private final int status;
+    private final Duration retryAfter;
 
     public KrakenClientException(String message, int status){
+        this(message, status, null);
+    }
+
+    public KrakenClientException(String message, int status, Duration retryAfter){
         super(message);
         this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return how long Kraken asked us to wait before retrying, from its Retry-After header
+     */
+    public Optional<Duration> getRetryAfter(){
+        return Optional.ofNullable(retryAfter);
     }
 
 }
@@ -0,0 +1,12 @@
+package com.example.siteoutageservice.exception;
+
+/**
+ * Thrown by server mode when a query arrives before outages have first been loaded from Kraken.
+ */
+public class OutagesNotLoadedException extends RuntimeException{
+
+    public OutagesNotLoadedException(String message){
+        super(message);
+    }
+
+}
@@ -0,0 +1,91 @@
+package com.example.siteoutageservice.index;
+
+/**
+ * Dictionary of device ids, giving each distinct id a dense int code in the order it was first added.
+ * Ids live in an open addressing table with linear probing, so finding an id is a single probe sequence over
+ * flat arrays: no entry objects, no boxing, and {@code equals} only runs on a slot whose cached hash matches.
+ */
+public final class DeviceIdTable {
+
+    private static final int ABSENT = -1;
+
+    private String[] keys;
+    private int[] hashes;
+    private int[] codes;
+    private int size;
+
+    public DeviceIdTable(final int expectedIds) {
+        //at most half full, so probe sequences stay short
+        final int capacity = Integer.highestOneBit(Math.max(2, expectedIds) * 2 - 1) << 1;
+        allocate(capacity);
+    }
+
+    /**
+     * @return the code of {@code id}, adding it with the next free code if it is not already in the table
+     */
+    public int add(final String id) {
+        final int hash = id.hashCode();
+        final int slot = find(id, hash);
+        if (keys[slot] != null) {
+            return codes[slot];
+        }
+
+        keys[slot] = id;
+        hashes[slot] = hash;
+        codes[slot] = size;
+        if (++size * 2 > keys.length) {
+            resize();
+        }
+        return size - 1;
+    }
+
+    /**
+     * @return the code of {@code id}, or -1 if it was never added
+     */
+    public int codeOf(final String id) {
+        final int slot = find(id, id.hashCode());
+        return keys[slot] == null ? ABSENT : codes[slot];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the slot holding {@code id}, or the empty slot it would go in
+     */
+    private int find(final String id, final int hash) {
+        final int mask = keys.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (keys[slot] != null && !(hashes[slot] == hash && keys[slot].equals(id))) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        final String[] oldKeys = keys;
+        final int[] oldHashes = hashes;
+        final int[] oldCodes = codes;
+        allocate(oldKeys.length * 2);
+
+        final int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = (oldHashes[i] ^ (oldHashes[i] >>> 16)) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                hashes[slot] = oldHashes[i];
+                codes[slot] = oldCodes[i];
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        keys = new String[capacity];
+        hashes = new int[capacity];
+        codes = new int[capacity];
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.siteoutageservice.index;
+
+import java.util.List;
+
+/**
+ * One device's outages merged into the disjoint intervals it was down for. {@code total} and {@code longest} are in
+ * millis, {@code longest} being the longest merged interval rather than the longest single outage. An interval
+ * ending at {@link Long#MAX_VALUE} is still ongoing and counts up to the instant the downtime was worked out.
+ */
+public record Downtime(int outageCount, long total, long longest, List<Interval> intervals) {
+
+    public record Interval(long begin, long end) {
+
+        public boolean isOngoing(){
+            return end == Long.MAX_VALUE;
+        }
+    }
+}
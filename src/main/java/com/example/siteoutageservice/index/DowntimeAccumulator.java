@@ -0,0 +1,88 @@
+package com.example.siteoutageservice.index;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects one device's outage intervals in any order and merges those that overlap or touch. Begins and ends are
+ * kept in two primitive arrays and sorted independently, which is enough to find the union: sweeping both in order,
+ * a merged interval closes at the first end that leaves no outage open. A begin equal to an end is taken first, so
+ * an outage starting exactly when another ends extends it rather than starting a new interval.
+ * <p>
+ * Not thread safe. {@link #reset()} lets one instance be reused across devices.
+ */
+public final class DowntimeAccumulator {
+
+    private long[] begins;
+    private long[] ends;
+    private int count;
+
+    public DowntimeAccumulator() {
+        this(8);
+    }
+
+    public DowntimeAccumulator(final int expectedOutages) {
+        this.begins = new long[Math.max(1, expectedOutages)];
+        this.ends = new long[begins.length];
+    }
+
+    /**
+     * An end before its begin is treated as an outage of no length.
+     */
+    public void add(final long begin, final long end) {
+        if (count == begins.length) {
+            begins = Arrays.copyOf(begins, count * 2);
+            ends = Arrays.copyOf(ends, count * 2);
+        }
+        begins[count] = begin;
+        ends[count] = Math.max(begin, end);
+        count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public void reset() {
+        count = 0;
+    }
+
+    /**
+     * @param now instant ongoing intervals are counted up to
+     */
+    public Downtime finish(final long now) {
+        Arrays.sort(begins, 0, count);
+        Arrays.sort(ends, 0, count);
+
+        final List<Downtime.Interval> intervals = new ArrayList<>();
+        long total = 0;
+        long longest = 0;
+        int open = 0;
+        long begin = 0;
+        int b = 0;
+        int e = 0;
+        while (e < count) {
+            if (b < count && begins[b] <= ends[e]) {
+                if (open++ == 0) {
+                    begin = begins[b];
+                }
+                b++;
+            } else {
+                if (--open == 0) {
+                    final long length = Math.max(0, Math.min(ends[e], now) - begin);
+                    intervals.add(new Downtime.Interval(begin, ends[e]));
+                    total = saturatedAdd(total, length);
+                    longest = Math.max(longest, length);
+                }
+                e++;
+            }
+        }
+        return new Downtime(count, total, longest, intervals);
+    }
+
+    private static long saturatedAdd(final long a, final long b) {
+        final long sum = a + b;
+        return sum < a ? Long.MAX_VALUE : sum;
+    }
+}
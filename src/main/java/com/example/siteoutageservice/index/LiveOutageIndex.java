@@ -0,0 +1,111 @@
+package com.example.siteoutageservice.index;
+
+import com.example.siteoutageservice.dto.Outage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Outages grouped by device id that are changed in place as outage events arrive, rather than rebuilt from the whole
+ * of /outages like {@link OutageIndex}. Loading keeps every outage it is given, like {@link OutageIndex}, while an event
+ * is identified by its device id and begin time, so applying one replaces whatever its device holds beginning at that
+ * time, e.g. when an ongoing outage ends. Each device keeps its outages in a tree sorted by begin time, so applying an
+ * outage or querying a device's window costs a lookup per device instead of a pass over every outage.
+ * <p>
+ * Matches are returned in the order outages were first seen, which for an index loaded from /outages and then
+ * extended by events is the order Kraken lists them in. Not thread safe, callers apply and query from one thread at a time.
+ */
+public class LiveOutageIndex {
+
+    private final Map<String, NavigableMap<Long, List<Entry>>> outagesByDevice = new HashMap<>();
+    private long sequence;
+    private int size;
+
+    /**
+     * Keeps every outage, including those sharing a device and begin time, so the index holds the same rows as an
+     * {@link OutageIndex} built from the same outages.
+     */
+    public static LiveOutageIndex of(final List<OutageRecord> outages) {
+        final LiveOutageIndex index = new LiveOutageIndex();
+        outages.forEach(index::add);
+        return index;
+    }
+
+    private void add(final OutageRecord outage) {
+        outagesByDevice.computeIfAbsent(outage.id(), id -> new TreeMap<>())
+                .computeIfAbsent(outage.begin(), begin -> new ArrayList<>(1))
+                .add(new Entry(sequence++, outage));
+        size++;
+    }
+
+    /**
+     * Adds the outage, or replaces those its device already has beginning at the same time.
+     *
+     * @return false if the same outage was already held, and the only one at that time, so nothing changed
+     */
+    public boolean apply(final OutageRecord outage) {
+        final NavigableMap<Long, List<Entry>> device = outagesByDevice.computeIfAbsent(outage.id(), id -> new TreeMap<>());
+        final List<Entry> held = device.get(outage.begin());
+        if (held == null) {
+            add(outage);
+            return true;
+        }
+        if (held.size() == 1 && held.get(0).record().outage().equals(outage.outage())) {
+            return false;
+        }
+        //keeps the place the first of them was seen in
+        final Entry replacement = new Entry(held.get(0).sequence(), outage);
+        size -= held.size() - 1;
+        held.clear();
+        held.add(replacement);
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int deviceCount() {
+        return outagesByDevice.size();
+    }
+
+    /**
+     * Same as {@link OutageIndex#join(Collection, TimeWindow, OutageIndex.Joiner)}, handing each outage of the given
+     * devices that began within the window to {@code joiner} with the position of its device id in {@code deviceIds},
+     * in the order the outages were first seen.
+     */
+    public <T> List<T> join(final Collection<String> deviceIds, final TimeWindow window, final OutageIndex.Joiner<T> joiner) {
+        final List<Match> matches = new ArrayList<>();
+        int d = 0;
+        for (String deviceId : deviceIds) {
+            final NavigableMap<Long, List<Entry>> device = outagesByDevice.get(deviceId);
+            if (device != null) {
+                for (List<Entry> entries : device.subMap(window.from(), true, window.until(), false).values()) {
+                    for (Entry entry : entries) {
+                        matches.add(new Match(entry.sequence(), d, entry.record().outage()));
+                    }
+                }
+            }
+            d++;
+        }
+        matches.sort(Comparator.comparingLong(Match::sequence));
+
+        final List<T> result = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            result.add(joiner.join(match.device(), match.outage()));
+        }
+        return result;
+    }
+
+    private record Entry(long sequence, OutageRecord record) {
+    }
+
+    private record Match(long sequence, int device, Outage outage) {
+    }
+}
@@ -0,0 +1,298 @@
+package com.example.siteoutageservice.index;
+
+import com.example.siteoutageservice.dto.Outage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Outages grouped by device id, built once per fetch of /outages and shared across sites.
+ * Device ids are dictionary encoded to ints as the index is built, and each device keeps its outages sorted by
+ * begin time, so a time window query is one {@link DeviceIdTable} lookup per device followed by a binary search.
+ * Matches are returned in the order Kraken sent them, since the original response position of every outage is kept
+ * alongside its begin time.
+ */
+public class OutageIndex {
+
+    private static final int INITIAL_DEVICE_IDS = 1024;
+    private static final int INSERTION_SORT_THRESHOLD = 16;
+    private static final DeviceOutages NO_OUTAGES = new DeviceOutages(new long[0], new int[0]);
+
+    private final List<OutageRecord> outages;
+    private final DeviceIdTable deviceIds;
+    private final DeviceOutages[] outagesByDeviceCode;
+
+    private OutageIndex(List<OutageRecord> outages, DeviceIdTable deviceIds, DeviceOutages[] outagesByDeviceCode) {
+        this.outages = outages;
+        this.deviceIds = deviceIds;
+        this.outagesByDeviceCode = outagesByDeviceCode;
+    }
+
+    public static OutageIndex of(final List<OutageRecord> outages) {
+        final List<OutageRecord> records = List.copyOf(outages);
+
+        //each device id is hashed once here, after which outages are grouped by code in plain arrays. Devices are far
+        //fewer than outages, so the table starts small and grows with the distinct ids
+        final DeviceIdTable deviceIds = new DeviceIdTable(Math.min(records.size(), INITIAL_DEVICE_IDS));
+        final int[] deviceCodes = new int[records.size()];
+        for (int i = 0; i < deviceCodes.length; i++) {
+            deviceCodes[i] = deviceIds.add(records.get(i).id());
+        }
+
+        final int[] counts = new int[deviceIds.size()];
+        for (int code : deviceCodes) {
+            counts[code]++;
+        }
+        final DeviceOutages[] outagesByDeviceCode = new DeviceOutages[counts.length];
+        for (int code = 0; code < counts.length; code++) {
+            outagesByDeviceCode[code] = new DeviceOutages(new long[counts[code]], new int[counts[code]]);
+        }
+
+        //grouped in response order, then each device is sorted by begin on its own
+        final int[] filled = new int[counts.length];
+        for (int position = 0; position < deviceCodes.length; position++) {
+            final int code = deviceCodes[position];
+            final DeviceOutages device = outagesByDeviceCode[code];
+            device.begins()[filled[code]] = records.get(position).begin();
+            device.positions()[filled[code]] = position;
+            filled[code]++;
+        }
+        for (DeviceOutages device : outagesByDeviceCode) {
+            sortByBegin(device.begins(), device.positions());
+        }
+
+        return new OutageIndex(records, deviceIds, outagesByDeviceCode);
+    }
+
+    /**
+     * Stable sort of one device's outages by begin time, moving each position along with its begin. Positions start
+     * in response order, so outages beginning at the same time stay in response order. Devices whose outages
+     * already arrived in begin order, as they usually do, are only scanned.
+     */
+    static void sortByBegin(final long[] begins, final int[] positions) {
+        for (int i = 1; i < begins.length; i++) {
+            if (begins[i - 1] > begins[i]) {
+                mergeSort(begins.clone(), positions.clone(), begins, positions, 0, begins.length);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Sorts {@code [low, high)} into the destination arrays, alternating the roles of source and destination on the
+     * way down. Both start with the same contents.
+     */
+    private static void mergeSort(final long[] srcBegins, final int[] srcPositions, final long[] dstBegins, final int[] dstPositions,
+                                  final int low, final int high) {
+        if (high - low < INSERTION_SORT_THRESHOLD) {
+            for (int i = low + 1; i < high; i++) {
+                final long begin = dstBegins[i];
+                final int position = dstPositions[i];
+                int j = i - 1;
+                while (j >= low && dstBegins[j] > begin) {
+                    dstBegins[j + 1] = dstBegins[j];
+                    dstPositions[j + 1] = dstPositions[j];
+                    j--;
+                }
+                dstBegins[j + 1] = begin;
+                dstPositions[j + 1] = position;
+            }
+            return;
+        }
+
+        final int mid = (low + high) >>> 1;
+        mergeSort(dstBegins, dstPositions, srcBegins, srcPositions, low, mid);
+        mergeSort(dstBegins, dstPositions, srcBegins, srcPositions, mid, high);
+        for (int i = low, p = low, q = mid; i < high; i++) {
+            if (q >= high || (p < mid && srcBegins[p] <= srcBegins[q])) {
+                dstBegins[i] = srcBegins[p];
+                dstPositions[i] = srcPositions[p++];
+            } else {
+                dstBegins[i] = srcBegins[q];
+                dstPositions[i] = srcPositions[q++];
+            }
+        }
+    }
+
+    public int size() {
+        return outages.size();
+    }
+
+    public int deviceCount() {
+        return deviceIds.size();
+    }
+
+    /**
+     * @return every indexed outage in response order
+     */
+    public List<OutageRecord> records() {
+        return outages;
+    }
+
+    /**
+     * @return every outage belonging to one of the given device ids, in original response order.
+     */
+    public List<Outage> outagesFor(final Collection<String> deviceIds) {
+        return outagesFor(deviceIds, TimeWindow.ALL);
+    }
+
+    /**
+     * @return every outage belonging to one of the given device ids that began within the window,
+     * in original response order.
+     */
+    public List<Outage> outagesFor(final Collection<String> deviceIds, final TimeWindow window) {
+        return join(deviceIds, window, (device, outage) -> outage);
+    }
+
+    /**
+     * Like {@link #outagesFor(Collection, TimeWindow)}, but hands each outage to {@code joiner} along with the
+     * position of its device id in {@code deviceIds}, so callers can look up whatever they keep for that device
+     * by position rather than hashing the outage's id again.
+     */
+    public <T> List<T> join(final Collection<String> deviceIds, final TimeWindow window, final Joiner<T> joiner) {
+        final long[] matches = matchesFor(deviceIds, window);
+
+        final List<T> result = new ArrayList<>(matches.length);
+        for (long match : matches) {
+            result.add(joiner.join((int) match, outages.get((int) (match >>> 32)).outage()));
+        }
+        return result;
+    }
+
+    /**
+     * Merges each device's outages that began within the window into its {@link Downtime}, handing it to
+     * {@code joiner} with the position of the device id in {@code deviceIds}. Devices without outages in the window
+     * are left out. Each device's outages are read straight from the index, so no outage or joined row is created.
+     *
+     * @param now instant ongoing outages are counted up to
+     */
+    public <T> List<T> downtime(final Collection<String> deviceIds, final TimeWindow window, final long now, final DowntimeJoiner<T> joiner) {
+        final List<T> result = new ArrayList<>();
+        final DowntimeAccumulator accumulator = new DowntimeAccumulator();
+        int d = 0;
+        for (String deviceId : deviceIds) {
+            final int code = this.deviceIds.codeOf(deviceId);
+            final DeviceOutages device = code < 0 ? NO_OUTAGES : outagesByDeviceCode[code];
+            final int end = device.lowerBound(window.until());
+            for (int j = device.lowerBound(window.from()); j < end; j++) {
+                accumulator.add(device.begins()[j], outages.get(device.positions()[j]).end());
+            }
+            if (accumulator.count() > 0) {
+                result.add(joiner.join(d, accumulator.finish(now)));
+                accumulator.reset();
+            }
+            d++;
+        }
+        return result;
+    }
+
+    /**
+     * {@link #join(Collection, TimeWindow, Joiner)} and {@link #downtime(Collection, TimeWindow, long, DowntimeJoiner)}
+     * in a single walk over the matches: each matched outage is joined and added to its device's downtime in turn.
+     *
+     * @param now instant ongoing outages are counted up to
+     */
+    public <T, D> Joined<T, D> joinWithDowntime(final Collection<String> deviceIds, final TimeWindow window, final long now,
+                                                final Joiner<T> joiner, final DowntimeJoiner<D> downtimeJoiner) {
+        final long[] matches = matchesFor(deviceIds, window);
+
+        final List<T> rows = new ArrayList<>(matches.length);
+        final DowntimeAccumulator[] accumulators = new DowntimeAccumulator[deviceIds.size()];
+        for (long match : matches) {
+            final int device = (int) match;
+            final OutageRecord record = outages.get((int) (match >>> 32));
+            rows.add(joiner.join(device, record.outage()));
+            if (accumulators[device] == null) {
+                accumulators[device] = new DowntimeAccumulator();
+            }
+            accumulators[device].add(record.begin(), record.end());
+        }
+
+        final List<D> downtime = new ArrayList<>();
+        for (int device = 0; device < accumulators.length; device++) {
+            if (accumulators[device] != null) {
+                downtime.add(downtimeJoiner.join(device, accumulators[device].finish(now)));
+            }
+        }
+        return new Joined<>(rows, downtime);
+    }
+
+    /**
+     * @return every match as its response position in the high 32 bits and the position of its device id in
+     * {@code deviceIds} in the low 32 bits, sorted by response position
+     */
+    private long[] matchesFor(final Collection<String> deviceIds, final TimeWindow window) {
+        final DeviceOutages[] perDevice = new DeviceOutages[deviceIds.size()];
+        final int[] starts = new int[perDevice.length];
+        final int[] ends = new int[perDevice.length];
+        int total = 0;
+        int d = 0;
+        for (String deviceId : deviceIds) {
+            final int code = this.deviceIds.codeOf(deviceId);
+            final DeviceOutages device = code < 0 ? NO_OUTAGES : outagesByDeviceCode[code];
+            perDevice[d] = device;
+            starts[d] = device.lowerBound(window.from());
+            ends[d] = device.lowerBound(window.until());
+            total += ends[d] - starts[d];
+            d++;
+        }
+
+        final long[] matches = new long[total];
+        int offset = 0;
+        for (int i = 0; i < perDevice.length; i++) {
+            final int[] positions = perDevice[i].positions();
+            for (int j = starts[i]; j < ends[i]; j++) {
+                matches[offset++] = ((long) positions[j] << 32) | i;
+            }
+        }
+        Arrays.sort(matches);
+        return matches;
+    }
+
+    /**
+     * Combines an outage with the position of its device id in the ids it was queried with.
+     */
+    @FunctionalInterface
+    public interface Joiner<T> {
+        T join(int device, Outage outage);
+    }
+
+    /**
+     * Combines a device's downtime with the position of its device id in the ids it was queried with.
+     */
+    @FunctionalInterface
+    public interface DowntimeJoiner<T> {
+        T join(int device, Downtime downtime);
+    }
+
+    /**
+     * Joined rows in response order, and the downtime of every device they matched in the order of its id.
+     */
+    public record Joined<T, D>(List<T> rows, List<D> downtime) {
+    }
+
+    /**
+     * One device's outages, as begin times sorted ascending with the matching response positions.
+     */
+    private record DeviceOutages(long[] begins, int[] positions) {
+
+        /**
+         * @return the index of the first outage beginning at or after {@code instant}
+         */
+        int lowerBound(final long instant) {
+            int low = 0;
+            int high = begins.length;
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (begins[mid] < instant) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
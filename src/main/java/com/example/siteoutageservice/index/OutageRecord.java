@@ -0,0 +1,20 @@
+package com.example.siteoutageservice.index;
+
+import com.example.siteoutageservice.dto.Outage;
+
+/**
+ * Internal view of an {@link Outage} with begin/end parsed to epoch millis once, at decode time.
+ * The original dto is kept untouched so the strings posted back to Kraken match the input exactly.
+ * An outage without an end is treated as still ongoing.
+ */
+public record OutageRecord(Outage outage, long begin, long end) {
+
+    public static OutageRecord of(final Outage outage){
+        final long end = outage.end() == null ? Long.MAX_VALUE : OutageTimestamps.parseEpochMillis(outage.end());
+        return new OutageRecord(outage, OutageTimestamps.parseEpochMillis(outage.begin()), end);
+    }
+
+    public String id(){
+        return outage.id();
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.siteoutageservice.index;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Parses Kraken outage timestamps to epoch millis.
+ * Kraken always sends UTC timestamps shaped {@code yyyy-MM-ddTHH:mm:ss.SSSZ}, so that shape is parsed directly from
+ * the characters without allocating. Anything else falls back to {@link ZonedDateTime#parse(CharSequence)}, which
+ * is what the filter used before, so other offsets or precisions are still accepted.
+ */
+public final class OutageTimestamps {
+
+    private static final int FIXED_LENGTH = "yyyy-MM-ddTHH:mm:ss.SSSZ".length();
+    private static final long MILLIS_PER_DAY = 86_400_000L;
+    private static final DateTimeFormatter FIXED_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    private OutageTimestamps(){
+    }
+
+    /**
+     * @throws java.time.format.DateTimeParseException if the value is not a valid ISO-8601 zoned date time
+     */
+    public static long parseEpochMillis(final String value){
+        final long fast = parseFixed(value);
+        return fast != Long.MIN_VALUE ? fast : ZonedDateTime.parse(value).toInstant().toEpochMilli();
+    }
+
+    /**
+     * @return the instant in the same {@code yyyy-MM-ddTHH:mm:ss.SSSZ} shape Kraken sends
+     */
+    public static String formatEpochMillis(final long epochMillis){
+        return FIXED_FORMAT.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    private static long parseFixed(final String s){
+        if (s == null || s.length() != FIXED_LENGTH
+                || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != 'T'
+                || s.charAt(13) != ':' || s.charAt(16) != ':' || s.charAt(19) != '.' || s.charAt(23) != 'Z') {
+            return Long.MIN_VALUE;
+        }
+
+        final int year = digits(s, 0, 4);
+        final int month = digits(s, 5, 2);
+        final int day = digits(s, 8, 2);
+        final int hour = digits(s, 11, 2);
+        final int minute = digits(s, 14, 2);
+        final int second = digits(s, 17, 2);
+        final int millis = digits(s, 20, 3);
+
+        if ((year | month | day | hour | minute | second | millis) < 0
+                || month < 1 || month > 12 || day < 1 || day > lengthOfMonth(year, month)
+                || hour > 23 || minute > 59 || second > 59) {
+            return Long.MIN_VALUE;
+        }
+
+        return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+                + hour * 3_600_000L + minute * 60_000L + second * 1_000L + millis;
+    }
+
+    /**
+     * @return the decimal value of {@code length} digits starting at {@code offset}, or -1 if any is not a digit
+     */
+    private static int digits(final String s, final int offset, final int length){
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            final int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int lengthOfMonth(final int year, final int month){
+        return switch (month) {
+            case 2 -> (year % 4 == 0 && (year % 100 != 0 || year % 400 == 0)) ? 29 : 28;
+            case 4, 6, 9, 11 -> 30;
+            default -> 31;
+        };
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date (H. Hinnant's days_from_civil).
+     */
+    private static long daysFromCivil(final int year, final int month, final int day){
+        final int y = month <= 2 ? year - 1 : year;
+        final int era = (y >= 0 ? y : y - 399) / 400;
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146_097L + dayOfEra - 719_468L;
+    }
+}
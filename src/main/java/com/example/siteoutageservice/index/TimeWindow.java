@@ -0,0 +1,37 @@
+package com.example.siteoutageservice.index;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Half open window {@code [from, until)} of epoch millis that an outage must begin in.
+ */
+public record TimeWindow(long from, long until) {
+
+    public static final TimeWindow ALL = new TimeWindow(Long.MIN_VALUE, Long.MAX_VALUE);
+
+    public TimeWindow {
+        Assert.isTrue(from <= until, "Time window cannot end before it starts.");
+    }
+
+    public static TimeWindow since(final long from){
+        return new TimeWindow(from, Long.MAX_VALUE);
+    }
+
+    public static TimeWindow between(final long from, final long until){
+        return new TimeWindow(from, until);
+    }
+
+    /**
+     * Parses ISO-8601 bounds, where a blank bound leaves that side of the window open.
+     */
+    public static TimeWindow parse(final String from, final String until){
+        return new TimeWindow(
+                StringUtils.hasText(from) ? OutageTimestamps.parseEpochMillis(from.trim()) : Long.MIN_VALUE,
+                StringUtils.hasText(until) ? OutageTimestamps.parseEpochMillis(until.trim()) : Long.MAX_VALUE);
+    }
+
+    public boolean contains(final long instant){
+        return instant >= from && instant < until;
+    }
+}
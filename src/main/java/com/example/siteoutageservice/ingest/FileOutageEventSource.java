@@ -0,0 +1,156 @@
+package com.example.siteoutageservice.ingest;
+
+import com.example.siteoutageservice.dto.OutageEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Tails an append-only file of newline delimited JSON {@link OutageEvent}s, reading whatever was appended every
+ * {@code pollInterval}. Only what was appended since the last poll is read, and a line is only read once its newline
+ * is written, so a half written event is picked up whole by a later poll.
+ * <p>
+ * The file is read from the start on subscribing, which is harmless as applying an event twice changes nothing. A file
+ * that shrinks is taken to have been replaced and is read again from the start. Lines that cannot be decoded are
+ * logged and skipped, and a file that is missing or cannot be read is tried again at the next poll.
+ */
+public class FileOutageEventSource implements OutageEventSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileOutageEventSource.class);
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ObjectMapper mapper;
+    private final Path path;
+    private final Duration pollInterval;
+
+    public FileOutageEventSource(ObjectMapper mapper, Path path, Duration pollInterval) {
+        Assert.notNull(path, "kraken.ingest.file.path cannot be null.");
+        Assert.isTrue(pollInterval.toMillis() > 0, "kraken.ingest.file.pollInterval must be greater than 0.");
+        this.mapper = mapper;
+        this.path = path;
+        this.pollInterval = pollInterval;
+    }
+
+    @Override
+    public Flux<OutageEvent> events() {
+        return Flux.defer(() -> {
+            final Tail tail = new Tail();
+            //a tick arriving while the previous poll is still being read is dropped, the next poll reads both
+            return Flux.interval(Duration.ZERO, pollInterval, Schedulers.boundedElastic())
+                    .onBackpressureDrop()
+                    .concatMap(tick -> tail.readAppended(), 1);
+        });
+    }
+
+    /**
+     * Position in the file just past the last complete line read, kept across polls of one subscription.
+     */
+    private final class Tail {
+
+        private long position;
+        private ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
+
+        Flux<OutageEvent> readAppended() {
+            if (!Files.isRegularFile(path)) {
+                return Flux.empty();
+            }
+
+            return Flux.using(() -> FileChannel.open(path, StandardOpenOption.READ),
+                            channel -> Flux.<List<OutageEvent>>generate(sink -> {
+                                try {
+                                    final List<OutageEvent> events = readChunk(channel);
+                                    if (events == null) {
+                                        sink.complete();
+                                    } else {
+                                        sink.next(events);
+                                    }
+                                } catch (IOException ex) {
+                                    sink.error(new UncheckedIOException(ex));
+                                }
+                            }),
+                            this::close)
+                    .concatMapIterable(Function.identity())
+                    .onErrorResume(ex -> ex instanceof IOException || ex instanceof UncheckedIOException, ex -> {
+                        logger.warn("Could not read outage events from [{}], trying again in [{}] - {}", path, pollInterval, ex.toString());
+                        return Flux.empty();
+                    });
+        }
+
+        /**
+         * @return the events on the complete lines of the next chunk, or null once there are no more complete lines
+         */
+        private List<OutageEvent> readChunk(final FileChannel channel) throws IOException {
+            if (channel.size() < position) {
+                logger.info("Outage events file [{}] shrank, reading it again from the start", path);
+                position = 0;
+            }
+
+            buffer.clear();
+            final int read = channel.read(buffer, position);
+            if (read <= 0) {
+                return null;
+            }
+
+            final byte[] bytes = buffer.array();
+            int lastNewline = read - 1;
+            while (lastNewline >= 0 && bytes[lastNewline] != '\n') {
+                lastNewline--;
+            }
+            if (lastNewline < 0) {
+                if (read < buffer.capacity()) {
+                    return null;
+                }
+                //a line longer than the buffer, read it again with room for all of it
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2);
+                return List.of();
+            }
+
+            final List<OutageEvent> events = new ArrayList<>();
+            int start = 0;
+            for (int i = 0; i <= lastNewline; i++) {
+                if (bytes[i] == '\n') {
+                    decode(bytes, start, i, events);
+                    start = i + 1;
+                }
+            }
+            position += lastNewline + 1;
+            return events;
+        }
+
+        private void decode(final byte[] bytes, final int start, final int end, final List<OutageEvent> events) {
+            final String line = new String(bytes, start, end - start, StandardCharsets.UTF_8).trim();
+            if (line.isEmpty()) {
+                return;
+            }
+            try {
+                events.add(mapper.readValue(line, OutageEvent.class));
+            } catch (IOException ex) {
+                logger.warn("Skipping outage event that could not be decoded at [{}] - {}", path, ex.getMessage());
+            }
+        }
+
+        private void close(final FileChannel channel) {
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                logger.debug("Could not close [{}] - {}", path, ex.toString());
+            }
+        }
+    }
+}
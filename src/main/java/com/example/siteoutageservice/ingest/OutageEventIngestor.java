@@ -0,0 +1,253 @@
+package com.example.siteoutageservice.ingest;
+
+import com.example.siteoutageservice.batch.SiteIds;
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.OutageEvent;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.index.LiveOutageIndex;
+import com.example.siteoutageservice.index.OutageRecord;
+import com.example.siteoutageservice.index.TimeWindow;
+import com.example.siteoutageservice.publish.OutagePublisher;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.SiteDevices;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
+import reactor.util.function.Tuples;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the application running and publishes sites as outage events arrive from an {@link OutageEventSource},
+ * instead of fetching and joining all of /outages on every run.
+ * <p>
+ * On start the devices of every configured site are fetched once and, with {@code kraken.ingest.initialLoad}, /outages
+ * is loaded into a {@link LiveOutageIndex} and every site published. From then on events are applied to the index in
+ * batches of up to {@code kraken.ingest.batchSize}, or whatever arrived within {@code kraken.ingest.batchWindow}, and
+ * only the sites with a device whose outages changed within the time filter are joined and published, each once per
+ * batch. The work done therefore follows how many outages change rather than how many there are.
+ * <p>
+ * Batches are applied and published one at a time, so the index needs no locking. A site whose publish fails is
+ * published again with the next batch, or after {@code kraken.ingest.retryInterval} if no batch comes sooner. Should
+ * applying events fail, the event source is subscribed to again with backoff. Sites' devices are only fetched on start.
+ */
+@Component
+@ConditionalOnProperty(name = "kraken.mode", havingValue = "ingest")
+public class OutageEventIngestor implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutageEventIngestor.class);
+
+    private final KrakenWebClient krakenWebClient;
+    private final OutageDetailService outageDetailService;
+    private final OutagePublisher outagePublisher;
+    private final OutageEventSource eventSource;
+    private final List<String> siteIds;
+    private final boolean initialLoad;
+    private final int batchSize;
+    private final Duration batchWindow;
+    private final int publishConcurrency;
+    private final Duration retryInterval;
+
+    private final Map<String, SiteDevices> sites = new HashMap<>();
+    private final Map<String, Set<String>> sitesByDevice = new HashMap<>();
+    private final Set<String> failedSites = ConcurrentHashMap.newKeySet();
+    private LiveOutageIndex index = new LiveOutageIndex();
+
+    private Scheduler scheduler;
+    private Disposable subscription;
+    private volatile boolean running;
+
+    @Autowired
+    public OutageEventIngestor(KrakenWebClient krakenWebClient, OutageDetailService outageDetailService, OutagePublisher outagePublisher,
+                               OutageEventSource eventSource,
+                               @Value("${kraken.ingest.siteIds}") List<String> siteIds,
+                               @Value("${kraken.ingest.siteIdsFile:}") String siteIdsFile,
+                               @Value("${kraken.ingest.initialLoad}") boolean initialLoad,
+                               @Value("${kraken.ingest.batchSize}") int batchSize,
+                               @Value("${kraken.ingest.batchWindow}") Duration batchWindow,
+                               @Value("${kraken.ingest.publishConcurrency}") int publishConcurrency,
+                               @Value("${kraken.ingest.retryInterval}") Duration retryInterval) {
+        Assert.isTrue(batchSize > 0, "kraken.ingest.batchSize must be greater than 0.");
+        Assert.isTrue(batchWindow.toMillis() > 0, "kraken.ingest.batchWindow must be greater than 0.");
+        Assert.isTrue(publishConcurrency > 0, "kraken.ingest.publishConcurrency must be greater than 0.");
+        Assert.isTrue(retryInterval.toMillis() > 0, "kraken.ingest.retryInterval must be greater than 0.");
+        this.krakenWebClient = krakenWebClient;
+        this.outageDetailService = outageDetailService;
+        this.outagePublisher = outagePublisher;
+        this.eventSource = eventSource;
+        this.siteIds = SiteIds.resolve(siteIds, siteIdsFile);
+        this.initialLoad = initialLoad;
+        this.batchSize = batchSize;
+        this.batchWindow = batchWindow;
+        this.publishConcurrency = publishConcurrency;
+        this.retryInterval = retryInterval;
+    }
+
+    @Override
+    public void start() {
+        //not a daemon thread, so the application keeps running while events are awaited
+        scheduler = Schedulers.newSingle("outage-ingest", false);
+
+        logger.info("Ingesting outage events for [{}] sites", siteIds.size());
+        subscription = load()
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofMinutes(1))
+                        .doBeforeRetry(retry -> logger.warn("Could not load sites and outages, retrying - {} - {}",
+                                retry.failure().getClass().getSimpleName(), retry.failure().getMessage())))
+                .thenMany(Flux.merge(eventSource.events()
+                                        .publishOn(scheduler)
+                                        .bufferTimeout(batchSize, batchWindow, scheduler)
+                                        //bufferTimeout fails if its timer fires while nothing is requested, which is
+                                        //the case whenever publishing falls behind, so batches queue here instead
+                                        .onBackpressureBuffer(),
+                                //an empty batch publishes just the sites that failed before
+                                Flux.interval(retryInterval, scheduler)
+                                        .onBackpressureDrop()
+                                        .filter(tick -> !failedSites.isEmpty())
+                                        .map(tick -> List.<OutageEvent>of()))
+                        .concatMap(this::apply)
+                        .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                                .maxBackoff(Duration.ofMinutes(1))
+                                .transientErrors(true)
+                                .doBeforeRetry(retry -> logger.error("Failed ingesting outage events, subscribing again - {} - {}",
+                                        retry.failure().getClass().getSimpleName(), retry.failure().getMessage()))))
+                .subscribeOn(scheduler)
+                .subscribe(done -> {}, ex -> logger.error("Stopped ingesting outage events - {} - {}", ex.getClass().getSimpleName(), ex.getMessage()));
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        subscription.dispose();
+        scheduler.dispose();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Fetches every site's devices and, with {@code kraken.ingest.initialLoad}, loads /outages and publishes every site.
+     * Sites Kraken does not know are left out, any other failure fails the load.
+     */
+    Mono<Void> load() {
+        return Flux.fromIterable(siteIds)
+                .flatMap(siteId -> krakenWebClient.getSiteInfoForAsync(siteId)
+                        .mapNotNull(Site::devices)
+                        .map(devices -> Tuples.of(siteId, SiteDevices.of(devices)))
+                        .onErrorResume(ex -> ex instanceof KrakenClientException client && client.getStatus() == HttpStatus.NOT_FOUND.value(),
+                                ex -> Mono.empty()), publishConcurrency)
+                .collectList()
+                .doOnNext(this::setSites)
+                .then(Mono.defer(() -> initialLoad ? krakenWebClient.getOutagesAsync()
+                        .flatMap(outages -> {
+                            index = LiveOutageIndex.of(outages.stream().map(OutageDetailService::toRecord).filter(Objects::nonNull).toList());
+                            logger.info("Loaded [{}] outages for [{}] devices, publishing [{}] sites", index.size(), index.deviceCount(), sites.size());
+                            return publish(sites.keySet());
+                        }) : Mono.empty()));
+    }
+
+    /**
+     * Applies a batch of events to the index, then publishes the sites they affect along with any that failed before.
+     */
+    Mono<Void> apply(final List<OutageEvent> events) {
+        final Set<String> affected = new LinkedHashSet<>();
+        final TimeWindow window = outageDetailService.getOutagesTimeFilter();
+        int changed = 0;
+        for (OutageEvent event : events) {
+            final OutageRecord outage = toRecord(event);
+            if (outage != null && index.apply(outage)) {
+                changed++;
+                //an outage outside the time filter is never published, so changing it changes no site
+                if (window.contains(outage.begin())) {
+                    affected.addAll(sitesByDevice.getOrDefault(outage.id(), Collections.emptySet()));
+                }
+            }
+        }
+        affected.addAll(failedSites);
+        failedSites.clear();
+
+        if (events.isEmpty()) {
+            logger.info("Publishing [{}] sites that failed before", affected.size());
+        } else {
+            logger.info("Applied [{}] outage events, [{}] changed, publishing [{}] affected sites", events.size(), changed, affected.size());
+        }
+        return publish(affected);
+    }
+
+    private Mono<Void> publish(final Collection<String> siteIds) {
+        final TimeWindow window = outageDetailService.getOutagesTimeFilter();
+
+        //joined up front, as nothing changes the index until this batch has been published
+        final List<Tuple2<String, List<DeviceOutage>>> joined = siteIds.stream()
+                .filter(sites::containsKey)
+                .map(siteId -> Tuples.of(siteId, outageDetailService.getDeviceOutagesFor(sites.get(siteId), index, window)))
+                .toList();
+
+        return Flux.fromIterable(joined)
+                .flatMap(site -> outagePublisher.publishDeviceOutagesAsync(site.getT1(), site.getT2())
+                        .onErrorResume(ex -> {
+                            logger.warn("Could not publish siteId [{}], retrying with the next batch or in [{}] - {} - {}", site.getT1(), retryInterval, ex.getClass().getSimpleName(), ex.getMessage());
+                            failedSites.add(site.getT1());
+                            return Mono.empty();
+                        }), publishConcurrency)
+                .then();
+    }
+
+    private void setSites(final List<Tuple2<String, SiteDevices>> loaded) {
+        sites.clear();
+        sitesByDevice.clear();
+        for (Tuple2<String, SiteDevices> site : loaded) {
+            sites.put(site.getT1(), site.getT2());
+            for (String deviceId : site.getT2().ids()) {
+                sitesByDevice.computeIfAbsent(deviceId, id -> new LinkedHashSet<>()).add(site.getT1());
+            }
+        }
+        if (sites.size() < siteIds.size()) {
+            logger.warn("[{}] of [{}] sites were not found and will not be published", siteIds.size() - sites.size(), siteIds.size());
+        }
+    }
+
+    /**
+     * @return the event's outage, or null if it has none or its times cannot be parsed
+     */
+    private static OutageRecord toRecord(final OutageEvent event) {
+        if (event.outage() == null || event.outage().id() == null || event.outage().begin() == null) {
+            logger.warn("Skipping outage event without an outage id and begin - {}", event);
+            return null;
+        }
+        try {
+            return OutageRecord.of(event.outage());
+        } catch (DateTimeParseException ex) {
+            logger.warn("Skipping outage event with unparseable times - {} - {}", event, ex.getMessage());
+            return null;
+        }
+    }
+}
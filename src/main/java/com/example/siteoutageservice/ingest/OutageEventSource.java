@@ -0,0 +1,17 @@
+package com.example.siteoutageservice.ingest;
+
+import com.example.siteoutageservice.dto.OutageEvent;
+import reactor.core.publisher.Flux;
+
+/**
+ * Where {@code kraken.mode=ingest} reads outage events from, chosen with {@code kraken.ingest.source}. A broker such
+ * as Kafka plugs in as another implementation, emitting each record's value as it is polled.
+ */
+public interface OutageEventSource {
+
+    /**
+     * @return events in the order they were produced, until the subscription is cancelled. Events that cannot be
+     * read are expected to be logged and skipped rather than ending the stream.
+     */
+    Flux<OutageEvent> events();
+}
@@ -0,0 +1,35 @@
+package com.example.siteoutageservice.ingest;
+
+import com.example.siteoutageservice.dto.OutageEvent;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/**
+ * In-process queue of outage events, for code in the same JVM to hand events straight to the ingestor without a file
+ * or broker in between. Up to {@code capacity} events are held until they are read, including any offered before the
+ * ingestor subscribes or while it subscribes again. Only one subscriber at a time is supported.
+ */
+public class QueueOutageEventSource implements OutageEventSource {
+
+    private final Sinks.Many<OutageEvent> queue;
+
+    public QueueOutageEventSource(int capacity) {
+        Assert.isTrue(capacity > 0, "kraken.ingest.queue.capacity must be greater than 0.");
+        //not cancelled when the subscriber leaves, so the ingestor can subscribe again after a failure
+        this.queue = Sinks.many().multicast().onBackpressureBuffer(capacity, false);
+    }
+
+    /**
+     * @return false if the event was not queued, as the queue is full
+     */
+    public synchronized boolean offer(final OutageEvent event) {
+        Assert.notNull(event, "event cannot be null.");
+        return queue.tryEmitNext(event).isSuccess();
+    }
+
+    @Override
+    public Flux<OutageEvent> events() {
+        return queue.asFlux();
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.siteoutageservice.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import reactor.core.publisher.Mono;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Meters for Kraken calls and the outage pipeline, registered with whichever {@link MeterRegistry} the application
+ * provides. Every meter name starts with {@code kraken.}:
+ * <ul>
+ *     <li>{@code kraken.client.requests} - time until response headers, tagged with endpoint, method and status</li>
+ *     <li>{@code kraken.client.responses} - responses counted by endpoint and status</li>
+ *     <li>{@code kraken.client.response.size} - response body bytes by endpoint</li>
+ *     <li>{@code kraken.client.decode} - time reading and decoding a response body by endpoint</li>
+ *     <li>{@code kraken.client.retries} and {@code kraken.client.retry.backoff} - retry attempts and time spent backing off</li>
+ *     <li>{@code kraken.client.retries.exhausted} - calls that failed after their last retry</li>
+ *     <li>{@code kraken.client.coalesced} - GETs that joined an identical call already in flight instead of being made</li>
+ *     <li>{@code kraken.client.cache.requests} - GETs answered by the response cache, tagged with result hit, miss or revalidated</li>
+ *     <li>{@code kraken.client.cache.evictions} and {@code kraken.client.cache.size} - entries evicted to stay within the bound and entries held</li>
+ *     <li>{@code kraken.client.throttle.wait} - time calls waited for the rate and concurrency limits by endpoint</li>
+ *     <li>{@code kraken.client.concurrency.limit} and {@code kraken.client.concurrency.inflight} - the adaptive concurrency limit and calls holding a permit</li>
+ *     <li>{@code kraken.client.circuit.state} - each endpoint's circuit breaker state, 0 closed, 1 open and 2 half open</li>
+ *     <li>{@code kraken.client.circuit.transitions} and {@code kraken.client.circuit.rejected} - breaker state changes and calls rejected while open</li>
+ *     <li>{@code kraken.pipeline.stage} - time spent in each {@link Stage} of {@code OutageDetailService}</li>
+ *     <li>{@code kraken.publish.outbox.pending} - sites with outages in the publish outbox waiting to be posted</li>
+ * </ul>
+ * Endpoints are tagged by path without path variables ({@code /outages}, {@code /site-info}, {@code /site-outages}) to keep cardinality bounded.
+ */
+@Component
+public class KrakenMetrics {
+
+    /**
+     * Request attribute holding the endpoint template a request was made for, e.g. {@code /site-info/{siteId}}.
+     */
+    public static final String ENDPOINT_ATTRIBUTE = KrakenMetrics.class.getName() + ".endpoint";
+
+    public static final String IO_ERROR = "IO_ERROR";
+
+    public enum Stage {
+        FILTER, JOIN, AGGREGATE, INDEX, PUBLISH;
+
+        String tag() {
+            return name().toLowerCase();
+        }
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> stageTimers = new EnumMap<>(Stage.class);
+
+    public KrakenMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stageTimers.put(stage, Timer.builder("kraken.pipeline.stage")
+                    .description("Time spent in a stage of collecting and publishing outages")
+                    .tag("stage", stage.tag())
+                    .register(registry));
+        }
+    }
+
+    /**
+     * Metrics recorded to a registry with no backing registries, so every meter is a no-op.
+     */
+    public static KrakenMetrics disabled() {
+        return new KrakenMetrics(new CompositeMeterRegistry());
+    }
+
+    /**
+     * @return the endpoint tag for a request, or {@code unknown} when it was not made through KrakenWebClient
+     */
+    public static String endpointOf(final ClientRequest request) {
+        return request.attribute(ENDPOINT_ATTRIBUTE)
+                .map(String.class::cast)
+                .map(KrakenMetrics::endpointTag)
+                .orElse("unknown");
+    }
+
+    /**
+     * @return the endpoint template up to its first path variable, e.g. {@code /site-info} for {@code /site-info/{siteId}}
+     */
+    public static String endpointTag(final String endpoint) {
+        final int variable = endpoint.indexOf("/{");
+        return variable < 0 ? endpoint : endpoint.substring(0, variable);
+    }
+
+    public void recordRequest(final String endpoint, final String method, final String status, final long nanos) {
+        Timer.builder("kraken.client.requests")
+                .description("Time from sending a Kraken request until its response headers arrive")
+                .tags("endpoint", endpoint, "method", method, "status", status)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+        Counter.builder("kraken.client.responses")
+                .description("Kraken responses by status code")
+                .tags("endpoint", endpoint, "status", status)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordResponseSize(final String endpoint, final long bytes) {
+        DistributionSummary.builder("kraken.client.response.size")
+                .description("Size of Kraken response bodies, after any gzip decompression")
+                .baseUnit("bytes")
+                .tag("endpoint", endpoint)
+                .register(registry)
+                .record(bytes);
+    }
+
+    public void recordRetry(final String endpoint, final long backoffNanos) {
+        Counter.builder("kraken.client.retries")
+                .description("Retried Kraken calls")
+                .tag("endpoint", endpointTag(endpoint))
+                .register(registry)
+                .increment();
+        Timer.builder("kraken.client.retry.backoff")
+                .description("Time spent waiting before retrying a Kraken call")
+                .tag("endpoint", endpointTag(endpoint))
+                .register(registry)
+                .record(backoffNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void recordRetriesExhausted(final String endpoint) {
+        Counter.builder("kraken.client.retries.exhausted")
+                .description("Kraken calls that failed after exhausting their retries")
+                .tag("endpoint", endpointTag(endpoint))
+                .register(registry)
+                .increment();
+    }
+
+    public void recordCoalesced(final String endpoint) {
+        Counter.builder("kraken.client.coalesced")
+                .description("Kraken GETs served by joining an identical call already in flight")
+                .tag("endpoint", endpointTag(endpoint))
+                .register(registry)
+                .increment();
+    }
+
+    public void recordThrottleWait(final String endpoint, final long nanos) {
+        Timer.builder("kraken.client.throttle.wait")
+                .description("Time a Kraken call waited for the rate and concurrency limits before it was sent")
+                .tag("endpoint", endpoint)
+                .register(registry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void registerConcurrencyGauges(final Supplier<Number> limit, final Supplier<Number> inFlight) {
+        Gauge.builder("kraken.client.concurrency.limit", limit)
+                .description("Adaptive limit on concurrent Kraken calls")
+                .register(registry);
+        Gauge.builder("kraken.client.concurrency.inflight", inFlight)
+                .description("Kraken calls holding a concurrency permit")
+                .register(registry);
+    }
+
+    public void registerCircuitState(final String endpoint, final Supplier<Number> state) {
+        Gauge.builder("kraken.client.circuit.state", state)
+                .description("Circuit breaker state, 0 closed, 1 open and 2 half open")
+                .tag("endpoint", endpoint)
+                .register(registry);
+    }
+
+    public void registerResponseCache(final Supplier<Number> hits, final Supplier<Number> misses, final Supplier<Number> revalidations,
+                                      final Supplier<Number> evictions, final Supplier<Number> size) {
+        registerCacheRequests("hit", hits);
+        registerCacheRequests("miss", misses);
+        registerCacheRequests("revalidated", revalidations);
+        FunctionCounter.builder("kraken.client.cache.evictions", evictions, count -> count.get().doubleValue())
+                .description("Cached responses evicted to stay within kraken.rest.cache.maxEntries")
+                .register(registry);
+        Gauge.builder("kraken.client.cache.size", size)
+                .description("Responses held in the cache")
+                .register(registry);
+    }
+
+    private void registerCacheRequests(final String result, final Supplier<Number> count) {
+        FunctionCounter.builder("kraken.client.cache.requests", count, c -> c.get().doubleValue())
+                .description("GETs answered by the response cache by result")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    public void registerOutboxPending(final Supplier<Number> pending) {
+        Gauge.builder("kraken.publish.outbox.pending", pending)
+                .description("Sites with outages in the publish outbox waiting to be posted")
+                .register(registry);
+    }
+
+    public void recordCircuitTransition(final String endpoint, final String from, final String to) {
+        Counter.builder("kraken.client.circuit.transitions")
+                .description("Circuit breaker state changes")
+                .tags("endpoint", endpoint, "from", from, "to", to)
+                .register(registry)
+                .increment();
+    }
+
+    public void recordCircuitRejected(final String endpoint) {
+        Counter.builder("kraken.client.circuit.rejected")
+                .description("Kraken calls rejected without being made while their circuit breaker was open")
+                .tag("endpoint", endpoint)
+                .register(registry)
+                .increment();
+    }
+
+    /**
+     * Times from subscription until {@code decoded} completes, recording only successful decodes.
+     */
+    public <T> Mono<T> timeDecode(final String endpoint, final Mono<T> decoded) {
+        final Timer timer = Timer.builder("kraken.client.decode")
+                .description("Time reading and decoding a Kraken response body")
+                .tag("endpoint", endpointTag(endpoint))
+                .register(registry);
+        return time(timer, decoded);
+    }
+
+    public <T> T time(final Stage stage, final Supplier<T> work) {
+        return stageTimers.get(stage).record(work);
+    }
+
+    public void time(final Stage stage, final Runnable work) {
+        stageTimers.get(stage).record(work);
+    }
+
+    public <T> Mono<T> time(final Stage stage, final Mono<T> work) {
+        return time(stageTimers.get(stage), work);
+    }
+
+    private static <T> Mono<T> time(final Timer timer, final Mono<T> work) {
+        return Mono.defer(() -> {
+            final long start = System.nanoTime();
+            return work.doOnSuccess(value -> timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS));
+        });
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.siteoutageservice.metrics;
+
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Statistic;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.StreamSupport;
+
+/**
+ * Logs the running totals of every {@code kraken.*} meter every {@code kraken.metrics.logging.step}, and once more on
+ * shutdown so a single run always ends with its metrics in the log. Needs no metrics backend, so works offline.
+ * Micrometer's own LoggingMeterRegistry is not used as it only logs the last completed step, which short runs never finish.
+ */
+@Component
+@Lazy(false)
+@ConditionalOnProperty(value = "kraken.metrics.logging.enabled", havingValue = "true")
+public class MetricsLogger {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsLogger.class);
+
+    private final MeterRegistry meterRegistry;
+    private final Disposable schedule;
+
+    public MetricsLogger(MeterRegistry meterRegistry, @Value("${kraken.metrics.logging.step}") Duration step) {
+        this.meterRegistry = meterRegistry;
+        this.schedule = Flux.interval(step, step)
+                .subscribe(tick -> logMetrics());
+    }
+
+    public void logMetrics() {
+        final List<Meter> meters = meterRegistry.getMeters().stream()
+                .filter(meter -> meter.getId().getName().startsWith("kraken."))
+                //meters registered up front, such as stages a run never reached, are left out until they record something
+                .filter(meter -> StreamSupport.stream(meter.measure().spliterator(), false).anyMatch(measurement -> measurement.getValue() != 0))
+                .sorted(Comparator.comparing((Meter meter) -> meter.getId().getName()).thenComparing(meter -> meter.getId().getTags().toString()))
+                .toList();
+
+        meters.forEach(meter -> logger.info("{}{} {}", meter.getId().getName(), tags(meter), measurements(meter)));
+    }
+
+    @PreDestroy
+    void close() {
+        schedule.dispose();
+        logMetrics();
+    }
+
+    private static String tags(final Meter meter) {
+        return meter.getId().getTags().stream()
+                .map(tag -> tag.getKey() + "=" + tag.getValue())
+                .collect(Collectors.joining(",", "{", "}"));
+    }
+
+    private static String measurements(final Meter meter) {
+        final String unit = meter.getId().getBaseUnit() == null ? "" : " " + meter.getId().getBaseUnit();
+        return StreamSupport.stream(meter.measure().spliterator(), false)
+                .map(measurement -> measurement.getStatistic().getTagValueRepresentation() + "=" + format(measurement.getValue())
+                        + (measurement.getStatistic() == Statistic.COUNT ? "" : unit))
+                .collect(Collectors.joining(" "));
+    }
+
+    private static String format(final double value) {
+        return value == Math.rint(value) && !Double.isInfinite(value) ? String.valueOf((long) value) : String.format("%.4f", value);
+    }
+}
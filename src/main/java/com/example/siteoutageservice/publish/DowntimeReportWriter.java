@@ -0,0 +1,80 @@
+package com.example.siteoutageservice.publish;
+
+import com.example.siteoutageservice.dto.DeviceDowntime;
+import com.example.siteoutageservice.dto.SiteDowntime;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Appends each site's device downtime to a newline delimited JSON file, one {@link SiteDowntime} per line, when
+ * {@code kraken.downtime.enabled} is set. Dashboards can read the totals and merged intervals from it instead of
+ * working them out again from every published outage.
+ */
+@Component
+public class DowntimeReportWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(DowntimeReportWriter.class);
+
+    private final ObjectMapper mapper;
+    private final boolean enabled;
+    private final Path path;
+    private BufferedWriter writer;
+
+    @Autowired
+    public DowntimeReportWriter(ObjectMapper mapper, @Value("${kraken.downtime.enabled}") boolean enabled, @Value("${kraken.downtime.path}") Path path) {
+        this.mapper = mapper;
+        this.enabled = enabled;
+        this.path = path;
+    }
+
+    public static DowntimeReportWriter disabled(){
+        //never writes, so the mapper's configuration does not matter
+        return new DowntimeReportWriter(new ObjectMapper(), false, Path.of("unused"));
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * Called before the site's outages are published. A failure to write is logged rather than failing the site, so
+     * the report never holds back publishing.
+     */
+    public synchronized void write(final String siteId, final List<DeviceDowntime> downtime){
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(mapper.writeValueAsString(new SiteDowntime(siteId, downtime)));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException ex) {
+            logger.warn("Could not write device downtime for siteId [{}] to [{}] - {}", siteId, path, ex.toString());
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close(){
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                logger.warn("Could not close device downtime report [{}] - {}", path, ex.toString());
+            }
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.example.siteoutageservice.publish;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.service.OutageDetailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+
+/**
+ * Publishes a site's outages unless they are the same as the last set successfully published for that site,
+ * when {@code kraken.publish.incremental} is enabled. With {@code kraken.publish.outbox.enabled} they are handed to the
+ * {@link PublishOutbox} to be posted in the background instead of being posted straight away.
+ */
+@Service
+public class OutagePublisher {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutagePublisher.class);
+
+    private final OutageDetailService outageDetailService;
+    private final PublishFingerprintStore fingerprintStore;
+    private final PublishOutbox outbox;
+
+    @Autowired
+    public OutagePublisher(OutageDetailService outageDetailService, PublishFingerprintStore fingerprintStore, PublishOutbox outbox) {
+        this.outageDetailService = outageDetailService;
+        this.fingerprintStore = fingerprintStore;
+        this.outbox = outbox;
+    }
+
+    /**
+     * @return true if the outages were posted, or queued in the outbox to be posted, false if the post was skipped as nothing changed
+     */
+    public boolean publishDeviceOutages(final String siteId, final List<DeviceOutage> detailedOutages){
+        Assert.notNull(detailedOutages, "detailedOutages cannot be null.");
+
+        if (!fingerprintStore.isEnabled()) {
+            post(siteId, detailedOutages);
+            return true;
+        }
+
+        final long fingerprint = PublishFingerprintStore.fingerprint(detailedOutages);
+        if (isUnchanged(siteId, detailedOutages, fingerprint)) {
+            return false;
+        }
+
+        if (outbox.isEnabled()) {
+            //the outbox records the fingerprint once the outages are delivered
+            outbox.enqueue(siteId, detailedOutages);
+            return true;
+        }
+        outageDetailService.publishDeviceOutages(siteId, detailedOutages);
+        fingerprintStore.record(siteId, fingerprint);
+        return true;
+    }
+
+    /**
+     * Non-blocking version of {@link #publishDeviceOutages(String, List)}.
+     */
+    public Mono<Boolean> publishDeviceOutagesAsync(final String siteId, final List<DeviceOutage> detailedOutages){
+        Assert.notNull(detailedOutages, "detailedOutages cannot be null.");
+
+        if (!fingerprintStore.isEnabled()) {
+            return postAsync(siteId, detailedOutages).thenReturn(true);
+        }
+
+        return Mono.defer(() -> {
+            final long fingerprint = PublishFingerprintStore.fingerprint(detailedOutages);
+            if (isUnchanged(siteId, detailedOutages, fingerprint)) {
+                return Mono.just(false);
+            }
+
+            if (outbox.isEnabled()) {
+                return outbox.enqueueAsync(siteId, detailedOutages).thenReturn(true);
+            }
+            return outageDetailService.publishDeviceOutagesAsync(siteId, detailedOutages)
+                    .then(Mono.fromRunnable(() -> fingerprintStore.record(siteId, fingerprint)).subscribeOn(Schedulers.boundedElastic()))
+                    .thenReturn(true);
+        });
+    }
+
+    private void post(final String siteId, final List<DeviceOutage> detailedOutages){
+        if (outbox.isEnabled()) {
+            outbox.enqueue(siteId, detailedOutages);
+        } else {
+            outageDetailService.publishDeviceOutages(siteId, detailedOutages);
+        }
+    }
+
+    private Mono<Void> postAsync(final String siteId, final List<DeviceOutage> detailedOutages){
+        return outbox.isEnabled()
+                ? outbox.enqueueAsync(siteId, detailedOutages)
+                : outageDetailService.publishDeviceOutagesAsync(siteId, detailedOutages);
+    }
+
+    /**
+     * Outages are never unchanged while the site has others waiting in the outbox, as those would replace the ones
+     * last delivered once posted. Queuing these instead replaces the waiting ones.
+     */
+    private boolean isUnchanged(final String siteId, final List<DeviceOutage> detailedOutages, final long fingerprint){
+        if (outbox.isEnabled() && outbox.isPending(siteId)) {
+            return false;
+        }
+        if (fingerprintStore.isUnchanged(siteId, fingerprint)) {
+            logger.info("Skipping publish of [{}] detailed outages for siteId [{}], unchanged since last publish", detailedOutages.size(), siteId);
+            return true;
+        }
+        return false;
+    }
+}
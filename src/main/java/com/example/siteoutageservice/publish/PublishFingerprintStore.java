@@ -0,0 +1,157 @@
+package com.example.siteoutageservice.publish;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers a fingerprint of the outages last successfully published for each site, so an unchanged set can be
+ * skipped. Fingerprints are kept in an append-only file of {@code siteId fingerprint} lines where the last line
+ * for a site wins; the file is compacted to one line per site when it is loaded. The file is kept open from the first
+ * record until the store is closed.
+ */
+@Component
+public class PublishFingerprintStore implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishFingerprintStore.class);
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static final Comparator<DeviceOutage> RECORD_ORDER = Comparator
+            .comparing(DeviceOutage::id, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(DeviceOutage::begin, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(DeviceOutage::end, Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparing(DeviceOutage::name, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final boolean enabled;
+    private final Path path;
+    private final Map<String, Long> fingerprints = new ConcurrentHashMap<>();
+    private BufferedWriter writer;
+
+    @Autowired
+    public PublishFingerprintStore(@Value("${kraken.publish.incremental}") boolean enabled, @Value("${kraken.publish.fingerprintPath}") Path path) {
+        this.enabled = enabled;
+        this.path = path;
+        if (enabled) {
+            load();
+        }
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * 64-bit FNV-1a hash over the outages sorted by id, begin, end and name, so the fingerprint does not depend
+     * on the order the outages were collected in.
+     */
+    public static long fingerprint(final List<DeviceOutage> outages){
+        long hash = FNV_OFFSET_BASIS;
+        for (DeviceOutage outage : outages.stream().sorted(RECORD_ORDER).toList()) {
+            hash = hash(hash, outage.id());
+            hash = hash(hash, outage.name());
+            hash = hash(hash, outage.begin());
+            hash = hash(hash, outage.end());
+        }
+        return hash;
+    }
+
+    public boolean isUnchanged(final String siteId, final long fingerprint){
+        final Long previous = fingerprints.get(siteId);
+        return previous != null && previous == fingerprint;
+    }
+
+    /**
+     * Records a successful publish. A failure to persist is logged, the worst case being one repeated publish.
+     */
+    public synchronized void record(final String siteId, final long fingerprint){
+        fingerprints.put(siteId, fingerprint);
+        try {
+            if (writer == null) {
+                writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+            writer.write(siteId + " " + Long.toHexString(fingerprint));
+            writer.newLine();
+            writer.flush();
+        } catch (IOException ex) {
+            logger.warn("Could not persist publish fingerprint for siteId [{}] to [{}] - {}", siteId, path, ex.toString());
+        }
+    }
+
+    @Override
+    @PreDestroy
+    public synchronized void close(){
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                logger.warn("Could not close publish fingerprints [{}] - {}", path, ex.toString());
+            }
+            writer = null;
+        }
+    }
+
+    private static long hash(long hash, final String value){
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                final char c = value.charAt(i);
+                hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+                hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+            }
+        }
+        //field separator, so ("ab", "c") and ("a", "bc") differ
+        return (hash ^ 0x1f) * FNV_PRIME;
+    }
+
+    private void load(){
+        if (!Files.isRegularFile(path)) {
+            return;
+        }
+
+        try {
+            final List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                final int separator = line.lastIndexOf(' ');
+                if (separator > 0) {
+                    try {
+                        fingerprints.put(line.substring(0, separator), Long.parseUnsignedLong(line.substring(separator + 1), 16));
+                    } catch (NumberFormatException ex) {
+                        logger.warn("Ignoring malformed publish fingerprint line [{}]", line);
+                    }
+                }
+            }
+            logger.info("Loaded publish fingerprints for [{}] sites from [{}]", fingerprints.size(), path);
+
+            if (lines.size() > fingerprints.size()) {
+                compact();
+            }
+        } catch (IOException ex) {
+            logger.warn("Could not read publish fingerprints [{}], every site will be published - {}", path, ex.toString());
+        }
+    }
+
+    private void compact() throws IOException {
+        final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(temp, fingerprints.entrySet().stream()
+                .map(e -> e.getKey() + " " + Long.toHexString(e.getValue()))
+                .toList(), StandardCharsets.UTF_8);
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,448 @@
+package com.example.siteoutageservice.publish;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.OutboxEntry;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * File-backed outbox between computing a site's outages and posting them, when {@code kraken.publish.outbox.enabled}
+ * is set. {@link #enqueue(String, List)} only appends the outages to a log and returns, so a run moves on to its next
+ * site without waiting on Kraken, and a background drainer posts them, backing off exponentially from
+ * {@code minBackoff} up to {@code maxBackoff} while Kraken keeps failing. A 4xx other than 429 will not succeed on
+ * retry, so those outages are logged and dropped.
+ * <p>
+ * The log is newline delimited JSON {@link OutboxEntry}s: a {@code PENDING} line per enqueue and a {@code DELIVERED}
+ * line once it was posted. A site's newer outages replace any of its older ones not yet posted. On start the log is
+ * replayed, so outages a previous run computed but did not deliver are posted without being computed again, and then
+ * rewritten with only those. With {@code kraken.publish.outbox.fsync} each enqueue waits for its line to reach the disk,
+ * and enqueues arriving while a sync is under way share the next one rather than syncing one by one.
+ * {@code DELIVERED} lines are not synced, so a crash can at worst post a site's outages again.
+ */
+@Component
+public class PublishOutbox implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishOutbox.class);
+
+    //once this many lines were written and nothing is pending the log is emptied, keeping long running modes' log small
+    private static final int TRUNCATE_THRESHOLD = 10_000;
+
+    private final ObjectMapper mapper;
+    private final OutageDetailService outageDetailService;
+    private final PublishFingerprintStore fingerprintStore;
+    private final boolean enabled;
+    private final Path path;
+    private final boolean fsync;
+    private final int concurrency;
+    private final Duration minBackoff;
+    private final Duration maxBackoff;
+
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    private final Object writeLock = new Object();
+    private final Object syncLock = new Object();
+    private final Object drained = new Object();
+    private FileChannel channel;
+    private long nextSeq;
+    private long lines;
+    private long written;
+    private long synced;
+
+    private ThreadPoolTaskScheduler taskScheduler;
+    private volatile boolean running;
+
+    @Autowired
+    public PublishOutbox(OutageDetailService outageDetailService, PublishFingerprintStore fingerprintStore, KrakenMetrics krakenMetrics, ObjectMapper mapper,
+                         @Value("${kraken.publish.outbox.enabled}") boolean enabled,
+                         @Value("${kraken.publish.outbox.path}") Path path,
+                         @Value("${kraken.publish.outbox.fsync}") boolean fsync,
+                         @Value("${kraken.publish.outbox.concurrency}") int concurrency,
+                         @Value("${kraken.publish.outbox.minBackoff}") Duration minBackoff,
+                         @Value("${kraken.publish.outbox.maxBackoff}") Duration maxBackoff) {
+        Assert.isTrue(concurrency > 0, "kraken.publish.outbox.concurrency must be greater than 0.");
+        Assert.isTrue(minBackoff.toMillis() > 0, "kraken.publish.outbox.minBackoff must be greater than 0.");
+        Assert.isTrue(maxBackoff.compareTo(minBackoff) >= 0, "kraken.publish.outbox.maxBackoff cannot be less than minBackoff.");
+        this.outageDetailService = outageDetailService;
+        this.mapper = mapper;
+        this.fingerprintStore = fingerprintStore;
+        this.enabled = enabled;
+        this.path = path;
+        this.fsync = fsync;
+        this.concurrency = concurrency;
+        this.minBackoff = minBackoff;
+        this.maxBackoff = maxBackoff;
+        if (enabled) {
+            load();
+            krakenMetrics.registerOutboxPending(pending::size);
+        }
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * @return how many sites have outages waiting to be posted
+     */
+    public int pendingCount(){
+        return pending.size();
+    }
+
+    /**
+     * @return true if the site has outages waiting to be posted
+     */
+    public boolean isPending(final String siteId){
+        return pending.containsKey(siteId);
+    }
+
+    @Override
+    public void start() {
+        if (enabled) {
+            taskScheduler = new ThreadPoolTaskScheduler();
+            taskScheduler.setThreadNamePrefix("outbox-drain-");
+            //daemon, so a one-shot run can exit and leave what is undelivered to the next run
+            taskScheduler.setDaemon(true);
+            taskScheduler.initialize();
+            taskScheduler.scheduleWithFixedDelay(this::drain, minBackoff);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (taskScheduler != null) {
+            taskScheduler.shutdown();
+        }
+        synchronized (writeLock) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ex) {
+                    logger.warn("Could not close publish outbox [{}] - {}", path, ex.toString());
+                }
+                channel = null;
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Started before and stopped after the daemon and ingest lifecycles, so sites they are still finishing on shutdown
+     * can be queued.
+     */
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 1;
+    }
+
+    /**
+     * Writes the outages to the log as the site's next publish, replacing any not yet posted, and wakes the drainer.
+     *
+     * @throws UncheckedIOException if the outages could not be written or synced, so they would not survive a restart
+     */
+    public void enqueue(final String siteId, final List<DeviceOutage> detailedOutages){
+        Assert.notNull(detailedOutages, "detailedOutages cannot be null.");
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+        Assert.isTrue(enabled, "kraken.publish.outbox.enabled is not set.");
+
+        final long token;
+        synchronized (writeLock) {
+            final long seq = nextSeq++;
+            token = append(new OutboxEntry(OutboxEntry.Type.PENDING, seq, siteId, detailedOutages));
+            pending.put(siteId, new Pending(seq, siteId, List.copyOf(detailedOutages), 0, System.nanoTime()));
+        }
+        sync(token);
+        logger.info("Queued [{}] detailed outages for siteId [{}] in the publish outbox", detailedOutages.size(), siteId);
+        wake();
+    }
+
+    /**
+     * Non-blocking version of {@link #enqueue(String, List)}, writing on a thread that may block.
+     */
+    public Mono<Void> enqueueAsync(final String siteId, final List<DeviceOutage> detailedOutages){
+        return Mono.fromRunnable(() -> enqueue(siteId, detailedOutages))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
+    }
+
+    /**
+     * Waits for every pending site to be posted, or dropped as rejected by Kraken.
+     *
+     * @return false if some were still pending when the timeout passed
+     */
+    public boolean awaitDrained(final Duration timeout) throws InterruptedException {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (drained) {
+            while (!pending.isEmpty()) {
+                final long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(drained, remaining);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts posting every pending site that is due and not already being posted, up to {@code concurrency} at once.
+     */
+    void drain() {
+        final long now = System.nanoTime();
+        for (Pending site : pending.values()) {
+            if (inFlight.size() >= concurrency) {
+                return;
+            }
+            if (site.dueNanos() - now <= 0 && inFlight.add(site.siteId())) {
+                deliver(site);
+            }
+        }
+    }
+
+    private void deliver(final Pending site) {
+        outageDetailService.publishDeviceOutagesAsync(site.siteId(), site.outages())
+                .then(Mono.fromRunnable(() -> complete(site, true)).subscribeOn(Schedulers.boundedElastic()))
+                //a rejected site is completed, which appends to the outbox, so failures are handled off the event loop too
+                .onErrorResume(ex -> Mono.fromRunnable(() -> failed(site, ex)).subscribeOn(Schedulers.boundedElastic()).then())
+                .doFinally(signal -> {
+                    inFlight.remove(site.siteId());
+                    synchronized (drained) {
+                        drained.notifyAll();
+                    }
+                    //the site may have newer outages queued while these were posted
+                    wake();
+                })
+                .subscribe();
+    }
+
+    /**
+     * Marks the site's outages as done with, unless newer ones were queued for it meanwhile, recording their
+     * fingerprint if they were delivered.
+     */
+    private void complete(final Pending site, final boolean delivered) {
+        //recorded before the site stops being pending, so anyone awaiting the drain sees it
+        if (delivered && fingerprintStore.isEnabled()) {
+            fingerprintStore.record(site.siteId(), PublishFingerprintStore.fingerprint(site.outages()));
+        }
+        synchronized (writeLock) {
+            try {
+                append(new OutboxEntry(OutboxEntry.Type.DELIVERED, site.seq(), site.siteId(), null));
+            } catch (UncheckedIOException ex) {
+                logger.warn("Could not mark siteId [{}] as done in [{}], it will be posted again after a restart - {}", site.siteId(), path, ex.getMessage());
+            }
+            pending.computeIfPresent(site.siteId(), (siteId, current) -> current.seq() == site.seq() ? null : current);
+            if (pending.isEmpty() && lines >= TRUNCATE_THRESHOLD) {
+                truncate();
+            }
+        }
+    }
+
+    private void truncate() {
+        try {
+            channel.truncate(0);
+            lines = 0;
+        } catch (IOException ex) {
+            logger.warn("Could not truncate publish outbox [{}] - {}", path, ex.toString());
+        }
+    }
+
+    private void failed(final Pending site, final Throwable ex) {
+        if (ex instanceof KrakenClientException client && client.getStatus() != HttpStatus.TOO_MANY_REQUESTS.value()) {
+            logger.error("Kraken rejected outages for siteId [{}], dropping them from the publish outbox - {} - {}", site.siteId(), client.getStatus(), client.getMessage());
+            complete(site, false);
+            return;
+        }
+
+        final int attempts = site.attempts() + 1;
+        Duration backoff = backoff(attempts);
+        if (ex instanceof KrakenClientException client && client.getRetryAfter().isPresent()) {
+            //waits at least as long as a 429 asked, up to maxBackoff
+            final Duration retryAfter = client.getRetryAfter().get().compareTo(maxBackoff) > 0 ? maxBackoff : client.getRetryAfter().get();
+            backoff = retryAfter.compareTo(backoff) > 0 ? retryAfter : backoff;
+        }
+        final long due = System.nanoTime() + backoff.toNanos();
+        pending.computeIfPresent(site.siteId(), (siteId, current) -> current.seq() == site.seq() ? current.retryAt(attempts, due) : current);
+        logger.warn("Could not publish siteId [{}] from the publish outbox after [{}] attempts, retrying in [{}] - {} - {}",
+                site.siteId(), attempts, backoff, ex.getClass().getSimpleName(), ex.getMessage());
+    }
+
+    private Duration backoff(final int attempts) {
+        final Duration backoff = minBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return backoff.compareTo(maxBackoff) > 0 ? maxBackoff : backoff;
+    }
+
+    private void wake() {
+        if (running && taskScheduler != null) {
+            try {
+                taskScheduler.execute(this::drain);
+            } catch (TaskRejectedException ex) {
+                logger.debug("Publish outbox drainer has stopped");
+            }
+        }
+    }
+
+    /**
+     * Writes one line, without syncing it, while holding {@link #writeLock}.
+     *
+     * @return a token to pass to {@link #sync(long)} to wait for the line to reach the disk
+     */
+    private long append(final OutboxEntry entry) {
+        try {
+            if (channel == null) {
+                throw new IOException("Publish outbox is closed");
+            }
+            final ByteBuffer line = ByteBuffer.wrap((mapper.writeValueAsString(entry) + "\n").getBytes(StandardCharsets.UTF_8));
+            while (line.hasRemaining()) {
+                channel.write(line);
+            }
+            lines++;
+            return ++written;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write to publish outbox " + path, ex);
+        }
+    }
+
+    /**
+     * Syncs the log up to at least the given write. A caller that finds its write already synced by someone else's
+     * sync returns straight away, so concurrent writers share one sync.
+     */
+    private void sync(final long token) {
+        if (!fsync) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (synced >= token) {
+                return;
+            }
+            final long target;
+            final FileChannel current;
+            synchronized (writeLock) {
+                target = written;
+                current = channel;
+            }
+            try {
+                if (current == null) {
+                    throw new IOException("Publish outbox is closed");
+                }
+                current.force(false);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Could not sync publish outbox " + path, ex);
+            }
+            synced = target;
+        }
+    }
+
+    /**
+     * Replays the log, keeping each site's last pending outages that were not delivered, then rewrites it with only
+     * those. A line that cannot be read, such as one cut short by a crash, is skipped.
+     */
+    private void load() {
+        final Map<String, Pending> undelivered = new LinkedHashMap<>();
+        long lastSeq = 0;
+        try {
+            if (Files.isRegularFile(path)) {
+                try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        final OutboxEntry entry = decode(line);
+                        if (entry == null) {
+                            continue;
+                        }
+                        lastSeq = Math.max(lastSeq, entry.seq());
+                        if (entry.type() == OutboxEntry.Type.PENDING) {
+                            undelivered.put(entry.siteId(), new Pending(entry.seq(), entry.siteId(), entry.outages(), 0, System.nanoTime()));
+                        } else {
+                            undelivered.computeIfPresent(entry.siteId(), (siteId, current) -> current.seq() == entry.seq() ? null : current);
+                        }
+                    }
+                }
+            }
+
+            final Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel rewrite = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (Pending site : undelivered.values()) {
+                    rewrite.write(ByteBuffer.wrap((mapper.writeValueAsString(new OutboxEntry(OutboxEntry.Type.PENDING, site.seq(), site.siteId(), site.outages())) + "\n")
+                            .getBytes(StandardCharsets.UTF_8)));
+                }
+                rewrite.force(false);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        } catch (IOException ex) {
+            //outages left by a previous run would be lost, so this fails start-up rather than carrying on without them
+            throw new UncheckedIOException("Could not load publish outbox " + path, ex);
+        }
+
+        pending.putAll(undelivered);
+        nextSeq = lastSeq + 1;
+        lines = undelivered.size();
+        if (!undelivered.isEmpty()) {
+            logger.info("Resuming [{}] undelivered site publishes from [{}]", undelivered.size(), path);
+        }
+    }
+
+    private OutboxEntry decode(final String line) {
+        if (line.isBlank()) {
+            return null;
+        }
+        try {
+            final OutboxEntry entry = mapper.readValue(line, OutboxEntry.class);
+            if (entry.type() == null || entry.siteId() == null || (entry.type() == OutboxEntry.Type.PENDING && entry.outages() == null)) {
+                logger.warn("Skipping incomplete publish outbox line in [{}]", path);
+                return null;
+            }
+            return entry;
+        } catch (IOException ex) {
+            logger.warn("Skipping unreadable publish outbox line in [{}] - {}", path, ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * A site's outages waiting to be posted, and when they may next be tried.
+     */
+    private record Pending(long seq, String siteId, List<DeviceOutage> outages, int attempts, long dueNanos) {
+
+        Pending retryAt(final int attempts, final long dueNanos) {
+            return new Pending(seq, siteId, outages, attempts, dueNanos);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package com.example.siteoutageservice.server;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.OutagesNotLoadedException;
+import com.example.siteoutageservice.index.OutageIndex;
+import com.example.siteoutageservice.index.TimeWindow;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import com.example.siteoutageservice.service.SiteDevices;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory outage index and site devices that {@code kraken.mode=server} answers queries from, so a request for a
+ * site already seen is a join against memory without calling Kraken.
+ * <p>
+ * The index is loaded when the application starts and, like the sites in {@code kraken.server.siteIds} and every
+ * site queried since, refreshed every {@code kraken.server.refreshInterval}. A failed refresh keeps serving the
+ * previous data. A site seen for the first time is fetched from /site-info and kept until it goes unqueried for
+ * {@code kraken.server.siteIdleTimeout}; a site Kraken does not know is not kept, and one that disappears is dropped
+ * at the next refresh.
+ */
+@Component
+@ConditionalOnProperty(name = "kraken.mode", havingValue = "server")
+public class OutageQueryCache implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutageQueryCache.class);
+
+    private final KrakenWebClient krakenWebClient;
+    private final OutageDetailService outageDetailService;
+    private final OutageIndexProvider outageIndexProvider;
+    private final Collection<String> preloadSiteIds;
+    private final Duration refreshInterval;
+    private final int refreshConcurrency;
+    private final long siteIdleNanos;
+
+    private final Map<String, CachedSite> sites = new ConcurrentHashMap<>();
+    private volatile OutageIndex index;
+    private ThreadPoolTaskScheduler taskScheduler;
+    private volatile boolean running;
+
+    @Autowired
+    public OutageQueryCache(KrakenWebClient krakenWebClient, OutageDetailService outageDetailService, OutageIndexProvider outageIndexProvider,
+                            @Value("${kraken.server.siteIds:}") List<String> preloadSiteIds,
+                            @Value("${kraken.server.refreshInterval}") Duration refreshInterval,
+                            @Value("${kraken.server.refreshConcurrency}") int refreshConcurrency,
+                            @Value("${kraken.server.siteIdleTimeout}") Duration siteIdleTimeout) {
+        Assert.isTrue(refreshInterval.toMillis() > 0, "kraken.server.refreshInterval must be greater than 0.");
+        Assert.isTrue(refreshConcurrency > 0, "kraken.server.refreshConcurrency must be greater than 0.");
+        Assert.isTrue(siteIdleTimeout.toMillis() > 0, "kraken.server.siteIdleTimeout must be greater than 0.");
+        this.krakenWebClient = krakenWebClient;
+        this.outageDetailService = outageDetailService;
+        this.outageIndexProvider = outageIndexProvider;
+        this.preloadSiteIds = preloadSiteIds.stream().map(String::trim).filter(id -> !id.isEmpty()).toList();
+        this.refreshInterval = refreshInterval;
+        this.refreshConcurrency = refreshConcurrency;
+        this.siteIdleNanos = siteIdleTimeout.toNanos();
+    }
+
+    @Override
+    public void start() {
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.setThreadNamePrefix("outage-refresh-");
+        taskScheduler.initialize();
+
+        logger.info("Refreshing outages and sites every [{}]", refreshInterval);
+        taskScheduler.scheduleWithFixedDelay(this::refreshOnce, refreshInterval);
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        taskScheduler.shutdown();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    public boolean isLoaded() {
+        return index != null;
+    }
+
+    public int siteCount() {
+        return sites.size();
+    }
+
+    /**
+     * @return the site's outages beginning in the window, empty when Kraken does not know the site
+     * @throws OutagesNotLoadedException if the outages have not been loaded yet
+     */
+    public Mono<Optional<List<DeviceOutage>>> outagesFor(final String siteId, final TimeWindow window) {
+        final OutageIndex current = index;
+        if (current == null) {
+            return Mono.error(new OutagesNotLoadedException("Outages have not been loaded from Kraken yet."));
+        }
+
+        final CachedSite cached = sites.get(siteId);
+        if (cached != null) {
+            cached.queriedAt = System.nanoTime();
+            return Mono.just(Optional.of(outageDetailService.getDeviceOutagesFor(cached.devices, current, window)));
+        }
+
+        return fetchSite(siteId)
+                .map(siteDevices -> {
+                    sites.put(siteId, new CachedSite(siteDevices));
+                    return Optional.of(outageDetailService.getDeviceOutagesFor(siteDevices, current, window));
+                })
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    /**
+     * Reloads the index, then every site still kept. Errors are logged and the previous data kept.
+     */
+    void refreshOnce() {
+        try {
+            refresh().block();
+        } catch (RuntimeException ex) {
+            logger.warn("Refresh failed, serving previous data - {} - {}", ex.getClass().getSimpleName(), ex.getMessage());
+        }
+    }
+
+    /**
+     * Non-blocking refresh, failing if /outages cannot be loaded. Sites that fail keep their previous devices.
+     */
+    public Mono<Void> refresh() {
+        final long start = System.nanoTime();
+        return outageIndexProvider.getIndex()
+                .doOnNext(loaded -> index = loaded)
+                .thenMany(Flux.fromIterable(siteIdsToRefresh())
+                        .flatMap(siteId -> fetchSite(siteId)
+                                .doOnNext(siteDevices -> sites.compute(siteId, (id, cached) -> cached == null ? new CachedSite(siteDevices) : cached.refreshed(siteDevices)))
+                                .switchIfEmpty(Mono.fromRunnable(() -> sites.remove(siteId)))
+                                .onErrorResume(ex -> {
+                                    logger.warn("Could not refresh site [{}], keeping previous devices - {}", siteId, ex.getMessage());
+                                    return Mono.empty();
+                                }), refreshConcurrency))
+                .then(Mono.fromRunnable(() -> logger.info("Refreshed [{}] outages and [{}] sites in [{}] ms",
+                        index.size(), sites.size(), Duration.ofNanos(System.nanoTime() - start).toMillis())));
+    }
+
+    /**
+     * Drops the sites, other than preloaded ones, not queried within {@code kraken.server.siteIdleTimeout}, and
+     * returns the rest along with the preloaded sites.
+     */
+    private Collection<String> siteIdsToRefresh() {
+        final long now = System.nanoTime();
+        final int before = sites.size();
+        sites.entrySet().removeIf(entry -> now - entry.getValue().queriedAt > siteIdleNanos && !preloadSiteIds.contains(entry.getKey()));
+        if (sites.size() < before) {
+            logger.debug("Dropped [{}] sites not queried within [{}]", before - sites.size(), Duration.ofNanos(siteIdleNanos));
+        }
+
+        final Collection<String> siteIds = ConcurrentHashMap.newKeySet();
+        siteIds.addAll(preloadSiteIds);
+        siteIds.addAll(sites.keySet());
+        return siteIds;
+    }
+
+    /**
+     * @return the site's devices, or empty when Kraken responds 404 or without a body
+     */
+    private Mono<SiteDevices> fetchSite(final String siteId) {
+        return krakenWebClient.getSiteInfoForAsync(siteId)
+                .mapNotNull(Site::devices)
+                .map(SiteDevices::of)
+                .onErrorResume(ex -> ex instanceof KrakenClientException client && client.getStatus() == HttpStatus.NOT_FOUND.value(),
+                        ex -> Mono.empty());
+    }
+
+    /**
+     * A site's devices and when it was last queried, which a refresh does not change.
+     */
+    private static final class CachedSite {
+
+        private final SiteDevices devices;
+        private volatile long queriedAt;
+
+        private CachedSite(final SiteDevices devices) {
+            this(devices, System.nanoTime());
+        }
+
+        private CachedSite(final SiteDevices devices, final long queriedAt) {
+            this.devices = devices;
+            this.queriedAt = queriedAt;
+        }
+
+        private CachedSite refreshed(final SiteDevices devices) {
+            return new CachedSite(devices, queriedAt);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.siteoutageservice.server;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.ErrorMessage;
+import com.example.siteoutageservice.exception.KrakenCircuitOpenException;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.exception.OutagesNotLoadedException;
+import com.example.siteoutageservice.index.TimeWindow;
+import com.example.siteoutageservice.service.OutageDetailService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+import java.time.format.DateTimeParseException;
+import java.util.List;
+
+/**
+ * {@code GET /sites/{siteId}/outages?since=&until=} answered from {@link OutageQueryCache}. {@code since} and
+ * {@code until} are ISO-8601 instants bounding when outages began, {@code since} inclusive and {@code until}
+ * exclusive, and default to {@code kraken.outagesTimeFilter} and {@code kraken.outagesTimeFilterUntil}.
+ */
+@RestController
+@ConditionalOnProperty(name = "kraken.mode", havingValue = "server")
+public class SiteOutagesController {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiteOutagesController.class);
+
+    private final OutageQueryCache outageQueryCache;
+    private final TimeWindow defaultWindow;
+
+    @Autowired
+    public SiteOutagesController(OutageQueryCache outageQueryCache, OutageDetailService outageDetailService) {
+        this.outageQueryCache = outageQueryCache;
+        this.defaultWindow = outageDetailService.getOutagesTimeFilter();
+    }
+
+    @GetMapping("/sites/{siteId}/outages")
+    public Mono<ResponseEntity<?>> getOutages(@PathVariable final String siteId,
+                                              @RequestParam(required = false) final String since,
+                                              @RequestParam(required = false) final String until) {
+        final TimeWindow window = new TimeWindow(
+                StringUtils.hasText(since) ? TimeWindow.parse(since, "").from() : defaultWindow.from(),
+                StringUtils.hasText(until) ? TimeWindow.parse("", until).until() : defaultWindow.until());
+
+        return outageQueryCache.outagesFor(siteId, window)
+                .map(outages -> outages
+                        .<ResponseEntity<?>>map(ResponseEntity::ok)
+                        .orElseGet(() -> error(HttpStatus.NOT_FOUND, "Site " + siteId + " not found")));
+    }
+
+    @ExceptionHandler({DateTimeParseException.class, IllegalArgumentException.class})
+    public ResponseEntity<ErrorMessage> badRequest(final RuntimeException ex) {
+        return error(HttpStatus.BAD_REQUEST, ex.getMessage());
+    }
+
+    @ExceptionHandler(OutagesNotLoadedException.class)
+    public ResponseEntity<ErrorMessage> notLoaded(final OutagesNotLoadedException ex) {
+        return error(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage());
+    }
+
+    @ExceptionHandler({KrakenServerException.class, KrakenClientException.class, KrakenCircuitOpenException.class})
+    public ResponseEntity<ErrorMessage> krakenFailed(final RuntimeException ex) {
+        logger.warn("Kraken failed answering a query - {} - {}", ex.getClass().getSimpleName(), ex.getMessage());
+        return error(HttpStatus.BAD_GATEWAY, "Kraken failed - " + ex.getMessage());
+    }
+
+    private static ResponseEntity<ErrorMessage> error(final HttpStatus status, final String message) {
+        return ResponseEntity.status(status).body(new ErrorMessage(message));
+    }
+}
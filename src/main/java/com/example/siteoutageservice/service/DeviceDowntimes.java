@@ -0,0 +1,63 @@
+package com.example.siteoutageservice.service;
+
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceDowntime;
+import com.example.siteoutageservice.index.Downtime;
+import com.example.siteoutageservice.index.DowntimeAccumulator;
+import com.example.siteoutageservice.index.OutageRecord;
+import com.example.siteoutageservice.index.OutageTimestamps;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Accumulates the downtime of a site's devices from outages arriving one at a time, in any order, so an outage
+ * list can be aggregated as it is streamed without keeping the outages or joining them to rows.
+ * Not thread safe, outages must be added one after the other.
+ */
+final class DeviceDowntimes {
+
+    private final SiteDevices siteDevices;
+    private final DowntimeAccumulator[] accumulators;
+
+    DeviceDowntimes(SiteDevices siteDevices) {
+        this.siteDevices = siteDevices;
+        this.accumulators = new DowntimeAccumulator[siteDevices.ids().size()];
+    }
+
+    /**
+     * Outages for devices the site does not have are ignored.
+     */
+    void add(final OutageRecord outage) {
+        final int device = siteDevices.positionOf(outage.id());
+        if (device < 0) {
+            return;
+        }
+        if (accumulators[device] == null) {
+            accumulators[device] = new DowntimeAccumulator();
+        }
+        accumulators[device].add(outage.begin(), outage.end());
+    }
+
+    /**
+     * @return the downtime of every device with at least one outage, in site order
+     */
+    List<DeviceDowntime> finish(final long now) {
+        final List<DeviceDowntime> result = new ArrayList<>();
+        for (int device = 0; device < accumulators.length; device++) {
+            if (accumulators[device] != null) {
+                result.add(of(siteDevices.at(device), accumulators[device].finish(now)));
+            }
+        }
+        return result;
+    }
+
+    static DeviceDowntime of(final Device device, final Downtime downtime) {
+        final List<DeviceDowntime.Interval> intervals = new ArrayList<>(downtime.intervals().size());
+        for (Downtime.Interval interval : downtime.intervals()) {
+            intervals.add(new DeviceDowntime.Interval(OutageTimestamps.formatEpochMillis(interval.begin()),
+                    interval.isOngoing() ? null : OutageTimestamps.formatEpochMillis(interval.end())));
+        }
+        return new DeviceDowntime(device.id(), device.name(), downtime.outageCount(), downtime.total(), downtime.longest(), intervals);
+    }
+}
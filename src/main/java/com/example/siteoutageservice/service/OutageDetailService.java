@@ -1,9 +1,17 @@
 package com.example.siteoutageservice.service;
 
 import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceDowntime;
 import com.example.siteoutageservice.dto.DeviceOutage;
 import com.example.siteoutageservice.dto.Outage;
 import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.dto.SiteOutages;
+import com.example.siteoutageservice.index.LiveOutageIndex;
+import com.example.siteoutageservice.index.OutageIndex;
+import com.example.siteoutageservice.index.OutageRecord;
+import com.example.siteoutageservice.index.TimeWindow;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.metrics.KrakenMetrics.Stage;
 import com.example.siteoutageservice.web.KrakenWebClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,27 +19,49 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.function.Tuple2;
 
-import java.time.ZonedDateTime;
-import java.util.Collection;
+import java.time.format.DateTimeParseException;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.function.Function;
-
-import static java.util.stream.Collectors.toUnmodifiableMap;
+import java.util.Objects;
+import java.util.Optional;
 
 @Service
 public class OutageDetailService {
 
     private static final Logger logger = LoggerFactory.getLogger(OutageDetailService.class);
     private final KrakenWebClient krakenWebClient;
-    private final ZonedDateTime outagesTimeFilter;
+    private final TimeWindow outagesTimeFilter;
+    private final KrakenMetrics krakenMetrics;
+    private final int publishChunkSize;
+    private final int publishConcurrency;
+    private final ParallelJoin parallelJoin;
 
     @Autowired
-    public OutageDetailService(KrakenWebClient krakenWebClient, @Value("${kraken.outagesTimeFilter}") String outagesTimeFilter) {
+    public OutageDetailService(KrakenWebClient krakenWebClient, @Value("${kraken.outagesTimeFilter}") String outagesTimeFilter,
+                               @Value("${kraken.outagesTimeFilterUntil:}") String outagesTimeFilterUntil, KrakenMetrics krakenMetrics,
+                               @Value("${kraken.publish.chunkSize}") int publishChunkSize, @Value("${kraken.publish.chunkConcurrency}") int publishConcurrency,
+                               ParallelJoin parallelJoin) {
+        Assert.isTrue(publishChunkSize >= 0, "kraken.publish.chunkSize cannot be negative.");
+        Assert.isTrue(publishConcurrency > 0, "kraken.publish.chunkConcurrency must be greater than 0.");
         this.krakenWebClient = krakenWebClient;
-        this.outagesTimeFilter = ZonedDateTime.parse(outagesTimeFilter);
+        this.outagesTimeFilter = TimeWindow.parse(outagesTimeFilter, outagesTimeFilterUntil);
+        this.krakenMetrics = krakenMetrics;
+        this.publishChunkSize = publishChunkSize;
+        this.publishConcurrency = publishConcurrency;
+        this.parallelJoin = parallelJoin;
+    }
+
+    /**
+     * @return the window outages must begin in, from {@code kraken.outagesTimeFilter} (inclusive)
+     * until {@code kraken.outagesTimeFilterUntil} (exclusive, open when blank).
+     */
+    public TimeWindow getOutagesTimeFilter(){
+        return outagesTimeFilter;
     }
 
     public void publishDeviceOutages(final String siteId, final List<DeviceOutage> detailedOutages){
@@ -42,7 +72,11 @@ public class OutageDetailService {
         logger.info("Publishing [{}] detailed outages for siteId [{}]", detailedOutages.size(), siteId);
         logger.debug("Publishing outages: {}", detailedOutages);
 
-        krakenWebClient.postOutagesFor(siteId, detailedOutages);
+        if (isChunked(detailedOutages)) {
+            krakenMetrics.time(Stage.PUBLISH, () -> post(siteId, detailedOutages).block());
+        } else {
+            krakenMetrics.time(Stage.PUBLISH, () -> krakenWebClient.postOutagesFor(siteId, detailedOutages));
+        }
     }
 
     public List<DeviceOutage> getDeviceOutagesFor(final String siteId){
@@ -55,28 +89,341 @@ public class OutageDetailService {
 
         return krakenWebClient.getSiteInfoFor(siteId)
                 .map(Site::devices)
-                .map(this::getDeviceById)
+                .map(SiteDevices::of)
                 .map(d -> getDetailedOutages(outages, d))
                 .orElseGet(Collections::emptyList);
     }
 
-    private Map<String, Device> getDeviceById(final Collection<Device> devices){
-        return devices.stream()
-                .collect(toUnmodifiableMap(Device::id, Function.identity(), (a,b) -> {
-                    logger.warn("Duplicate device Id found for two devices [{}] and [{}]. Continuing with [{}].", a.name(), b.name(), a.name());
-                    return a;
-                }));
+    /**
+     * Joins the site's devices against an index built once from /outages, so callers processing many sites
+     * only download and filter the outage list a single time.
+     */
+    public List<DeviceOutage> getDeviceOutagesFor(final String siteId, final OutageIndex outageIndex){
+        return getDeviceOutagesFor(siteId, outageIndex, outagesTimeFilter);
+    }
+
+    /**
+     * Same as {@link #getDeviceOutagesFor(String, OutageIndex)} but for outages beginning in the given window
+     * rather than the configured time filter.
+     */
+    public List<DeviceOutage> getDeviceOutagesFor(final String siteId, final OutageIndex outageIndex, final TimeWindow window){
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+        Assert.notNull(outageIndex, "outageIndex cannot be null.");
+        Assert.notNull(window, "window cannot be null.");
+
+        logger.info("Collecting detailed outages for siteId [{}] from index of [{}] outages", siteId, outageIndex.size());
+
+        return krakenWebClient.getSiteInfoFor(siteId)
+                .map(Site::devices)
+                .map(SiteDevices::of)
+                .map(d -> getDetailedOutages(outageIndex, d, window))
+                .orElseGet(Collections::emptyList);
+    }
+
+    /**
+     * Joins devices already fetched from /site-info against the index, without calling Kraken, for callers that keep
+     * sites in memory between requests.
+     */
+    public List<DeviceOutage> getDeviceOutagesFor(final SiteDevices siteDevices, final OutageIndex outageIndex, final TimeWindow window){
+        Assert.notNull(siteDevices, "siteDevices cannot be null.");
+        Assert.notNull(outageIndex, "outageIndex cannot be null.");
+        Assert.notNull(window, "window cannot be null.");
+
+        return getDetailedOutages(outageIndex, siteDevices, window);
+    }
+
+    /**
+     * Same as {@link #getDeviceOutagesFor(SiteDevices, OutageIndex, TimeWindow)} against an index kept up to date by
+     * outage events, so the cost is that of the site's outages rather than of all of /outages.
+     */
+    public List<DeviceOutage> getDeviceOutagesFor(final SiteDevices siteDevices, final LiveOutageIndex outageIndex, final TimeWindow window){
+        Assert.notNull(siteDevices, "siteDevices cannot be null.");
+        Assert.notNull(outageIndex, "outageIndex cannot be null.");
+        Assert.notNull(window, "window cannot be null.");
+
+        return krakenMetrics.time(Stage.JOIN, () -> outageIndex.join(siteDevices.ids(), window,
+                (device, outage) -> new DeviceOutage(siteDevices.at(device), outage)));
+    }
+
+    /**
+     * Non-blocking version of {@link #publishDeviceOutages(String, List)}.
+     */
+    public Mono<Void> publishDeviceOutagesAsync(final String siteId, final List<DeviceOutage> detailedOutages){
+        Assert.notNull(detailedOutages, "detailedOutages cannot be null.");
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+
+        logger.info("Publishing [{}] detailed outages for siteId [{}]", detailedOutages.size(), siteId);
+        logger.debug("Publishing outages: {}", detailedOutages);
+
+        return krakenMetrics.time(Stage.PUBLISH, post(siteId, detailedOutages));
+    }
+
+    /**
+     * Posts in chunks of {@code kraken.publish.chunkSize} when there are more outages than that, otherwise in one request.
+     */
+    private Mono<Void> post(final String siteId, final List<DeviceOutage> detailedOutages){
+        if (isChunked(detailedOutages)) {
+            logger.info("Publishing in chunks of [{}] with up to [{}] in flight", publishChunkSize, publishConcurrency);
+            return krakenWebClient.postOutagesInChunksAsync(siteId, Flux.fromIterable(detailedOutages), publishChunkSize, publishConcurrency);
+        }
+        return krakenWebClient.postOutagesForAsync(siteId, detailedOutages);
+    }
+
+    private boolean isChunked(final List<DeviceOutage> detailedOutages){
+        return publishChunkSize > 0 && detailedOutages.size() > publishChunkSize;
+    }
+
+    /**
+     * Non-blocking version of {@link #getDeviceOutagesFor(String)}. The /outages and /site-info requests are
+     * in flight at the same time, so the result is ready as soon as the slower of the two has responded.
+     */
+    public Mono<List<DeviceOutage>> getDeviceOutagesForAsync(final String siteId){
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+
+        logger.info("Collecting detailed outages for siteId [{}]", siteId);
+
+        return Mono.zip(krakenWebClient.getOutagesAsync(), getSiteInfoAsync(siteId))
+                //the join may wait on the parallel join pool, which must not happen on a Netty event loop
+                .publishOn(Schedulers.boundedElastic())
+                .map(t -> t.getT2()
+                        .map(Site::devices)
+                        .map(SiteDevices::of)
+                        .map(d -> getDetailedOutages(t.getT1(), d))
+                        .orElseGet(Collections::emptyList));
+    }
+
+    /**
+     * Streaming version of {@link #getDeviceOutagesForAsync(String)}. Outages are filtered by time and joined to the
+     * site's devices one at a time as /outages is parsed, so only matching outages are ever held in memory.
+     * The /site-info request is still made alongside /outages.
+     */
+    public Mono<List<DeviceOutage>> streamDeviceOutagesForAsync(final String siteId){
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+
+        logger.info("Streaming detailed outages for siteId [{}]", siteId);
+
+        final Mono<SiteDevices> siteDevices = getSiteInfoAsync(siteId)
+                .map(site -> site
+                        .map(Site::devices)
+                        .map(SiteDevices::of)
+                        .orElse(SiteDevices.NONE))
+                .cache();
+
+        final Mono<List<DeviceOutage>> detailedOutages = krakenWebClient.streamOutages()
+                .mapNotNull(this::inTimeFilter)
+                .concatMap(o -> siteDevices.mapNotNull(d -> join(d, o)))
+                .collectList();
+
+        return Mono.zip(siteDevices, detailedOutages)
+                .map(Tuple2::getT2);
+    }
+
+    /**
+     * Non-blocking version of {@link #getDeviceOutagesFor(String, OutageIndex)}.
+     */
+    public Mono<List<DeviceOutage>> getDeviceOutagesForAsync(final String siteId, final OutageIndex outageIndex){
+        return getDeviceOutagesForAsync(siteId, outageIndex, outagesTimeFilter);
+    }
+
+    /**
+     * Non-blocking version of {@link #getDeviceOutagesFor(String, OutageIndex, TimeWindow)}.
+     */
+    public Mono<List<DeviceOutage>> getDeviceOutagesForAsync(final String siteId, final OutageIndex outageIndex, final TimeWindow window){
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+        Assert.notNull(outageIndex, "outageIndex cannot be null.");
+        Assert.notNull(window, "window cannot be null.");
+
+        logger.info("Collecting detailed outages for siteId [{}] from index of [{}] outages", siteId, outageIndex.size());
+
+        return getSiteInfoAsync(siteId)
+                .map(site -> site
+                        .map(Site::devices)
+                        .map(SiteDevices::of)
+                        .map(d -> getDetailedOutages(outageIndex, d, window))
+                        .orElseGet(Collections::emptyList));
+    }
+
+    /**
+     * Merges the overlapping and adjacent outages of each of the site's devices that began within the window, and
+     * totals their downtime. Each device's outages are read from the index in begin order in a single pass, without
+     * joining them to rows first. Devices without outages in the window are left out.
+     */
+    public List<DeviceDowntime> getDeviceDowntimeFor(final String siteId, final OutageIndex outageIndex, final TimeWindow window){
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+        Assert.notNull(outageIndex, "outageIndex cannot be null.");
+        Assert.notNull(window, "window cannot be null.");
+
+        logger.info("Aggregating device downtime for siteId [{}] from index of [{}] outages", siteId, outageIndex.size());
+
+        return krakenWebClient.getSiteInfoFor(siteId)
+                .map(Site::devices)
+                .map(SiteDevices::of)
+                .map(d -> getDowntime(outageIndex, d, window))
+                .orElseGet(Collections::emptyList);
+    }
+
+    /**
+     * Non-blocking version of {@link #getDeviceDowntimeFor(String, OutageIndex, TimeWindow)}.
+     */
+    public Mono<List<DeviceDowntime>> getDeviceDowntimeForAsync(final String siteId, final OutageIndex outageIndex, final TimeWindow window){
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+        Assert.notNull(outageIndex, "outageIndex cannot be null.");
+        Assert.notNull(window, "window cannot be null.");
+
+        logger.info("Aggregating device downtime for siteId [{}] from index of [{}] outages", siteId, outageIndex.size());
+
+        return getSiteInfoAsync(siteId)
+                .map(site -> site
+                        .map(Site::devices)
+                        .map(SiteDevices::of)
+                        .map(d -> getDowntime(outageIndex, d, window))
+                        .orElseGet(Collections::emptyList));
+    }
+
+    /**
+     * Both {@link #getDeviceOutagesForAsync(String, OutageIndex, TimeWindow)} and
+     * {@link #getDeviceDowntimeForAsync(String, OutageIndex, TimeWindow)} from a single /site-info call and a single
+     * walk over the index.
+     */
+    public Mono<SiteOutages> getSiteOutagesForAsync(final String siteId, final OutageIndex outageIndex, final TimeWindow window){
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+        Assert.notNull(outageIndex, "outageIndex cannot be null.");
+        Assert.notNull(window, "window cannot be null.");
+
+        logger.info("Collecting detailed outages and downtime for siteId [{}] from index of [{}] outages", siteId, outageIndex.size());
+
+        return getSiteInfoAsync(siteId)
+                .map(site -> site
+                        .map(Site::devices)
+                        .map(SiteDevices::of)
+                        .map(d -> getSiteOutages(outageIndex, d, window))
+                        .orElseGet(() -> new SiteOutages(Collections.emptyList(), Collections.emptyList())));
+    }
+
+    /**
+     * Streaming version of device downtime for the configured time filter. Each outage of /outages is added to its
+     * device's downtime as it is parsed and then dropped, so neither the outage list nor the joined rows are
+     * ever held in memory. The /site-info request is made alongside /outages.
+     */
+    public Mono<List<DeviceDowntime>> streamDeviceDowntimeForAsync(final String siteId){
+        Assert.notNull(siteId, "SiteId cannot be null.");
+        Assert.hasLength(siteId.trim(), "SiteId cannot be blank.");
+
+        logger.info("Streaming device downtime for siteId [{}]", siteId);
+
+        final Mono<DeviceDowntimes> downtimes = getSiteInfoAsync(siteId)
+                .map(site -> site
+                        .map(Site::devices)
+                        .map(SiteDevices::of)
+                        .orElse(SiteDevices.NONE))
+                .map(DeviceDowntimes::new)
+                .cache();
+
+        final Mono<Void> accumulated = krakenWebClient.streamOutages()
+                .mapNotNull(OutageDetailService::toRecord)
+                .filter(o -> outagesTimeFilter.contains(o.begin()))
+                .concatMap(o -> downtimes.doOnNext(d -> d.add(o)))
+                .then();
+
+        return Mono.zip(downtimes, accumulated.thenReturn(true))
+                .map(t -> t.getT1().finish(System.currentTimeMillis()));
+    }
+
+    /**
+     * Indexes every outage, not only those in the configured time filter, so the same index can answer
+     * queries for any time window.
+     */
+    public OutageIndex indexOutages(final List<Outage> outages){
+        Assert.notNull(outages, "outages cannot be null.");
+
+        return krakenMetrics.time(Stage.INDEX, () -> OutageIndex.of(outages.stream()
+                .map(OutageDetailService::toRecord)
+                .filter(Objects::nonNull)
+                .toList()));
+    }
+
+    /**
+     * Builds an index from a stream of outages, parsing each outage's times as it arrives.
+     */
+    public Mono<OutageIndex> indexOutages(final Flux<Outage> outages){
+        Assert.notNull(outages, "outages cannot be null.");
+
+        return outages
+                //parse and index off the Netty event loop that decodes the response
+                .publishOn(Schedulers.boundedElastic())
+                .mapNotNull(OutageDetailService::toRecord)
+                .collectList()
+                .map(records -> krakenMetrics.time(Stage.INDEX, () -> OutageIndex.of(records)));
+    }
+
+    /**
+     * @return the outage with its begin and end parsed, or null if either cannot be parsed, so one malformed outage
+     * from Kraken is skipped rather than failing every site
+     */
+    public static OutageRecord toRecord(final Outage outage){
+        try {
+            return OutageRecord.of(outage);
+        } catch (DateTimeParseException ex) {
+            logger.warn("Skipping outage with unparseable times - {} - {}", outage, ex.getMessage());
+            return null;
+        }
+    }
+
+    private Mono<Optional<Site>> getSiteInfoAsync(final String siteId){
+        return krakenWebClient.getSiteInfoForAsync(siteId)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private List<DeviceOutage> getDetailedOutages(final List<Outage> outages, final SiteDevices siteDevices){
+        final List<Outage> inTimeFilter = krakenMetrics.time(Stage.FILTER, () -> parallelJoin.map(outages, this::inTimeFilter));
+
+        return krakenMetrics.time(Stage.JOIN, () -> Collections.unmodifiableList(parallelJoin.map(inTimeFilter,
+                o -> join(siteDevices, o))));
+    }
+
+    private List<DeviceOutage> getDetailedOutages(final OutageIndex outageIndex, final SiteDevices siteDevices, final TimeWindow window){
+        //the index filters and joins in one pass, matching each outage to its device by position, so it is timed as the join
+        return krakenMetrics.time(Stage.JOIN, () -> outageIndex.join(siteDevices.ids(), window,
+                (device, outage) -> new DeviceOutage(siteDevices.at(device), outage)));
+    }
+
+    private List<DeviceDowntime> getDowntime(final OutageIndex outageIndex, final SiteDevices siteDevices, final TimeWindow window){
+        return krakenMetrics.time(Stage.AGGREGATE, () -> outageIndex.downtime(siteDevices.ids(), window, System.currentTimeMillis(),
+                (device, downtime) -> DeviceDowntimes.of(siteDevices.at(device), downtime)));
+    }
+
+    private SiteOutages getSiteOutages(final OutageIndex outageIndex, final SiteDevices siteDevices, final TimeWindow window){
+        //downtime is accumulated as each outage is joined, so both come from one walk and are timed as the join
+        final OutageIndex.Joined<DeviceOutage, DeviceDowntime> joined = krakenMetrics.time(Stage.JOIN, () -> outageIndex.joinWithDowntime(
+                siteDevices.ids(), window, System.currentTimeMillis(),
+                (device, outage) -> new DeviceOutage(siteDevices.at(device), outage),
+                (device, downtime) -> DeviceDowntimes.of(siteDevices.at(device), downtime)));
+        return new SiteOutages(joined.rows(), joined.downtime());
     }
 
-    private List<DeviceOutage> getDetailedOutages(final List<Outage> outages, final Map<String, Device> deviceById){
-        return outages.stream()
-                .filter(this::isNotBeforeDate)
-                .filter(o -> deviceById.containsKey(o.id()))
-                .map(o -> new DeviceOutage(deviceById.get(o.id()), o))
-                .toList();
+    /**
+     * @return the outage joined to its device, or null if it is not one of the site's devices
+     */
+    private static DeviceOutage join(final SiteDevices siteDevices, final Outage outage){
+        final Device device = siteDevices.get(outage.id());
+        return device == null ? null : new DeviceOutage(device, outage);
     }
 
-    private boolean isNotBeforeDate(Outage o) {
-        return !ZonedDateTime.parse(o.begin()).isBefore(outagesTimeFilter);
+    /**
+     * @return the outage if it began within the time filter, or null if not or if it is skipped by {@link #toRecord(Outage)},
+     * so every mode drops the same outages
+     */
+    private Outage inTimeFilter(final Outage o) {
+        final OutageRecord record = toRecord(o);
+        return record != null && outagesTimeFilter.contains(record.begin()) ? o : null;
     }
 }
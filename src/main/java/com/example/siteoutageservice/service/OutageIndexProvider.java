@@ -0,0 +1,65 @@
+package com.example.siteoutageservice.service;
+
+import com.example.siteoutageservice.index.OutageIndex;
+import com.example.siteoutageservice.snapshot.OutageSnapshotStore;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Supplies the outage index shared by every site in a run. Uses the local snapshot while it is fresh, otherwise
+ * fetches /outages (streamed when {@code kraken.outages.streaming} is set) and refreshes the snapshot.
+ */
+@Service
+public class OutageIndexProvider {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutageIndexProvider.class);
+
+    private final KrakenWebClient krakenWebClient;
+    private final OutageDetailService outageDetailService;
+    private final OutageSnapshotStore snapshotStore;
+    private final boolean streaming;
+
+    @Autowired
+    public OutageIndexProvider(KrakenWebClient krakenWebClient, OutageDetailService outageDetailService, OutageSnapshotStore snapshotStore,
+                               @Value("${kraken.outages.streaming}") boolean streaming) {
+        this.krakenWebClient = krakenWebClient;
+        this.outageDetailService = outageDetailService;
+        this.snapshotStore = snapshotStore;
+        this.streaming = streaming;
+    }
+
+    public Mono<OutageIndex> getIndex(){
+        if (!snapshotStore.isEnabled()) {
+            return fetchIndex();
+        }
+
+        return Mono.fromCallable(snapshotStore::loadFresh)
+                .subscribeOn(Schedulers.boundedElastic())
+                .flatMap(snapshot -> snapshot
+                        .map(records -> Mono.just(OutageIndex.of(records)))
+                        .orElseGet(this::fetchIndexAndSnapshot));
+    }
+
+    private Mono<OutageIndex> fetchIndexAndSnapshot(){
+        return fetchIndex()
+                .flatMap(index -> Mono.fromRunnable(() -> snapshotStore.write(index.records()))
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .thenReturn(index));
+    }
+
+    private Mono<OutageIndex> fetchIndex(){
+        return (streaming
+                ? outageDetailService.indexOutages(krakenWebClient.streamOutages())
+                : krakenWebClient.getOutagesAsync()
+                        //parsing, sorting and indexing every outage must not hold up the Netty event loop the server also runs on
+                        .publishOn(Schedulers.boundedElastic())
+                        .map(outageDetailService::indexOutages))
+                .doOnNext(index -> logger.info("Indexed [{}] outages across [{}] devices", index.size(), index.deviceCount()));
+    }
+}
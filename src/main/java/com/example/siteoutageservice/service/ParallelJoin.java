@@ -0,0 +1,140 @@
+package com.example.siteoutageservice.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Runs the filter and join over large outage lists on a dedicated {@link ForkJoinPool} of
+ * {@code kraken.join.parallelism} threads (all cores when 0), kept apart from the common pool and Reactor's
+ * schedulers. Lists shorter than {@code kraken.join.parallelThreshold} stay on the calling thread, where splitting
+ * would cost more than it saves. Results are always in input order, the same as a sequential pass.
+ */
+@Component
+public class ParallelJoin {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelJoin.class);
+
+    /**
+     * Smallest slice of the list a single task works through.
+     */
+    private static final int MIN_LEAF_SIZE = 4096;
+
+    private final ForkJoinPool pool;
+    private final int threshold;
+
+    @Autowired
+    public ParallelJoin(@Value("${kraken.join.parallel}") boolean enabled,
+                        @Value("${kraken.join.parallelism}") int parallelism,
+                        @Value("${kraken.join.parallelThreshold}") int threshold) {
+        Assert.isTrue(parallelism >= 0, "kraken.join.parallelism cannot be negative.");
+        Assert.isTrue(threshold > 0, "kraken.join.parallelThreshold must be greater than 0.");
+        this.threshold = threshold;
+        this.pool = enabled ? new ForkJoinPool(parallelism == 0 ? Runtime.getRuntime().availableProcessors() : parallelism, ParallelJoin::newThread, null, false) : null;
+        if (pool != null) {
+            logger.debug("Parallel join on [{}] threads for more than [{}] outages", pool.getParallelism(), threshold);
+        }
+    }
+
+    /**
+     * Joins on the calling thread only.
+     */
+    public static ParallelJoin disabled() {
+        return new ParallelJoin(false, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Applies {@code mapper} to every item, dropping items it maps to null, in parallel when there are at least
+     * {@code kraken.join.parallelThreshold} items. The calling thread waits for the pool, so reactive callers move
+     * off the event loop before calling this.
+     *
+     * @return the mapped items in the order of {@code items}
+     */
+    public <T, R> List<R> map(final List<T> items, final Function<T, R> mapper) {
+        if (pool == null || items.size() < threshold) {
+            return mapSlice(items, mapper);
+        }
+
+        final int leafSize = Math.max(MIN_LEAF_SIZE, items.size() / (pool.getParallelism() * 4));
+        final List<List<R>> slices = pool.invoke(new MapTask<>(items, mapper, leafSize));
+
+        int size = 0;
+        for (List<R> slice : slices) {
+            size += slice.size();
+        }
+        final List<R> result = new ArrayList<>(size);
+        slices.forEach(result::addAll);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (pool != null) {
+            pool.shutdownNow();
+        }
+    }
+
+    private static <T, R> List<R> mapSlice(final List<T> items, final Function<T, R> mapper) {
+        final List<R> result = new ArrayList<>();
+        for (T item : items) {
+            final R mapped = mapper.apply(item);
+            if (mapped != null) {
+                result.add(mapped);
+            }
+        }
+        return result;
+    }
+
+    private static ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+        final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("outage-join-" + thread.getPoolIndex());
+        return thread;
+    }
+
+    /**
+     * Halves its slice until it is at most {@code leafSize} long, returning the mapped leaves in order so they are
+     * only copied once, into the final list.
+     */
+    private static final class MapTask<T, R> extends RecursiveTask<List<List<R>>> {
+
+        private final List<T> items;
+        private final Function<T, R> mapper;
+        private final int leafSize;
+
+        private MapTask(List<T> items, Function<T, R> mapper, int leafSize) {
+            this.items = items;
+            this.mapper = mapper;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected List<List<R>> compute() {
+            if (items.size() <= leafSize) {
+                return List.of(mapSlice(items, mapper));
+            }
+
+            final int middle = items.size() >>> 1;
+            final MapTask<T, R> left = new MapTask<>(items.subList(0, middle), mapper, leafSize);
+            final MapTask<T, R> right = new MapTask<>(items.subList(middle, items.size()), mapper, leafSize);
+            left.fork();
+            final List<List<R>> rightSlices = right.compute();
+            final List<List<R>> leftSlices = left.join();
+
+            final List<List<R>> slices = new ArrayList<>(leftSlices.size() + rightSlices.size());
+            slices.addAll(leftSlices);
+            slices.addAll(rightSlices);
+            return slices;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.siteoutageservice.service;
+
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.index.DeviceIdTable;
+import com.example.siteoutageservice.index.OutageIndex;
+import com.example.siteoutageservice.index.TimeWindow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A site's devices keyed by id for joining outages to them. Devices are dictionary encoded in site order, so a
+ * join looks an outage's id up once in a {@link DeviceIdTable} and then reads the device from an array, or, when
+ * joining through an index, reads it by position without hashing the id at all. Callers keeping sites in memory can
+ * hold on to one and join against it with {@link OutageDetailService#getDeviceOutagesFor(SiteDevices, OutageIndex, TimeWindow)}.
+ */
+public final class SiteDevices {
+
+    private static final Logger logger = LoggerFactory.getLogger(SiteDevices.class);
+
+    static final SiteDevices NONE = new SiteDevices(new DeviceIdTable(0), Collections.emptyList(), new Device[0]);
+
+    private final DeviceIdTable codes;
+    private final List<String> ids;
+    private final Device[] devices;
+
+    private SiteDevices(DeviceIdTable codes, List<String> ids, Device[] devices) {
+        this.codes = codes;
+        this.ids = ids;
+        this.devices = devices;
+    }
+
+    /**
+     * Keeps the first of any devices sharing an id, warning about each one dropped.
+     */
+    public static SiteDevices of(final Collection<Device> devices) {
+        final DeviceIdTable codes = new DeviceIdTable(devices.size());
+        final List<String> ids = new ArrayList<>(devices.size());
+        final List<Device> unique = new ArrayList<>(devices.size());
+
+        for (Device device : devices) {
+            final int code = codes.add(device.id());
+            if (code < unique.size()) {
+                final Device kept = unique.get(code);
+                logger.warn("Duplicate device Id found for two devices [{}] and [{}]. Continuing with [{}].", kept.name(), device.name(), kept.name());
+            } else {
+                ids.add(device.id());
+                unique.add(device);
+            }
+        }
+        return new SiteDevices(codes, Collections.unmodifiableList(ids), unique.toArray(new Device[0]));
+    }
+
+    /**
+     * @return the device with this id, or null if the site has none
+     */
+    Device get(final String id) {
+        final int code = positionOf(id);
+        return code < 0 ? null : devices[code];
+    }
+
+    /**
+     * @return the position in {@link #ids()} of the device with this id, or -1 if the site has none
+     */
+    int positionOf(final String id) {
+        return codes.codeOf(id);
+    }
+
+    /**
+     * @return the device at {@code position} in {@link #ids()}
+     */
+    Device at(final int position) {
+        return devices[position];
+    }
+
+    /**
+     * @return the distinct device ids, in site order
+     */
+    public List<String> ids() {
+        return ids;
+    }
+}
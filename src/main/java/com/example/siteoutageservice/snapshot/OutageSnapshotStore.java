@@ -0,0 +1,217 @@
+package com.example.siteoutageservice.snapshot;
+
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.index.OutageRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Local snapshot of the last fetched /outages so a short-lived job started again soon after can skip the download.
+ * <p>
+ * File layout, all big-endian:
+ * <pre>
+ * header   magic int, version int, writtenAt long (epoch millis), recordCount int
+ * records  recordCount x (id int, begin int, end int, beginMillis long, endMillis long)
+ * strings  stringCount int, stringCount x (byteLength int, UTF-8 bytes)
+ * </pre>
+ * Record string fields are indexes into the string table, -1 for null. Repeated device ids are stored once.
+ * The file is memory mapped when read and replaced atomically when written.
+ */
+@Component
+public class OutageSnapshotStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutageSnapshotStore.class);
+
+    static final int MAGIC = 0x4B4F534E;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    static final int RECORD_BYTES = 4 + 4 + 4 + 8 + 8;
+
+    private final boolean enabled;
+    private final Path path;
+    private final Duration maxAge;
+    private final Clock clock;
+
+    @Autowired
+    public OutageSnapshotStore(@Value("${kraken.snapshot.enabled}") boolean enabled, @Value("${kraken.snapshot.path}") Path path,
+                               @Value("${kraken.snapshot.maxAge}") Duration maxAge) {
+        this(enabled, path, maxAge, Clock.systemUTC());
+    }
+
+    OutageSnapshotStore(boolean enabled, Path path, Duration maxAge, Clock clock) {
+        this.enabled = enabled;
+        this.path = path;
+        this.maxAge = maxAge;
+        this.clock = clock;
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * @return the snapshot's outages if one exists and was written within {@code kraken.snapshot.maxAge},
+     * otherwise empty. A corrupt snapshot, or one written in the future, is logged and treated as missing.
+     */
+    public Optional<List<OutageRecord>> loadFresh(){
+        if (!enabled || !Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                logger.warn("Ignoring snapshot [{}] with unknown format", path);
+                return Optional.empty();
+            }
+
+            final long writtenAt = buffer.getLong();
+            final Duration age = Duration.ofMillis(clock.millis() - writtenAt);
+            if (age.isNegative()) {
+                //clock skew or a corrupt header, which would otherwise be taken as fresh for as long as the file exists
+                logger.warn("Ignoring snapshot [{}] written [{}] s in the future", path, age.negated().toSeconds());
+                return Optional.empty();
+            }
+            if (age.compareTo(maxAge) > 0) {
+                logger.info("Snapshot [{}] is [{}] s old, older than max age [{}] s", path, age.toSeconds(), maxAge.toSeconds());
+                return Optional.empty();
+            }
+
+            final List<OutageRecord> records = read(buffer);
+            logger.info("Loaded [{}] outages from snapshot [{}] written [{}] s ago", records.size(), path, age.toSeconds());
+            return Optional.of(records);
+
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException ex) {
+            logger.warn("Could not read snapshot [{}] - {}", path, ex.toString());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes the outages to a temporary file next to the snapshot, syncs it and moves it over the snapshot, so a
+     * reader never sees a half written file. Failures are logged, since the snapshot is only an optimisation.
+     */
+    public void write(final List<OutageRecord> records){
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            final Path directory = path.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            final Path temp = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+
+            try (FileOutputStream file = new FileOutputStream(temp.toFile());
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                write(out, records);
+                out.flush();
+                file.getChannel().force(true);
+            } catch (IOException | RuntimeException ex) {
+                Files.deleteIfExists(temp);
+                throw ex;
+            }
+
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Wrote snapshot of [{}] outages to [{}]", records.size(), path);
+
+        } catch (IOException ex) {
+            logger.warn("Could not write snapshot [{}] - {}", path, ex.toString());
+        }
+    }
+
+    private void write(final DataOutputStream out, final List<OutageRecord> records) throws IOException {
+        final Map<String, Integer> stringIds = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(clock.millis());
+        out.writeInt(records.size());
+
+        for (OutageRecord record : records) {
+            out.writeInt(stringId(record.outage().id(), stringIds, strings));
+            out.writeInt(stringId(record.outage().begin(), stringIds, strings));
+            out.writeInt(stringId(record.outage().end(), stringIds, strings));
+            out.writeLong(record.begin());
+            out.writeLong(record.end());
+        }
+
+        out.writeInt(strings.size());
+        for (String string : strings) {
+            final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static int stringId(final String value, final Map<String, Integer> stringIds, final List<String> strings){
+        if (value == null) {
+            return -1;
+        }
+        return stringIds.computeIfAbsent(value, v -> {
+            strings.add(v);
+            return strings.size() - 1;
+        });
+    }
+
+    private static List<OutageRecord> read(final ByteBuffer buffer){
+        final int recordCount = buffer.getInt();
+        //in long, as a corrupt count could otherwise overflow to an offset inside the file
+        final long stringsOffset = HEADER_BYTES + (long) recordCount * RECORD_BYTES;
+        if (recordCount < 0 || stringsOffset > buffer.limit()) {
+            throw new IllegalArgumentException("Record count " + recordCount + " does not fit in " + buffer.limit() + " bytes");
+        }
+
+        final ByteBuffer strings = buffer.duplicate().position((int) stringsOffset);
+        final int stringCount = strings.getInt();
+        if (stringCount < 0 || stringCount > strings.remaining() / 4) {
+            throw new IllegalArgumentException("String count " + stringCount + " does not fit in " + strings.remaining() + " bytes");
+        }
+        final String[] table = new String[stringCount];
+        for (int i = 0; i < stringCount; i++) {
+            final int length = strings.getInt();
+            if (length < 0 || length > strings.remaining()) {
+                throw new IllegalArgumentException("String length " + length + " does not fit in " + strings.remaining() + " bytes");
+            }
+            final byte[] bytes = new byte[length];
+            strings.get(bytes);
+            table[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        final List<OutageRecord> records = new ArrayList<>(recordCount);
+        for (int i = 0; i < recordCount; i++) {
+            final Outage outage = new Outage(lookup(table, buffer.getInt()), lookup(table, buffer.getInt()), lookup(table, buffer.getInt()));
+            records.add(new OutageRecord(outage, buffer.getLong(), buffer.getLong()));
+        }
+        return records;
+    }
+
+    private static String lookup(final String[] table, final int id){
+        return id < 0 ? null : table[id];
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.siteoutageservice.throttle;
+
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the calls in flight with AIMD (additive increase, multiplicative decrease), the same scheme TCP uses for
+ * its congestion window. Every call that comes back healthy while the limit is in use raises the limit by
+ * {@code 1/limit}, roughly one per round of calls. A call that is overloaded (rejected, failed with a 5xx or slower
+ * than {@code latencyThreshold}) multiplies it by {@code backoffRatio}. Calls over the limit wait in order for a permit.
+ */
+class AdaptiveConcurrencyLimiter {
+
+    /**
+     * How a call ended, as far as the limit is concerned.
+     */
+    enum Outcome {
+        /** Answered normally, counts towards raising the limit unless it was slow. */
+        SUCCESS,
+        /** Upstream was overloaded or failed, lowers the limit. */
+        OVERLOADED,
+        /** Cancelled or failed for reasons unrelated to load, leaves the limit as is. */
+        IGNORED
+    }
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double backoffRatio;
+    private final long latencyThresholdNanos;
+    private final LongSupplier nanoTime;
+
+    private final Deque<Waiter> waiting = new ArrayDeque<>();
+    private double limit;
+    private int inFlight;
+
+    AdaptiveConcurrencyLimiter(final int initialLimit, final int minLimit, final int maxLimit, final double backoffRatio,
+                               final Duration latencyThreshold, final LongSupplier nanoTime) {
+        Assert.isTrue(minLimit > 0 && minLimit <= initialLimit && initialLimit <= maxLimit, "Concurrency limits must satisfy 0 < min <= initial <= max.");
+        Assert.isTrue(backoffRatio > 0 && backoffRatio < 1, "backoffRatio must be between 0 and 1.");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.latencyThresholdNanos = latencyThreshold.toNanos();
+        this.nanoTime = nanoTime;
+        this.limit = initialLimit;
+    }
+
+    /**
+     * Emits a permit once a call may start. The permit must be released when the call ends.
+     */
+    Mono<Permit> acquire() {
+        return Mono.create(sink -> {
+            final boolean granted;
+            synchronized (this) {
+                granted = inFlight < (int) limit;
+                if (granted) {
+                    inFlight++;
+                } else {
+                    final Waiter waiter = new Waiter(sink);
+                    waiting.add(waiter);
+                    sink.onCancel(() -> cancel(waiter));
+                }
+            }
+            if (granted) {
+                sink.success(new Permit());
+            }
+        });
+    }
+
+    synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Forgets a waiter that gave up. One granted a permit that may not have reached it, as it cancelled between being
+     * granted and being completed, gives the permit back; a permit that did reach it is only released once anyway.
+     */
+    private void cancel(final Waiter waiter) {
+        final Permit granted;
+        synchronized (this) {
+            granted = waiting.remove(waiter) ? null : waiter.permit;
+        }
+        if (granted != null) {
+            granted.release(Outcome.IGNORED);
+        }
+    }
+
+    private void release(final Outcome outcome, final long latencyNanos) {
+        final List<Waiter> granted = new ArrayList<>();
+        synchronized (this) {
+            final boolean saturated = inFlight >= (int) limit;
+            inFlight--;
+
+            if (outcome == Outcome.OVERLOADED || (outcome == Outcome.SUCCESS && latencyNanos > latencyThresholdNanos)) {
+                limit = Math.max(minLimit, limit * backoffRatio);
+            } else if (outcome == Outcome.SUCCESS && (saturated || !waiting.isEmpty())) {
+                limit = Math.min(maxLimit, limit + 1 / limit);
+            }
+
+            while (inFlight < (int) limit && !waiting.isEmpty()) {
+                inFlight++;
+                final Waiter waiter = waiting.poll();
+                waiter.permit = new Permit();
+                granted.add(waiter);
+            }
+        }
+        //completed outside the lock, as each starts its call on this thread
+        granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+    }
+
+    /**
+     * A call waiting for a permit, and the permit once it is granted one.
+     */
+    private final class Waiter {
+
+        private final MonoSink<Permit> sink;
+        private Permit permit;
+
+        private Waiter(final MonoSink<Permit> sink) {
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * Permission for one call. Only the first release counts, so it is safe to release from several signals.
+     */
+    class Permit {
+
+        private final long acquiredAt = nanoTime.getAsLong();
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        void release(final Outcome outcome) {
+            if (released.compareAndSet(false, true)) {
+                AdaptiveConcurrencyLimiter.this.release(outcome, nanoTime.getAsLong() - acquiredAt);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.siteoutageservice.throttle;
+
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.example.siteoutageservice.config.WebConfiguration.*;
+
+/**
+ * Keeps Kraken calls under the API's limits before it has to reject them. Each endpoint has its own token bucket
+ * ({@code kraken.rest.rateLimit.*}, unlimited when {@code permitsPerSecond} is 0), and all endpoints share one
+ * {@link AdaptiveConcurrencyLimiter} ({@code kraken.rest.concurrency.*}) that backs off when Kraken answers 429 or 5xx,
+ * fails to answer, or answers slower than {@code latencyThreshold}, and creeps back up while it answers healthily.
+ * <p>
+ * A call holds its concurrency permit until its response headers arrive, the same span {@code kraken.client.requests} times.
+ */
+@Component
+public class KrakenThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(KrakenThrottle.class);
+
+    private final Map<String, TokenBucket> buckets = new HashMap<>();
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final KrakenMetrics krakenMetrics;
+
+    @Autowired
+    public KrakenThrottle(@Value("${kraken.rest.rateLimit.outages.permitsPerSecond}") double outagesPermitsPerSecond,
+                          @Value("${kraken.rest.rateLimit.siteInfo.permitsPerSecond}") double siteInfoPermitsPerSecond,
+                          @Value("${kraken.rest.rateLimit.siteOutages.permitsPerSecond}") double siteOutagesPermitsPerSecond,
+                          @Value("${kraken.rest.rateLimit.burst}") int burst,
+                          @Value("${kraken.rest.concurrency.adaptive}") boolean adaptive,
+                          @Value("${kraken.rest.concurrency.initialLimit}") int initialLimit,
+                          @Value("${kraken.rest.concurrency.minLimit}") int minLimit,
+                          @Value("${kraken.rest.concurrency.maxLimit}") int maxLimit,
+                          @Value("${kraken.rest.concurrency.backoffRatio}") double backoffRatio,
+                          @Value("${kraken.rest.concurrency.latencyThreshold}") Duration latencyThreshold,
+                          KrakenMetrics krakenMetrics) {
+        Assert.isTrue(burst > 0, "kraken.rest.rateLimit.burst must be greater than 0.");
+        addBucket(OUTAGES_ENDPOINT, outagesPermitsPerSecond, burst);
+        addBucket(SITE_INFO_ENDPOINT, siteInfoPermitsPerSecond, burst);
+        addBucket(SITE_OUTAGES_ENDPOINT, siteOutagesPermitsPerSecond, burst);
+
+        this.limiter = adaptive
+                ? new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio, latencyThreshold, System::nanoTime)
+                : null;
+        this.krakenMetrics = krakenMetrics;
+        if (limiter != null) {
+            krakenMetrics.registerConcurrencyGauges(limiter::getLimit, limiter::getInFlight);
+            logger.debug("Adaptive concurrency between [{}] and [{}], starting at [{}]", minLimit, maxLimit, initialLimit);
+        }
+    }
+
+    private KrakenThrottle() {
+        this.limiter = null;
+        this.krakenMetrics = KrakenMetrics.disabled();
+    }
+
+    /**
+     * A throttle that lets every call straight through.
+     */
+    public static KrakenThrottle disabled() {
+        return new KrakenThrottle();
+    }
+
+    /**
+     * Delays {@code exchange} until the endpoint's rate limit and the concurrency limit allow it to start.
+     *
+     * @param endpoint endpoint tag, as returned by {@link KrakenMetrics#endpointOf}
+     */
+    public Mono<ClientResponse> throttle(final String endpoint, final Mono<ClientResponse> exchange) {
+        final TokenBucket bucket = buckets.get(endpoint);
+        if (bucket == null && limiter == null) {
+            return exchange;
+        }
+
+        return Mono.defer(() -> {
+            final long start = System.nanoTime();
+            final AtomicBoolean sent = new AtomicBoolean();
+            final Mono<ClientResponse> started = Mono.defer(() -> {
+                sent.set(true);
+                krakenMetrics.recordThrottleWait(endpoint, System.nanoTime() - start);
+                return exchange;
+            });
+
+            final Mono<ClientResponse> limited = limiter == null ? started : Mono.usingWhen(limiter.acquire(),
+                    permit -> started.doOnNext(response -> permit.release(outcomeOf(response))),
+                    permit -> Mono.fromRunnable(() -> permit.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED)),
+                    (permit, ex) -> Mono.fromRunnable(() -> permit.release(AdaptiveConcurrencyLimiter.Outcome.OVERLOADED)),
+                    permit -> Mono.fromRunnable(() -> permit.release(AdaptiveConcurrencyLimiter.Outcome.IGNORED)));
+
+            if (bucket == null) {
+                return limited;
+            }
+            //the token is reserved on subscription, so callers queue on the bucket in the order they arrive, and is
+            //given back if the call is cancelled before it is sent
+            final Duration wait = bucket.reserve();
+            return (wait.isZero() ? limited : Mono.delay(wait).then(limited))
+                    .doOnCancel(() -> {
+                        if (!sent.get()) {
+                            bucket.release();
+                        }
+                    });
+        });
+    }
+
+    private void addBucket(final String endpoint, final double permitsPerSecond, final int burst) {
+        if (permitsPerSecond > 0) {
+            buckets.put(KrakenMetrics.endpointTag(endpoint), new TokenBucket(permitsPerSecond, burst, System::nanoTime));
+            logger.debug("Rate limiting [{}] to [{}] requests per second", endpoint, permitsPerSecond);
+        }
+    }
+
+    private static AdaptiveConcurrencyLimiter.Outcome outcomeOf(final ClientResponse response) {
+        final int status = response.statusCode().value();
+        return status == HttpStatus.TOO_MANY_REQUESTS.value() || response.statusCode().is5xxServerError()
+                ? AdaptiveConcurrencyLimiter.Outcome.OVERLOADED
+                : AdaptiveConcurrencyLimiter.Outcome.SUCCESS;
+    }
+}
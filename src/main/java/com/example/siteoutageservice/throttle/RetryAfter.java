@@ -0,0 +1,41 @@
+package com.example.siteoutageservice.throttle;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Optional;
+
+/**
+ * Parses a Retry-After header, which is either a number of seconds or an HTTP date.
+ */
+public final class RetryAfter {
+
+    private RetryAfter(){
+    }
+
+    public static Optional<Duration> parse(final String value){
+        return parse(value, Clock.systemUTC());
+    }
+
+    /**
+     * @return the time to wait, never negative, or empty when the header is missing or malformed
+     */
+    public static Optional<Duration> parse(final String value, final Clock clock){
+        if (value == null || value.isBlank()) {
+            return Optional.empty();
+        }
+
+        final String trimmed = value.trim();
+        try {
+            if (trimmed.chars().allMatch(Character::isDigit)) {
+                return Optional.of(Duration.ofSeconds(Long.parseLong(trimmed)));
+            }
+            final Duration untilDate = Duration.between(clock.instant(), ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant());
+            return Optional.of(untilDate.isNegative() ? Duration.ZERO : untilDate);
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.siteoutageservice.throttle;
+
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket refilled at {@code permitsPerSecond} and holding at most {@code burst} tokens. Callers reserve a token
+ * and are told how long to wait for it, so waiting callers queue up in order rather than polling. A reservation made
+ * when the bucket is empty takes a token from the future, which later callers then wait behind.
+ */
+class TokenBucket {
+
+    private final double permitsPerSecond;
+    private final double burst;
+    private final LongSupplier nanoTime;
+
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(final double permitsPerSecond, final int burst, final LongSupplier nanoTime) {
+        Assert.isTrue(permitsPerSecond > 0, "permitsPerSecond must be greater than 0.");
+        Assert.isTrue(burst > 0, "burst must be greater than 0.");
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = burst;
+        this.nanoTime = nanoTime;
+        this.tokens = burst;
+        this.refilledAt = nanoTime.getAsLong();
+    }
+
+    /**
+     * Takes one token.
+     *
+     * @return how long to wait before using it, zero when one was available
+     */
+    synchronized Duration reserve() {
+        refill();
+        tokens -= 1;
+        return tokens >= 0 ? Duration.ZERO : Duration.ofNanos((long) (-tokens / permitsPerSecond * 1e9));
+    }
+
+    /**
+     * Gives back a reserved token that was never used, so the next caller does not wait behind it. Callers already
+     * waiting keep the wait they were given.
+     */
+    synchronized void release() {
+        refill();
+        tokens = Math.min(burst, tokens + 1);
+    }
+
+    private void refill() {
+        final long now = nanoTime.getAsLong();
+        tokens = Math.min(burst, tokens + (now - refilledAt) * permitsPerSecond / 1e9);
+        refilledAt = now;
+    }
+}
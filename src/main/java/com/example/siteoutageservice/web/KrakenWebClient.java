@@ -3,14 +3,22 @@ package com.example.siteoutageservice.web;
 import com.example.siteoutageservice.dto.DeviceOutage;
 import com.example.siteoutageservice.dto.Outage;
 import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.exception.KrakenClientException;
 import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.core.codec.CodecException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.ClientResponse;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientException;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.retry.Retry;
 import reactor.util.retry.RetryBackoffSpec;
@@ -20,6 +28,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.example.siteoutageservice.config.WebConfiguration.*;
 
@@ -31,61 +40,237 @@ public class KrakenWebClient {
     private final WebClient webClient;
     private final long maxRetries;
     private final long minBackoff;
+    private final ResponseCache responseCache;
+    private final KrakenMetrics krakenMetrics;
+    private final double retryJitter;
+    private final Duration maxRetryAfter;
+    private final RequestCoalescer requestCoalescer;
 
     @Autowired
-    public KrakenWebClient(WebClient webClient, @Value("${kraken.rest.maxRetries}") long maxRetries, @Value("${kraken.rest.minBackoff}") long minBackoff){
+    public KrakenWebClient(WebClient webClient, @Value("${kraken.rest.maxRetries}") long maxRetries, @Value("${kraken.rest.minBackoff}") long minBackoff,
+                           ResponseCache responseCache, KrakenMetrics krakenMetrics,
+                           @Value("${kraken.rest.retry.jitter}") double retryJitter, @Value("${kraken.rest.retry.maxRetryAfter}") Duration maxRetryAfter,
+                           RequestCoalescer requestCoalescer){
+        Assert.isTrue(retryJitter >= 0 && retryJitter <= 1, "kraken.rest.retry.jitter must be between 0 and 1.");
         this.webClient = webClient;
         this.maxRetries = maxRetries;
         this.minBackoff = minBackoff;
+        this.responseCache = responseCache;
+        this.krakenMetrics = krakenMetrics;
+        this.retryJitter = retryJitter;
+        this.maxRetryAfter = maxRetryAfter;
+        this.requestCoalescer = requestCoalescer;
+        if (responseCache.isEnabled()) {
+            krakenMetrics.registerResponseCache(responseCache::hits, responseCache::misses, responseCache::revalidations,
+                    responseCache::evictions, responseCache::size);
+        }
     }
 
-    public List<Outage> getOutages(){
-        List<Outage> response = get(Outage[].class, OUTAGES_ENDPOINT)
-                .map(Arrays::asList)
-                .orElse(Collections.emptyList());
+    public boolean isCacheEnabled(){
+        return responseCache.isEnabled();
+    }
 
-        logger.debug("Response from [{}]: {}", OUTAGES_ENDPOINT, response);
+    public ResponseCache.CacheStats getCacheStats(){
+        return responseCache.stats();
+    }
 
-        return response;
+    public List<Outage> getOutages(){
+        return getOutagesAsync().block();
     }
 
     public Optional<Site> getSiteInfoFor(final String siteId){
-        final Optional<Site> response = get(Site.class, SITE_INFO_ENDPOINT, siteId);
+        return getSiteInfoForAsync(siteId).blockOptional();
+    }
 
-        logger.debug("Response from [{}]: {}", SITE_INFO_ENDPOINT, response);
+    public void postOutagesFor(final String siteId, final List<DeviceOutage> detailedOutages){
+        postOutagesForAsync(siteId, detailedOutages).block();
+    }
 
-        return response;
+    /**
+     * Non-blocking version of {@link #getOutages()}. Emits an empty list when Kraken responds without a body.
+     */
+    public Mono<List<Outage>> getOutagesAsync(){
+        return get(Outage[].class, OUTAGES_ENDPOINT)
+                .map(Arrays::asList)
+                .defaultIfEmpty(Collections.emptyList())
+                .doOnNext(response -> logger.debug("Response from [{}]: {}", OUTAGES_ENDPOINT, response));
     }
 
-    public void postOutagesFor(final String siteId, final List<DeviceOutage> detailedOutages){
+    /**
+     * Streams /outages, emitting each outage as soon as it has been parsed from the response array rather than
+     * buffering and decoding the whole body first. Lets callers filter outages one at a time so memory is bounded
+     * by the outages they keep. Streamed responses are never cached.
+     */
+    public Flux<Outage> streamOutages(){
+        return webClient.get()
+                .uri(OUTAGES_ENDPOINT)
+                .attribute(KrakenMetrics.ENDPOINT_ATTRIBUTE, OUTAGES_ENDPOINT)
+                .retrieve()
+                .bodyToFlux(Outage.class)
+                .retryWhen(retrySpec(OUTAGES_ENDPOINT));
+    }
+
+    /**
+     * Non-blocking version of {@link #getSiteInfoFor(String)}. Completes empty when Kraken responds without a body.
+     */
+    public Mono<Site> getSiteInfoForAsync(final String siteId){
+        return get(Site.class, SITE_INFO_ENDPOINT, siteId)
+                .doOnNext(response -> logger.debug("Response from [{}]: {}", SITE_INFO_ENDPOINT, response));
+    }
+
+    public Mono<Void> postOutagesForAsync(final String siteId, final List<DeviceOutage> detailedOutages){
+        return postOutagesForAsync(siteId, Flux.fromIterable(detailedOutages));
+    }
+
+    /**
+     * Posts outages in a single request, writing the JSON array as {@code detailedOutages} emits rather than
+     * serialising it into one buffer first. A retry subscribes to {@code detailedOutages} again, so it must replay
+     * the same outages each time it is subscribed to.
+     */
+    public Mono<Void> postOutagesForAsync(final String siteId, final Flux<DeviceOutage> detailedOutages){
         WebClient.RequestHeadersSpec<?> spec = webClient.post()
                 .uri(SITE_OUTAGES_ENDPOINT, siteId)
-                .body(Mono.just(detailedOutages), new ParameterizedTypeReference<>() {});
+                .attribute(KrakenMetrics.ENDPOINT_ATTRIBUTE, SITE_OUTAGES_ENDPOINT)
+                .body(detailedOutages, DeviceOutage.class);
+
+        return call(Void.class, spec, SITE_OUTAGES_ENDPOINT).then();
+    }
 
-        call(Void.class, spec, SITE_OUTAGES_ENDPOINT);
+    /**
+     * Posts outages as a series of requests of up to {@code chunkSize} outages each, with at most {@code concurrency}
+     * in flight. Only {@code chunkSize} outages are held at a time per request, and each chunk is retried on its
+     * own, so a 5xx only resends the chunk that failed. A chunk that fails after its retries does not cancel the
+     * others; the error is emitted once every chunk has finished.
+     */
+    public Mono<Void> postOutagesInChunksAsync(final String siteId, final Flux<DeviceOutage> detailedOutages, final int chunkSize, final int concurrency){
+        Assert.isTrue(chunkSize > 0, "chunkSize must be greater than 0.");
+        Assert.isTrue(concurrency > 0, "concurrency must be greater than 0.");
+
+        return detailedOutages
+                .buffer(chunkSize)
+                .index()
+                .flatMapDelayError(chunk -> postOutagesForAsync(siteId, chunk.getT2())
+                        .doOnSuccess(ignored -> logger.debug("Posted chunk [{}] of [{}] outages for siteId [{}]", chunk.getT1(), chunk.getT2().size(), siteId))
+                        .doOnError(ex -> logger.warn("Failed to post chunk [{}] of [{}] outages for siteId [{}] - {}", chunk.getT1(), chunk.getT2().size(), siteId, ex.getMessage())),
+                        concurrency, 1)
+                .then();
+    }
+
+    /**
+     * Concurrent GETs for the same endpoint and fields share one call, retries included, and every caller gets the
+     * same decoded response, so callers must not modify it. With the cache enabled, the shared call is the cache lookup.
+     */
+    private <T> Mono<T> get(Class<T> responseClass, String endpoint, String... requestFields){
+        return requestCoalescer.coalesce(endpoint, endpoint + Arrays.toString(requestFields), fetch(responseClass, endpoint, requestFields));
     }
 
-    private <T> Optional<T> get(Class<T> responseClass, String endpoint, String... requestFields){
+    private <T> Mono<T> fetch(Class<T> responseClass, String endpoint, String... requestFields){
+        if (responseCache.isEnabled()) {
+            return Mono.defer(() -> getCached(responseClass, endpoint, requestFields));
+        }
+
         WebClient.RequestHeadersSpec<?> spec = webClient.get()
-                .uri(endpoint, (Object[]) requestFields);
+                .uri(endpoint, (Object[]) requestFields)
+                .attribute(KrakenMetrics.ENDPOINT_ATTRIBUTE, endpoint);
 
         return call(responseClass, spec, endpoint);
     }
 
-    private <T> Optional<T> call(Class<T> responseClass, WebClient.RequestHeadersSpec<?> spec, String endpoint){
+    private <T> Mono<T> getCached(Class<T> responseClass, String endpoint, String... requestFields){
+        final String key = endpoint + Arrays.toString(requestFields);
+        final ResponseCache.Entry cached = responseCache.get(key);
+
+        if (cached != null && responseCache.isFresh(cached)) {
+            responseCache.recordHit();
+            logger.debug("Cache hit for [{}]", key);
+            return Mono.justOrEmpty(responseClass.cast(cached.body()));
+        }
+
+        WebClient.RequestHeadersSpec<?> spec = webClient.get()
+                .uri(endpoint, (Object[]) requestFields)
+                .attribute(KrakenMetrics.ENDPOINT_ATTRIBUTE, endpoint);
+        if (cached != null && cached.hasValidator()) {
+            spec = spec.headers(headers -> {
+                if (cached.etag() != null) {
+                    headers.setIfNoneMatch(cached.etag());
+                }
+                if (cached.lastModified() != null) {
+                    headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.lastModified());
+                }
+            });
+        }
+
         return spec
-                .retrieve()
-                .bodyToMono(responseClass)
+                .exchangeToMono(response -> decode(endpoint, response, response.toEntity(responseClass)))
                 .retryWhen(retrySpec(endpoint))
-                .blockOptional();
+                .flatMap(entity -> {
+                    if (cached != null && entity.getStatusCode().value() == HttpStatus.NOT_MODIFIED.value()) {
+                        responseCache.recordRevalidation();
+                        logger.debug("Cached response for [{}] revalidated", key);
+                        responseCache.put(key, cached.refreshed());
+                        return Mono.justOrEmpty(responseClass.cast(cached.body()));
+                    }
+
+                    responseCache.recordMiss();
+                    responseCache.store(key, entity.getBody(), entity.getHeaders().getETag(), entity.getHeaders().getFirst(HttpHeaders.LAST_MODIFIED));
+                    return Mono.justOrEmpty(entity.getBody());
+                });
     }
 
+    private <T> Mono<T> call(Class<T> responseClass, WebClient.RequestHeadersSpec<?> spec, String endpoint){
+        return spec
+                .exchangeToMono(response -> decode(endpoint, response, response.bodyToMono(responseClass)))
+                .retryWhen(retrySpec(endpoint));
+    }
+
+    /**
+     * Error responses have already been turned into exceptions by the WebClient's error handler, so the exchange
+     * only has to decode the body, which is timed separately from the request itself. Failures reading the body are
+     * wrapped the same way {@code retrieve()} does, as a WebClientResponseException.
+     */
+    private <T> Mono<T> decode(String endpoint, ClientResponse response, Mono<T> body){
+        return krakenMetrics.timeDecode(endpoint, body
+                .onErrorResume(ex -> !(ex instanceof WebClientException || ex instanceof CodecException),
+                        ex -> response.createException().flatMap(wrapped -> Mono.error(wrapped.initCause(ex)))));
+    }
+
+    /**
+     * Retries 5xx responses, and 429 responses that say when to retry, with jittered exponential backoff so clients
+     * that failed together do not retry together. When Kraken sends Retry-After, the wait is at least that long
+     * (capped at {@code kraken.rest.retry.maxRetryAfter}) plus the usual backoff.
+     */
     private RetryBackoffSpec retrySpec(String uri){
+        //the backoff delay sits between the before and after retry hooks
+        final AtomicLong backoffStart = new AtomicLong();
         return Retry.backoff(maxRetries, Duration.ofSeconds(minBackoff))
-                .filter(KrakenServerException.class::isInstance)
+                .jitter(retryJitter)
+                .filter(KrakenWebClient::isRetryable)
+                .doBeforeRetry(retrySignal -> backoffStart.set(System.nanoTime()))
+                .doBeforeRetryAsync(retrySignal -> retryAfter(retrySignal.failure())
+                        .map(retryAfter -> {
+                            logger.info("Kraken asked to retry {} after {}", uri, retryAfter);
+                            return Mono.delay(retryAfter.compareTo(maxRetryAfter) > 0 ? maxRetryAfter : retryAfter).then();
+                        })
+                        .orElse(Mono.empty()))
+                .doAfterRetry(retrySignal -> krakenMetrics.recordRetry(uri, System.nanoTime() - backoffStart.get()))
                 .onRetryExhaustedThrow(((retryBackoffSpec, retrySignal) -> {
                     logger.info("Exhausted {} retry attempts for {}", maxRetries, uri);
+                    krakenMetrics.recordRetriesExhausted(uri);
                     return retrySignal.failure();
                 }));
     }
+
+    private static boolean isRetryable(Throwable ex){
+        return ex instanceof KrakenServerException
+                || (ex instanceof KrakenClientException client && client.getStatus() == HttpStatus.TOO_MANY_REQUESTS.value() && client.getRetryAfter().isPresent());
+    }
+
+    private static Optional<Duration> retryAfter(Throwable ex){
+        if (ex instanceof KrakenServerException server) {
+            return server.getRetryAfter();
+        } else if (ex instanceof KrakenClientException client) {
+            return client.getRetryAfter();
+        }
+        return Optional.empty();
+    }
 }
@@ -0,0 +1,78 @@
+package com.example.siteoutageservice.web;
+
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single flight for Kraken GETs: callers asking for the same key while a call for it is in flight subscribe to that
+ * call instead of making their own, and all of them get its decoded result or its error. The key is dropped as soon
+ * as the call finishes, so only calls overlapping in time are shared and nothing is kept for later callers; that is
+ * {@link ResponseCache}'s job. A caller cancelling only stops waiting, the call carries on for the others.
+ */
+@Component
+public class RequestCoalescer {
+
+    private final boolean enabled;
+    private final KrakenMetrics krakenMetrics;
+    private final Map<String, Mono<?>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    @Autowired
+    public RequestCoalescer(@Value("${kraken.rest.coalesce.enabled}") boolean enabled, KrakenMetrics krakenMetrics) {
+        this.enabled = enabled;
+        this.krakenMetrics = krakenMetrics;
+    }
+
+    public static RequestCoalescer disabled(){
+        return new RequestCoalescer(false, KrakenMetrics.disabled());
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * @return calls that were served by joining another caller's call rather than being made
+     */
+    public long getCoalesced(){
+        return coalesced.get();
+    }
+
+    /**
+     * @param endpoint endpoint template the call is for, counted in {@code kraken.client.coalesced} when joined
+     * @param key the endpoint and everything else identifying the request
+     * @param call made on subscription when no call for {@code key} is in flight
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Mono<T> coalesce(final String endpoint, final String key, final Mono<T> call){
+        if (!enabled) {
+            return call;
+        }
+
+        return Mono.defer(() -> {
+            final AtomicReference<Mono<T>> self = new AtomicReference<>();
+            //removed before the result is emitted, so a caller arriving after it makes a new call
+            final Mono<T> shared = call
+                    .doOnTerminate(() -> inFlight.remove(key, self.get()))
+                    .doOnCancel(() -> inFlight.remove(key, self.get()))
+                    .share();
+            self.set(shared);
+
+            final Mono<?> existing = inFlight.putIfAbsent(key, shared);
+            if (existing != null) {
+                coalesced.incrementAndGet();
+                krakenMetrics.recordCoalesced(endpoint);
+                return (Mono<T>) existing;
+            }
+            return shared;
+        });
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.siteoutageservice.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, least recently used cache of decoded Kraken GET responses.
+ * An entry younger than the TTL is served without a request. Once it is older, it is kept so that the next request
+ * can be made conditional on its ETag/Last-Modified validators, letting a 304 reuse the decoded body.
+ */
+@Component
+public class ResponseCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ResponseCache.class);
+
+    private final boolean enabled;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public ResponseCache(@Value("${kraken.rest.cache.enabled}") boolean enabled, @Value("${kraken.rest.cache.ttl}") Duration ttl,
+                         @Value("${kraken.rest.cache.maxEntries}") int maxEntries) {
+        Assert.isTrue(maxEntries > 0, "kraken.rest.cache.maxEntries must be greater than 0.");
+        Assert.isTrue(!ttl.isNegative(), "kraken.rest.cache.ttl cannot be negative.");
+        this.enabled = enabled;
+        this.ttlNanos = ttl.toNanos();
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > maxEntries) {
+                    evictions.incrementAndGet();
+                    logger.debug("Evicting cached response for [{}]", eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static ResponseCache disabled(){
+        return new ResponseCache(false, Duration.ZERO, 1);
+    }
+
+    public boolean isEnabled(){
+        return enabled;
+    }
+
+    /**
+     * @return the cached entry for the key, fresh or stale, or null if there is none
+     */
+    public synchronized Entry get(final String key){
+        return entries.get(key);
+    }
+
+    public synchronized void put(final String key, final Entry entry){
+        entries.put(key, entry);
+    }
+
+    public Entry store(final String key, final Object body, final String etag, final String lastModified){
+        final Entry entry = new Entry(body, etag, lastModified, System.nanoTime());
+        put(key, entry);
+        return entry;
+    }
+
+    public boolean isFresh(final Entry entry){
+        return System.nanoTime() - entry.storedAt() < ttlNanos;
+    }
+
+    void recordHit(){
+        hits.incrementAndGet();
+    }
+
+    void recordMiss(){
+        misses.incrementAndGet();
+    }
+
+    void recordRevalidation(){
+        revalidations.incrementAndGet();
+    }
+
+    long hits(){
+        return hits.get();
+    }
+
+    long misses(){
+        return misses.get();
+    }
+
+    long revalidations(){
+        return revalidations.get();
+    }
+
+    long evictions(){
+        return evictions.get();
+    }
+
+    synchronized int size(){
+        return entries.size();
+    }
+
+    public synchronized CacheStats stats(){
+        return new CacheStats(hits.get(), misses.get(), revalidations.get(), evictions.get(), entries.size());
+    }
+
+    /**
+     * @param body decoded response body, null when Kraken responded without one
+     */
+    public record Entry(Object body, String etag, String lastModified, long storedAt) {
+
+        public boolean hasValidator(){
+            return etag != null || lastModified != null;
+        }
+
+        public Entry refreshed(){
+            return new Entry(body, etag, lastModified, System.nanoTime());
+        }
+    }
+
+    /**
+     * @param hits          served from a fresh entry without a request
+     * @param misses        full responses decoded and stored
+     * @param revalidations stale entries confirmed by a 304, skipping the body and decode
+     * @param evictions     entries dropped to stay within the size bound
+     */
+    public record CacheStats(long hits, long misses, long revalidations, long evictions, int size) {
+    }
+}
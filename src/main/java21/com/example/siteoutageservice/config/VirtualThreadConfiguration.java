@@ -0,0 +1,22 @@
+package com.example.siteoutageservice.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Only compiled with the {@code java21} profile. Gives {@code ThreadPerSiteBatchService} a new virtual thread for
+ * every site, in place of its platform thread pool.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "kraken.mode", havingValue = "virtual-batch")
+public class VirtualThreadConfiguration {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService batchSiteExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("batch-site-", 0).factory());
+    }
+}
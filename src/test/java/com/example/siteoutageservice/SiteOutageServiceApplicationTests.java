@@ -0,0 +1,127 @@
+package com.example.siteoutageservice;
+
+import com.example.siteoutageservice.batch.ThreadPerSiteBatchService;
+import com.example.siteoutageservice.daemon.OutageSyncScheduler;
+import com.example.siteoutageservice.ingest.OutageEventIngestor;
+import com.example.siteoutageservice.server.SiteOutagesController;
+import com.example.siteoutageservice.simulator.KrakenSimulator;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Starts the application context in every {@code kraken.mode}, against a simulated Kraken so the one-shot runners
+ * and schedulers that run on start have something to call.
+ */
+class SiteOutageServiceApplicationTests {
+
+    private static final KrakenSimulator kraken = KrakenSimulator.start(KrakenSimulator.Settings.DEFAULTS);
+
+    @DynamicPropertySource
+    static void krakenProperties(DynamicPropertyRegistry registry){
+        registry.add("kraken.rest.baseUrl", kraken::baseUrl);
+        registry.add("kraken.rest.apiKey", () -> "context-test");
+        registry.add("kraken.siteId", () -> "site-0");
+        registry.add("kraken.batch.siteIds", () -> "site-0,site-1");
+        registry.add("kraken.ingest.file.path", () -> "target/context-test-outage-events.ndjson");
+    }
+
+    @AfterAll
+    static void tearDown(){
+        kraken.close();
+    }
+
+    @Nested
+    @SpringBootTest(properties = "kraken.mode=single")
+    class Single {
+
+        @Autowired
+        private ApplicationContext context;
+
+        @Test
+        void contextLoads(){
+            assertTrue(context.containsBean("applicationRunner"));
+            assertEquals(1, context.getBeansOfType(ApplicationRunner.class).size());
+        }
+    }
+
+    @Nested
+    @SpringBootTest(properties = "kraken.mode=batch")
+    class Batch {
+
+        @Autowired
+        private ApplicationContext context;
+
+        @Test
+        void contextLoads(){
+            assertTrue(context.containsBean("batchApplicationRunner"));
+            assertEquals(1, context.getBeansOfType(ApplicationRunner.class).size());
+        }
+    }
+
+    @Nested
+    @SpringBootTest(properties = "kraken.mode=virtual-batch")
+    class VirtualBatch {
+
+        @Autowired
+        private ApplicationContext context;
+
+        @Test
+        void contextLoads(){
+            assertTrue(context.containsBean("virtualBatchApplicationRunner"));
+            assertEquals(1, context.getBeansOfType(ThreadPerSiteBatchService.class).size());
+        }
+    }
+
+    @Nested
+    @SpringBootTest(properties = "kraken.mode=daemon")
+    class Daemon {
+
+        @Autowired
+        private ApplicationContext context;
+
+        @Test
+        void contextLoads(){
+            assertEquals(1, context.getBeansOfType(OutageSyncScheduler.class).size());
+            assertTrue(context.getBeansOfType(ApplicationRunner.class).isEmpty());
+        }
+    }
+
+    @Nested
+    @ActiveProfiles("server")
+    @SpringBootTest(properties = "kraken.mode=server", webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+    class Server {
+
+        @Autowired
+        private ApplicationContext context;
+
+        @Test
+        void contextLoads(){
+            assertEquals(1, context.getBeansOfType(SiteOutagesController.class).size());
+            assertTrue(context.getBeansOfType(ApplicationRunner.class).isEmpty());
+        }
+    }
+
+    @Nested
+    @SpringBootTest(properties = "kraken.mode=ingest")
+    class Ingest {
+
+        @Autowired
+        private ApplicationContext context;
+
+        @Test
+        void contextLoads(){
+            assertTrue(context.getBean(OutageEventIngestor.class).isRunning());
+            assertTrue(context.getBeansOfType(ApplicationRunner.class).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.example.siteoutageservice.batch;
+
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceDowntime;
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.dto.SiteDowntime;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.publish.DowntimeReportWriter;
+import com.example.siteoutageservice.publish.OutagePublisher;
+import com.example.siteoutageservice.publish.PublishFingerprintStore;
+import com.example.siteoutageservice.publish.PublishOutbox;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import com.example.siteoutageservice.service.ParallelJoin;
+import com.example.siteoutageservice.snapshot.OutageSnapshotStore;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BatchOutageServiceTest {
+
+    @Mock
+    private KrakenWebClient webClient;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private BatchOutageService batchOutageService;
+
+    private final Device device1 = Device.builder().id("device1-id").name("device1").build();
+    private final Device device2 = Device.builder().id("device2-id").name("device2").build();
+
+    private final Outage outage1 = Outage.builder().id("device1-id").begin("2022-02-01T00:00:00.000Z").end("2022-02-02T00:00:00.000Z").build();
+    private final Outage outage2 = Outage.builder().id("device2-id").begin("2022-03-01T00:00:00.000Z").end("2022-03-02T00:00:00.000Z").build();
+    private final Outage outageBefore = Outage.builder().id("device1-id").begin("2021-03-01T00:00:00.000Z").end("2021-03-02T00:00:00.000Z").build();
+
+    @BeforeEach
+    void setup(){
+        OutageDetailService outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        OutageIndexProvider outageIndexProvider = new OutageIndexProvider(webClient, outageDetailService, new OutageSnapshotStore(false, Path.of("unused"), Duration.ZERO), false);
+        PublishFingerprintStore fingerprintStore = new PublishFingerprintStore(false, Path.of("unused"));
+        OutagePublisher outagePublisher = new OutagePublisher(outageDetailService, fingerprintStore,
+                new PublishOutbox(outageDetailService, fingerprintStore, KrakenMetrics.disabled(), Jackson2ObjectMapperBuilder.json().build(), false, Path.of("unused"), false, 1, Duration.ofSeconds(1), Duration.ofSeconds(1)));
+        batchOutageService = new BatchOutageService(webClient, outageDetailService, outageIndexProvider, outagePublisher, DowntimeReportWriter.disabled(), 2);
+    }
+
+    @Test
+    void givenManySites_whenRunningBatch_thenFetchOutagesOnceAndPublishEachSite(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outageBefore, outage2)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        when(webClient.getSiteInfoForAsync("site-b")).thenReturn(Mono.just(site("site-b", device2)));
+        when(webClient.getSiteInfoForAsync("site-c")).thenReturn(Mono.just(site("site-c", device1, device2)));
+        when(webClient.postOutagesForAsync(anyString(), anyList())).thenReturn(Mono.empty());
+
+        BatchReport report = batchOutageService.run(Arrays.asList("site-a", "site-b", "site-c"));
+
+        verify(webClient, times(1)).getOutagesAsync();
+        verify(webClient).postOutagesForAsync("site-a", List.of(new DeviceOutage(device1, outage1)));
+        verify(webClient).postOutagesForAsync("site-b", List.of(new DeviceOutage(device2, outage2)));
+        verify(webClient).postOutagesForAsync("site-c", List.of(new DeviceOutage(device1, outage1), new DeviceOutage(device2, outage2)));
+
+        assertEquals(3, report.succeeded());
+        assertEquals(0, report.failed());
+        assertEquals(Arrays.asList("site-a", "site-b", "site-c"), report.results().stream().map(SiteResult::siteId).toList());
+    }
+
+    @Test
+    void givenOneSiteFails_whenRunningBatch_thenReportFailureAndContinue(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Collections.singletonList(outage1)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.error(new KrakenClientException("not found", 404)));
+        when(webClient.getSiteInfoForAsync("site-b")).thenReturn(Mono.just(site("site-b", device1)));
+        when(webClient.postOutagesForAsync(eq("site-b"), anyList())).thenReturn(Mono.error(new KrakenServerException("unavailable", 503)));
+        when(webClient.getSiteInfoForAsync("site-c")).thenReturn(Mono.just(site("site-c", device1)));
+        when(webClient.postOutagesForAsync(eq("site-c"), anyList())).thenReturn(Mono.empty());
+
+        BatchReport report = batchOutageService.run(Arrays.asList("site-a", "site-b", "site-c"));
+
+        assertEquals(1, report.succeeded());
+        assertEquals(2, report.failed());
+        assertFalse(report.results().get(0).success());
+        assertTrue(report.results().get(0).error().contains("404"));
+        assertFalse(report.results().get(1).success());
+        assertTrue(report.results().get(1).error().contains("503"));
+        assertTrue(report.results().get(2).success());
+        assertEquals(1, report.results().get(2).outageCount());
+    }
+
+    @Test
+    void givenOutagesFetchFails_whenRunningBatch_thenThrowAndProcessNoSites(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.error(new KrakenServerException("down", 500)));
+
+        assertThrows(KrakenServerException.class, () -> batchOutageService.run(List.of("site-a")));
+
+        verify(webClient, never()).getSiteInfoForAsync(anyString());
+    }
+
+    @Test
+    void givenDowntimeReportEnabled_whenRunningBatch_thenWriteOneLinePerSite(@TempDir Path dir) throws IOException {
+        Path report = dir.resolve("downtime.ndjson");
+        OutageDetailService outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        OutageIndexProvider outageIndexProvider = new OutageIndexProvider(webClient, outageDetailService, new OutageSnapshotStore(false, Path.of("unused"), Duration.ZERO), false);
+        PublishFingerprintStore fingerprintStore = new PublishFingerprintStore(false, Path.of("unused"));
+        OutagePublisher outagePublisher = new OutagePublisher(outageDetailService, fingerprintStore,
+                new PublishOutbox(outageDetailService, fingerprintStore, KrakenMetrics.disabled(), Jackson2ObjectMapperBuilder.json().build(), false, Path.of("unused"), false, 1, Duration.ofSeconds(1), Duration.ofSeconds(1)));
+        BatchOutageService batch = new BatchOutageService(webClient, outageDetailService, outageIndexProvider, outagePublisher,
+                new DowntimeReportWriter(Jackson2ObjectMapperBuilder.json().build(), true, report), 2);
+
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outage2)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        when(webClient.getSiteInfoForAsync("site-b")).thenReturn(Mono.just(site("site-b", device1, device2)));
+        when(webClient.postOutagesForAsync(anyString(), anyList())).thenReturn(Mono.empty());
+
+        BatchReport result = batch.run(Arrays.asList("site-a", "site-b"));
+
+        assertEquals(2, result.succeeded());
+        verify(webClient, times(1)).getSiteInfoForAsync("site-a");
+        verify(webClient).postOutagesForAsync("site-b", List.of(new DeviceOutage(device1, outage1), new DeviceOutage(device2, outage2)));
+
+        List<SiteDowntime> lines = Files.readAllLines(report).stream()
+                .map(line -> assertDoesNotThrow(() -> mapper.readValue(line, SiteDowntime.class)))
+                .sorted(Comparator.comparing(SiteDowntime::siteId))
+                .toList();
+        assertEquals(List.of("site-a", "site-b"), lines.stream().map(SiteDowntime::siteId).toList());
+        assertEquals(List.of(new DeviceDowntime("device1-id", "device1", 1, 86_400_000L, 86_400_000L,
+                List.of(new DeviceDowntime.Interval(outage1.begin(), outage1.end())))), lines.get(0).devices());
+        assertEquals(2, lines.get(1).devices().size());
+    }
+
+    @Test
+    void givenPropertyAndFile_whenResolvingSiteIds_thenMergeAndDeduplicate(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("sites.txt");
+        Files.write(file, Arrays.asList("# nightly sites", "site-b", "", "  site-c  ", "site-a"));
+
+        List<String> siteIds = SiteIds.resolve(Arrays.asList("site-a", " site-b"), file.toString());
+
+        assertEquals(Arrays.asList("site-a", "site-b", "site-c"), siteIds);
+    }
+
+    @Test
+    void givenNoSiteIds_whenResolvingSiteIds_thenThrowIllegalArgument(){
+        assertThrows(IllegalArgumentException.class, () -> SiteIds.resolve(Collections.emptyList(), ""));
+    }
+
+    private Site site(String id, Device... devices){
+        return Site.builder()
+                .id(id)
+                .name(id)
+                .devices(Arrays.asList(devices))
+                .build();
+    }
+}
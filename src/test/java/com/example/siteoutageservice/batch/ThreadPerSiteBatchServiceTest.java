@@ -0,0 +1,172 @@
+package com.example.siteoutageservice.batch;
+
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.publish.OutagePublisher;
+import com.example.siteoutageservice.publish.PublishFingerprintStore;
+import com.example.siteoutageservice.publish.PublishOutbox;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import com.example.siteoutageservice.service.ParallelJoin;
+import com.example.siteoutageservice.snapshot.OutageSnapshotStore;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ThreadPerSiteBatchServiceTest {
+
+    @Mock
+    private KrakenWebClient webClient;
+
+    private final ExecutorService siteExecutor = Executors.newCachedThreadPool();
+
+    private ThreadPerSiteBatchService batchService;
+
+    private final Device device1 = Device.builder().id("device1-id").name("device1").build();
+    private final Device device2 = Device.builder().id("device2-id").name("device2").build();
+
+    private final Outage outage1 = Outage.builder().id("device1-id").begin("2022-02-01T00:00:00.000Z").end("2022-02-02T00:00:00.000Z").build();
+    private final Outage outage2 = Outage.builder().id("device2-id").begin("2022-03-01T00:00:00.000Z").end("2022-03-02T00:00:00.000Z").build();
+
+    @BeforeEach
+    void setup(){
+        batchService = batchService(2);
+    }
+
+    @AfterEach
+    void tearDown(){
+        siteExecutor.shutdownNow();
+    }
+
+    @Test
+    void givenManySites_whenRunningBatch_thenFetchOutagesOnceAndPublishEachSite(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outage2)));
+        when(webClient.getSiteInfoFor("site-a")).thenReturn(Optional.of(site("site-a", device1)));
+        when(webClient.getSiteInfoFor("site-b")).thenReturn(Optional.of(site("site-b", device1, device2)));
+
+        BatchReport report = batchService.run(Arrays.asList("site-a", "site-b"));
+
+        verify(webClient, times(1)).getOutagesAsync();
+        verify(webClient).postOutagesFor("site-a", List.of(new DeviceOutage(device1, outage1)));
+        verify(webClient).postOutagesFor("site-b", List.of(new DeviceOutage(device1, outage1), new DeviceOutage(device2, outage2)));
+
+        assertEquals(2, report.succeeded());
+        assertEquals(Arrays.asList("site-a", "site-b"), report.results().stream().map(SiteResult::siteId).toList());
+    }
+
+    @Test
+    void givenOneSiteFails_whenRunningBatch_thenReportFailureAndContinue(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Collections.singletonList(outage1)));
+        when(webClient.getSiteInfoFor("site-a")).thenThrow(new KrakenClientException("not found", 404));
+        when(webClient.getSiteInfoFor("site-b")).thenReturn(Optional.of(site("site-b", device1)));
+        when(webClient.getSiteInfoFor("site-c")).thenReturn(Optional.of(site("site-c", device1)));
+        //one stub for every site, as site-b and site-c post concurrently
+        doAnswer(invocation -> {
+            if ("site-b".equals(invocation.getArgument(0))) {
+                throw new KrakenServerException("unavailable", 503);
+            }
+            return null;
+        }).when(webClient).postOutagesFor(anyString(), anyList());
+
+        BatchReport report = batchService.run(Arrays.asList("site-a", "site-b", "site-c"));
+
+        verify(webClient).postOutagesFor(eq("site-b"), anyList());
+
+        assertEquals(1, report.succeeded());
+        assertEquals(2, report.failed());
+        assertTrue(report.results().get(0).error().contains("404"));
+        assertTrue(report.results().get(1).error().contains("503"));
+        assertTrue(report.results().get(2).success());
+    }
+
+    @Test
+    void givenSiteThreadFailsWithError_whenRunningBatch_thenReportSiteFailedAndContinue(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Collections.singletonList(outage1)));
+        when(webClient.getSiteInfoFor("site-a")).thenThrow(new StackOverflowError("too deep"));
+        when(webClient.getSiteInfoFor("site-b")).thenReturn(Optional.of(site("site-b", device1)));
+
+        BatchReport report = batchService.run(Arrays.asList("site-a", "site-b"));
+
+        assertEquals(1, report.failed());
+        assertTrue(report.results().get(0).error().contains("StackOverflowError"));
+        assertTrue(report.results().get(1).success());
+    }
+
+    @Test
+    void givenMoreSitesThanPermits_whenRunningBatch_thenCapSitesCallingKraken(){
+        final AtomicInteger calling = new AtomicInteger();
+        final AtomicInteger maxCalling = new AtomicInteger();
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Collections.singletonList(outage1)));
+        when(webClient.getSiteInfoFor(anyString())).thenAnswer(invocation -> {
+            maxCalling.accumulateAndGet(calling.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            calling.decrementAndGet();
+            return Optional.of(site(invocation.getArgument(0), device1));
+        });
+
+        BatchReport report = batchService.run(IntStream.range(0, 12).mapToObj(i -> "site-" + i).toList());
+
+        assertEquals(12, report.succeeded());
+        assertTrue(maxCalling.get() <= 2, "at most 2 sites call Kraken at once, saw " + maxCalling.get());
+    }
+
+    @Test
+    void givenOutagesFetchFails_whenRunningBatch_thenThrowAndProcessNoSites(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.error(new KrakenServerException("down", 500)));
+
+        assertThrows(KrakenServerException.class, () -> batchService.run(List.of("site-a")));
+
+        verify(webClient, never()).getSiteInfoFor(anyString());
+    }
+
+    @Test
+    void givenNoPermits_whenCreatingService_thenThrowIllegalArgument(){
+        assertThrows(IllegalArgumentException.class, () -> batchService(0));
+    }
+
+    private ThreadPerSiteBatchService batchService(int concurrency){
+        OutageDetailService outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        OutageIndexProvider outageIndexProvider = new OutageIndexProvider(webClient, outageDetailService, new OutageSnapshotStore(false, Path.of("unused"), Duration.ZERO), false);
+        PublishFingerprintStore fingerprintStore = new PublishFingerprintStore(false, Path.of("unused"));
+        OutagePublisher outagePublisher = new OutagePublisher(outageDetailService, fingerprintStore,
+                new PublishOutbox(outageDetailService, fingerprintStore, KrakenMetrics.disabled(), Jackson2ObjectMapperBuilder.json().build(), false, Path.of("unused"), false, 1, Duration.ofSeconds(1), Duration.ofSeconds(1)));
+        return new ThreadPerSiteBatchService(outageDetailService, outageIndexProvider, outagePublisher,
+                new StaticListableBeanFactory(Map.of("batchSiteExecutor", siteExecutor)).getBeanProvider(ExecutorService.class), concurrency);
+    }
+
+    private Site site(String id, Device... devices){
+        return Site.builder()
+                .id(id)
+                .name(id)
+                .devices(Arrays.asList(devices))
+                .build();
+    }
+}
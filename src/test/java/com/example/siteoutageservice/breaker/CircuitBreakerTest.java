@@ -0,0 +1,124 @@
+package com.example.siteoutageservice.breaker;
+
+import com.example.siteoutageservice.breaker.CircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CircuitBreakerTest {
+
+    private static final long FAST = Duration.ofMillis(10).toNanos();
+    private static final long SLOW = Duration.ofSeconds(2).toNanos();
+
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final List<String> transitions = new ArrayList<>();
+
+    private final CircuitBreaker breaker = new CircuitBreaker(50, 80, Duration.ofSeconds(1), 10, 4, Duration.ofSeconds(30), 2,
+            nanoTime::get, (from, to, reason) -> transitions.add(from + "->" + to));
+
+    @Test
+    void givenFewerThanMinimumCalls_whenAllFail_thenStayClosed(){
+        call(true, FAST, 3);
+
+        assertEquals(State.CLOSED, breaker.getState());
+        assertTrue(breaker.tryAcquire());
+    }
+
+    @Test
+    void givenFailureRateReached_whenRecording_thenOpenAndReject(){
+        call(false, FAST, 2);
+        call(true, FAST, 2);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(List.of("CLOSED->OPEN"), transitions);
+    }
+
+    @Test
+    void givenOpen_whenTimePasses_thenCountDownRemainingOpen(){
+        assertTrue(breaker.getRemainingOpen().isEmpty());
+        call(true, FAST, 4);
+
+        nanoTime.addAndGet(Duration.ofSeconds(10).toNanos());
+
+        assertEquals(Duration.ofSeconds(20), breaker.getRemainingOpen().orElseThrow());
+    }
+
+    @Test
+    void givenSlowCallRateReached_whenRecording_thenOpen(){
+        call(false, FAST, 1);
+        call(false, SLOW, 3);
+        assertEquals(State.CLOSED, breaker.getState());
+
+        call(false, SLOW, 1);
+
+        assertEquals(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    void givenOldFailuresLeftTheWindow_whenRecording_thenStayClosed(){
+        call(true, FAST, 1);
+        call(false, FAST, 9);
+        call(true, FAST, 4);
+
+        assertEquals(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void givenOpenDurationPassed_whenAcquiring_thenAllowOnlyTrialCalls(){
+        call(true, FAST, 4);
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        assertTrue(breaker.tryAcquire());
+        assertTrue(breaker.tryAcquire());
+        assertFalse(breaker.tryAcquire());
+        assertEquals(State.HALF_OPEN, breaker.getState());
+    }
+
+    @Test
+    void givenTrialCallsSucceed_whenRecording_thenClose(){
+        call(true, FAST, 4);
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        call(false, FAST, 2);
+
+        assertEquals(State.CLOSED, breaker.getState());
+        assertEquals(List.of("CLOSED->OPEN", "OPEN->HALF_OPEN", "HALF_OPEN->CLOSED"), transitions);
+    }
+
+    @Test
+    void givenTrialCallFails_whenRecording_thenOpenAgain(){
+        call(true, FAST, 4);
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+
+        call(false, FAST, 1);
+        call(true, FAST, 1);
+
+        assertEquals(State.OPEN, breaker.getState());
+        assertFalse(breaker.tryAcquire());
+    }
+
+    @Test
+    void givenTrialCallIgnored_whenAcquiring_thenAllowAnotherTrial(){
+        call(true, FAST, 4);
+        nanoTime.addAndGet(Duration.ofSeconds(30).toNanos());
+        breaker.tryAcquire();
+        breaker.tryAcquire();
+
+        breaker.onIgnored();
+
+        assertTrue(breaker.tryAcquire());
+    }
+
+    private void call(boolean failed, long latencyNanos, int times){
+        for (int i = 0; i < times; i++) {
+            assertTrue(breaker.tryAcquire());
+            breaker.onResult(failed, latencyNanos);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.example.siteoutageservice.breaker;
+
+import com.example.siteoutageservice.config.WebConfiguration;
+import com.example.siteoutageservice.exception.KrakenCircuitOpenException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.throttle.KrakenThrottle;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KrakenCircuitBreakersTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final KrakenCircuitBreakers breakers = new KrakenCircuitBreakers(true, 50, 100, Duration.ofSeconds(10), 4, 2,
+            Duration.ofMinutes(1), 1, new KrakenMetrics(meterRegistry));
+
+    @Test
+    void given5xxAndIoErrors_whenCalling_thenOpenAndFailFastWithoutCalling(){
+        AtomicInteger calls = new AtomicInteger();
+        Mono<ClientResponse> serverError = Mono.fromSupplier(() -> {
+            calls.incrementAndGet();
+            return ClientResponse.create(HttpStatus.SERVICE_UNAVAILABLE).build();
+        });
+
+        breakers.guard("/outages", onSend -> serverError).block();
+        assertThrows(UncheckedIOException.class, () -> breakers.guard("/outages", onSend -> Mono.error(new UncheckedIOException(new IOException("reset")))).block());
+
+        KrakenCircuitOpenException ex = assertThrows(KrakenCircuitOpenException.class, () -> breakers.guard("/outages", onSend -> serverError).block());
+        assertEquals(1, calls.get());
+        assertTrue(ex.getRetryAfter().orElseThrow().compareTo(Duration.ofMinutes(1)) <= 0);
+        assertEquals(CircuitBreaker.State.OPEN, breakers.getState("/outages"));
+        assertEquals(1, meterRegistry.get("kraken.client.circuit.rejected").tag("endpoint", "/outages").counter().count());
+        assertEquals(1, meterRegistry.get("kraken.client.circuit.transitions").tags("from", "CLOSED", "to", "OPEN").counter().count());
+        assertEquals(1, meterRegistry.get("kraken.client.circuit.state").tag("endpoint", "/outages").gauge().value());
+    }
+
+    @Test
+    void givenCallsQueuedOnTheThrottlePastSlowCallDuration_whenCalling_thenKeepCircuitClosed(){
+        KrakenCircuitBreakers slowCallBreakers = new KrakenCircuitBreakers(true, 50, 50, Duration.ofMillis(200), 4, 2,
+                Duration.ofMinutes(1), 1, KrakenMetrics.disabled());
+        //one /outages call every 300ms, so the last of four waits about 900ms before it is sent
+        KrakenThrottle throttle = new KrakenThrottle(1000 / 300.0, 0, 0, 1, false, 1, 1, 1, 0.5, Duration.ofSeconds(1), KrakenMetrics.disabled());
+        WebConfiguration webConfiguration = new WebConfiguration();
+        WebClient webClient = WebClient.builder()
+                .exchangeFunction(request -> Mono.just(ClientResponse.create(HttpStatus.OK).build()))
+                .filter(webConfiguration.circuitBreaker(slowCallBreakers))
+                .filter(webConfiguration.throttle(throttle))
+                .build();
+
+        long start = System.nanoTime();
+        Flux.range(0, 4)
+                .flatMap(i -> webClient.get().uri("http://kraken/outages")
+                        .attribute(KrakenMetrics.ENDPOINT_ATTRIBUTE, WebConfiguration.OUTAGES_ENDPOINT)
+                        .retrieve()
+                        .toBodilessEntity())
+                .blockLast();
+
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(800).toNanos());
+        assertEquals(CircuitBreaker.State.CLOSED, slowCallBreakers.getState("/outages"));
+    }
+
+    @Test
+    void given4xx_whenCalling_thenKeepCircuitClosed(){
+        Mono<ClientResponse> notFound = Mono.just(ClientResponse.create(HttpStatus.NOT_FOUND).build());
+
+        for (int i = 0; i < 4; i++) {
+            breakers.guard("/site-info", onSend -> notFound).block();
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, breakers.getState("/site-info"));
+    }
+
+    @Test
+    void givenOneEndpointOpen_whenCallingAnother_thenCallGoesThrough(){
+        Mono<ClientResponse> serverError = Mono.just(ClientResponse.create(HttpStatus.INTERNAL_SERVER_ERROR).build());
+        breakers.guard("/outages", onSend -> serverError).block();
+        breakers.guard("/outages", onSend -> serverError).block();
+
+        assertNotNull(breakers.guard("/site-info", onSend -> Mono.just(ClientResponse.create(HttpStatus.OK).build())).block());
+    }
+}
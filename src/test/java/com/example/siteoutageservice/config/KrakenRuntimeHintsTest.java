@@ -0,0 +1,41 @@
+package com.example.siteoutageservice.config;
+
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.ErrorMessage;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KrakenRuntimeHintsTest {
+
+    private final RuntimeHints hints = new RuntimeHints();
+
+    @BeforeEach
+    void setup(){
+        new KrakenRuntimeHints().registerHints(hints, getClass().getClassLoader());
+    }
+
+    @Test
+    void givenDtos_whenRegisteringHints_thenCanonicalConstructorsAndAccessorsAreReflective() throws NoSuchMethodException {
+        assertTrue(RuntimeHintsPredicates.reflection().onConstructor(Outage.class.getDeclaredConstructor(String.class, String.class, String.class)).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Outage.class, "begin").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onType(Outage[].class).test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Site.class, "devices").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Device.class, "name").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(DeviceOutage.class, "name").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(ErrorMessage.class, "message").test(hints));
+    }
+
+    @Test
+    void givenLombokBuilders_whenRegisteringHints_thenBuildMethodsAreReflective(){
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Outage.OutageBuilder.class, "build").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Site.SiteBuilder.class, "devices").test(hints));
+        assertTrue(RuntimeHintsPredicates.reflection().onMethod(Device.DeviceBuilder.class, "id").test(hints));
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.siteoutageservice.config;
+
+import com.example.siteoutageservice.breaker.KrakenCircuitBreakers;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.throttle.KrakenThrottle;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import com.example.siteoutageservice.web.RequestCoalescer;
+import com.example.siteoutageservice.web.ResponseCache;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebConfigurationTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final WebConfiguration configuration = new WebConfiguration();
+
+    private MockWebServer mockKraken;
+    private ConnectionProvider connectionProvider;
+    private KrakenWebClient krakenWebClient;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockKraken = new MockWebServer();
+        mockKraken.start();
+
+        String baseUrl = "http://localhost:" + mockKraken.getPort();
+        //a single pooled connection makes each request wait for the previous release rather than racing it
+        connectionProvider = configuration.krakenConnectionProvider(1, 10, Duration.ofSeconds(5), Duration.ofSeconds(30), Duration.ofSeconds(60));
+        krakenWebClient = new KrakenWebClient(configuration.webclient(baseUrl, "abc-123", DataSize.ofMegabytes(1),
+                configuration.krakenHttpClient(connectionProvider, baseUrl, Duration.ofSeconds(5), Duration.ofSeconds(5), Duration.ofSeconds(5), true, true), KrakenMetrics.disabled(), KrakenThrottle.disabled(), KrakenCircuitBreakers.disabled()),
+                1, 1, ResponseCache.disabled(), KrakenMetrics.disabled(), 0.5, Duration.ofSeconds(60), RequestCoalescer.disabled());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connectionProvider.dispose();
+        mockKraken.shutdown();
+    }
+
+    @Test
+    void givenSequentialCalls_whenCallingKraken_thenReuseOneConnection() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            mockKraken.enqueue(new MockResponse()
+                    .setResponseCode(200)
+                    .setBody(mapper.writeValueAsString(Site.builder().id("site-" + i).build()))
+                    .addHeader("Content-Type", "application/json"));
+        }
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals("site-" + i, krakenWebClient.getSiteInfoFor("site-" + i).orElseThrow().id());
+        }
+
+        //sequence number is the index of the request on its connection, so 0,1,2 means one connection was reused
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, mockKraken.takeRequest(1, TimeUnit.SECONDS).getSequenceNumber());
+        }
+    }
+
+    @Test
+    void givenMaxInMemorySizeOf2GB_whenCreatingWebClient_thenThrowIllegalArgument() {
+        assertThrows(IllegalArgumentException.class, () -> configuration.webclient("http://localhost", "abc-123", DataSize.ofGigabytes(2), HttpClient.create(),
+                KrakenMetrics.disabled(), KrakenThrottle.disabled(), KrakenCircuitBreakers.disabled()));
+    }
+
+    @Test
+    void givenGzippedResponse_whenCallingKraken_thenAdvertiseGzipAndDecompress() throws Exception {
+        List<Outage> outages = Collections.singletonList(new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(new Buffer().write(gzip(mapper.writeValueAsBytes(outages))))
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Content-Encoding", "gzip"));
+
+        assertEquals(outages, krakenWebClient.getOutages());
+
+        RecordedRequest request = mockKraken.takeRequest(1, TimeUnit.SECONDS);
+        assertTrue(request.getHeader("Accept-Encoding").contains("gzip"));
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.siteoutageservice.daemon;
+
+import com.example.siteoutageservice.batch.BatchOutageService;
+import com.example.siteoutageservice.batch.BatchReport;
+import com.example.siteoutageservice.batch.SiteResult;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.index.TimeWindow;
+import com.example.siteoutageservice.service.OutageDetailService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutageSyncSchedulerTest {
+
+    @Mock
+    private BatchOutageService batchOutageService;
+
+    @Mock
+    private OutageDetailService outageDetailService;
+
+    private OutageSyncScheduler scheduler;
+
+    @BeforeEach
+    void setup(){
+        lenient().when(outageDetailService.getOutagesTimeFilter()).thenReturn(TimeWindow.ALL);
+        scheduler = new OutageSyncScheduler(batchOutageService, outageDetailService, Arrays.asList("site-a", "site-b"), "", "",
+                Duration.ofMinutes(5), Duration.ofSeconds(5));
+    }
+
+    @Test
+    void givenSiteStillInFlight_whenRunning_thenSkipOnlyThatSite(){
+        Sinks.One<BatchReport> firstRun = Sinks.one();
+        when(batchOutageService.runAsync(eq(Arrays.asList("site-a", "site-b")), eq(TimeWindow.ALL), any())).thenReturn(firstRun.asMono());
+        when(batchOutageService.runAsync(eq(List.of("site-a")), eq(TimeWindow.ALL), any())).thenReturn(Mono.empty());
+
+        scheduler.runOnce();
+        Consumer<SiteResult> onSiteFinished = captureOnSiteFinished(Arrays.asList("site-a", "site-b"));
+        onSiteFinished.accept(SiteResult.succeeded("site-a", 1, true, Duration.ZERO));
+
+        scheduler.runOnce();
+
+        verify(batchOutageService).runAsync(eq(List.of("site-a")), eq(TimeWindow.ALL), any());
+    }
+
+    @Test
+    void givenEverySiteStillInFlight_whenRunning_thenSkipRun(){
+        when(batchOutageService.runAsync(anyList(), eq(TimeWindow.ALL), any())).thenReturn(Sinks.<BatchReport>one().asMono());
+
+        scheduler.runOnce();
+        scheduler.runOnce();
+
+        verify(batchOutageService, times(1)).runAsync(anyList(), any(TimeWindow.class), any());
+    }
+
+    @Test
+    void givenOutagesFetchFails_whenRunning_thenReleaseEverySite(){
+        when(batchOutageService.runAsync(anyList(), eq(TimeWindow.ALL), any()))
+                .thenReturn(Mono.error(new KrakenServerException("down", 500)))
+                .thenReturn(Mono.empty());
+
+        scheduler.runOnce();
+        scheduler.runOnce();
+
+        verify(batchOutageService, times(2)).runAsync(eq(Arrays.asList("site-a", "site-b")), eq(TimeWindow.ALL), any());
+    }
+
+    @Test
+    void givenSitesInFlight_whenStopping_thenWaitForThemToFinish() throws Exception {
+        when(batchOutageService.runAsync(anyList(), eq(TimeWindow.ALL), any())).thenReturn(Sinks.<BatchReport>one().asMono());
+        scheduler.start();
+        verify(batchOutageService, timeout(1000)).runAsync(anyList(), eq(TimeWindow.ALL), any());
+        Consumer<SiteResult> onSiteFinished = captureOnSiteFinished(Arrays.asList("site-a", "site-b"));
+
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(scheduler::stop);
+        onSiteFinished.accept(SiteResult.succeeded("site-a", 1, true, Duration.ZERO));
+        assertFalse(stopped.isDone());
+
+        onSiteFinished.accept(SiteResult.failed("site-b", Duration.ZERO, "failed"));
+        stopped.get();
+        assertFalse(scheduler.isRunning());
+    }
+
+    @Test
+    void givenSiteNeverFinishes_whenAwaitingInFlight_thenGiveUpAfterTimeout() throws InterruptedException {
+        when(batchOutageService.runAsync(anyList(), eq(TimeWindow.ALL), any())).thenReturn(Sinks.<BatchReport>one().asMono());
+
+        scheduler.runOnce();
+
+        assertFalse(scheduler.awaitInFlight(Duration.ofMillis(50)));
+    }
+
+    @Test
+    void givenNoSiteIds_whenCreating_thenThrowIllegalArgument(){
+        assertThrows(IllegalArgumentException.class, () -> new OutageSyncScheduler(batchOutageService, outageDetailService,
+                Collections.emptyList(), "", "", Duration.ofMinutes(5), Duration.ofSeconds(5)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Consumer<SiteResult> captureOnSiteFinished(List<String> siteIds){
+        ArgumentCaptor<Consumer<SiteResult>> captor = ArgumentCaptor.forClass(Consumer.class);
+        verify(batchOutageService).runAsync(eq(siteIds), eq(TimeWindow.ALL), captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.siteoutageservice.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeviceIdTableTest {
+
+    @Test
+    void givenIds_whenAdding_thenAssignCodesInFirstSeenOrder(){
+        DeviceIdTable table = new DeviceIdTable(4);
+
+        assertEquals(0, table.add("device-a"));
+        assertEquals(1, table.add("device-b"));
+        assertEquals(0, table.add(new String("device-a")));
+
+        assertEquals(2, table.size());
+        assertEquals(1, table.codeOf("device-b"));
+        assertEquals(-1, table.codeOf("device-c"));
+    }
+
+    @Test
+    void givenMoreIdsThanExpected_whenAdding_thenGrowAndKeepCodes(){
+        DeviceIdTable table = new DeviceIdTable(1);
+
+        IntStream.range(0, 1000).forEach(i -> table.add("device-" + i));
+
+        assertEquals(1000, table.size());
+        IntStream.range(0, 1000).forEach(i -> assertEquals(i, table.codeOf("device-" + i)));
+    }
+
+    @Test
+    void givenCollidingHashes_whenLookingUp_thenCompareIds(){
+        DeviceIdTable table = new DeviceIdTable(2);
+        //"Aa" and "BB" share a hash code
+        table.add("Aa");
+        table.add("BB");
+
+        assertEquals(0, table.codeOf("Aa"));
+        assertEquals(1, table.codeOf("BB"));
+        assertEquals(-1, table.codeOf("C#"));
+    }
+}
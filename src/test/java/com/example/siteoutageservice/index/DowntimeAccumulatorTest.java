@@ -0,0 +1,87 @@
+package com.example.siteoutageservice.index;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DowntimeAccumulatorTest {
+
+    @Test
+    void givenOverlappingAndAdjacentOutages_whenFinishing_thenMergeThemAndTotalDowntime(){
+        DowntimeAccumulator accumulator = new DowntimeAccumulator();
+        accumulator.add(0, 10);
+        accumulator.add(5, 15);
+        accumulator.add(15, 20);
+        accumulator.add(30, 35);
+
+        Downtime downtime = accumulator.finish(100);
+
+        assertEquals(4, downtime.outageCount());
+        assertEquals(List.of(new Downtime.Interval(0, 20), new Downtime.Interval(30, 35)), downtime.intervals());
+        assertEquals(25, downtime.total());
+        assertEquals(20, downtime.longest());
+    }
+
+    @Test
+    void givenOutagesOutOfOrder_whenFinishing_thenMatchSortedMerge(){
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<long[]> outages = new ArrayList<>();
+            DowntimeAccumulator accumulator = new DowntimeAccumulator(1);
+            for (int i = 0; i < 1 + random.nextInt(30); i++) {
+                long begin = random.nextInt(1000);
+                long[] outage = {begin, begin + random.nextInt(50)};
+                outages.add(outage);
+                accumulator.add(outage[0], outage[1]);
+            }
+
+            assertEquals(sortedMerge(outages), accumulator.finish(Long.MAX_VALUE).intervals());
+        }
+    }
+
+    @Test
+    void givenOngoingOutage_whenFinishing_thenCountItUntilNow(){
+        DowntimeAccumulator accumulator = new DowntimeAccumulator();
+        accumulator.add(100, Long.MAX_VALUE);
+        accumulator.add(50, 120);
+
+        Downtime downtime = accumulator.finish(400);
+
+        assertEquals(List.of(new Downtime.Interval(50, Long.MAX_VALUE)), downtime.intervals());
+        assertTrue(downtime.intervals().get(0).isOngoing());
+        assertEquals(350, downtime.total());
+    }
+
+    @Test
+    void givenEndBeforeBegin_whenFinishing_thenCountOutageWithoutDowntime(){
+        DowntimeAccumulator accumulator = new DowntimeAccumulator();
+        accumulator.add(10, 5);
+
+        Downtime downtime = accumulator.finish(100);
+
+        assertEquals(1, downtime.outageCount());
+        assertEquals(0, downtime.total());
+        assertEquals(List.of(new Downtime.Interval(10, 10)), downtime.intervals());
+    }
+
+    private static List<Downtime.Interval> sortedMerge(List<long[]> outages){
+        outages.sort(Comparator.comparingLong(o -> o[0]));
+        List<Downtime.Interval> merged = new ArrayList<>();
+        long begin = outages.get(0)[0];
+        long end = outages.get(0)[1];
+        for (long[] outage : outages) {
+            if (outage[0] > end) {
+                merged.add(new Downtime.Interval(begin, end));
+                begin = outage[0];
+            }
+            end = Math.max(end, outage[1]);
+        }
+        merged.add(new Downtime.Interval(begin, end));
+        return merged;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.siteoutageservice.index;
+
+import com.example.siteoutageservice.dto.Outage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LiveOutageIndexTest {
+
+    private final Outage first = new Outage("device-1", "2022-01-01T00:00:00.000Z", null);
+    private final Outage second = new Outage("device-2", "2022-01-02T00:00:00.000Z", "2022-01-03T00:00:00.000Z");
+
+    @Test
+    void givenRandomOutages_whenQueryingWindows_thenMatchOutageIndex(){
+        Random random = new Random(11);
+        List<OutageRecord> records = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            //few enough begins that some outages share a device and begin, which loading keeps like OutageIndex does
+            long begin = 1_600_000_000_000L + random.nextInt(5_000) * 1_000L;
+            records.add(OutageRecord.of(new Outage("device-" + random.nextInt(50),
+                    Instant.ofEpochMilli(begin).toString(), Instant.ofEpochMilli(begin + 1_000).toString())));
+        }
+        Collections.shuffle(records, random);
+        OutageIndex expected = OutageIndex.of(records);
+        LiveOutageIndex index = LiveOutageIndex.of(records);
+
+        for (int q = 0; q < 200; q++) {
+            long from = random.nextLong(1_599_000_000_000L, 1_600_006_000_000L);
+            TimeWindow window = q % 3 == 0 ? TimeWindow.since(from) : TimeWindow.between(from, from + random.nextLong(1, 2_000_000L));
+            Set<String> deviceIds = new HashSet<>(List.of("device-" + random.nextInt(50), "device-" + random.nextInt(50), "unknown-device"));
+
+            assertEquals(expected.outagesFor(deviceIds, window), index.join(deviceIds, window, (device, outage) -> outage));
+        }
+    }
+
+    @Test
+    void givenOutagesSharingDeviceAndBegin_whenLoading_thenKeepEveryOneLikeOutageIndex(){
+        Outage duplicate = new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-01T06:00:00.000Z");
+        List<OutageRecord> records = List.of(OutageRecord.of(first), OutageRecord.of(second), OutageRecord.of(duplicate));
+
+        LiveOutageIndex index = LiveOutageIndex.of(records);
+
+        assertEquals(3, index.size());
+        assertEquals(OutageIndex.of(records).outagesFor(List.of("device-1", "device-2"), TimeWindow.ALL),
+                index.join(List.of("device-1", "device-2"), TimeWindow.ALL, (device, outage) -> outage));
+    }
+
+    @Test
+    void givenOutagesSharingDeviceAndBegin_whenApplyingOneForThatBegin_thenReplaceThemAll(){
+        Outage duplicate = new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-01T06:00:00.000Z");
+        LiveOutageIndex index = LiveOutageIndex.of(List.of(OutageRecord.of(first), OutageRecord.of(second), OutageRecord.of(duplicate)));
+
+        assertTrue(index.apply(OutageRecord.of(duplicate)));
+
+        assertEquals(2, index.size());
+        assertEquals(List.of(duplicate, second), index.join(List.of("device-1", "device-2"), TimeWindow.ALL, (device, outage) -> outage));
+        assertFalse(index.apply(OutageRecord.of(duplicate)));
+    }
+
+    @Test
+    void givenUpdatedOutage_whenApplying_thenReplaceItInPlace(){
+        LiveOutageIndex index = LiveOutageIndex.of(List.of(OutageRecord.of(first), OutageRecord.of(second)));
+        Outage ended = new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-01T06:00:00.000Z");
+
+        assertTrue(index.apply(OutageRecord.of(ended)));
+
+        assertEquals(2, index.size());
+        assertEquals(List.of(ended, second), index.join(List.of("device-2", "device-1"), TimeWindow.ALL, (device, outage) -> outage));
+    }
+
+    @Test
+    void givenSameOutage_whenApplying_thenReportUnchanged(){
+        LiveOutageIndex index = LiveOutageIndex.of(List.of(OutageRecord.of(first)));
+
+        assertFalse(index.apply(OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", null))));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void givenNewOutage_whenApplying_thenJoinAfterThoseSeenBefore(){
+        LiveOutageIndex index = LiveOutageIndex.of(List.of(OutageRecord.of(second)));
+        Outage earlier = new Outage("device-1", "2021-12-01T00:00:00.000Z", "2021-12-02T00:00:00.000Z");
+
+        assertTrue(index.apply(OutageRecord.of(earlier)));
+
+        List<String> joined = index.join(List.of("device-1", "device-2"), TimeWindow.ALL, (device, outage) -> device + ":" + outage.begin());
+        assertEquals(List.of("1:2022-01-02T00:00:00.000Z", "0:2021-12-01T00:00:00.000Z"), joined);
+        assertEquals(2, index.deviceCount());
+    }
+}
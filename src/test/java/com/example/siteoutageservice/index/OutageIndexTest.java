@@ -0,0 +1,115 @@
+package com.example.siteoutageservice.index;
+
+import com.example.siteoutageservice.dto.Outage;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutageIndexTest {
+
+    @Test
+    void givenRandomOutages_whenQueryingWindows_thenMatchLinearFilterInResponseOrder(){
+        Random random = new Random(7);
+        List<OutageRecord> records = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            long begin = random.nextLong(1_600_000_000_000L, 1_700_000_000_000L);
+            records.add(OutageRecord.of(new Outage("device-" + random.nextInt(50),
+                    Instant.ofEpochMilli(begin).toString(), Instant.ofEpochMilli(begin + 1_000).toString())));
+        }
+        OutageIndex index = OutageIndex.of(records);
+
+        for (int q = 0; q < 200; q++) {
+            long from = random.nextLong(1_590_000_000_000L, 1_710_000_000_000L);
+            TimeWindow window = q % 3 == 0 ? TimeWindow.since(from) : TimeWindow.between(from, from + random.nextLong(1, 20_000_000_000L));
+            Set<String> deviceIds = new HashSet<>(List.of("device-" + random.nextInt(50), "device-" + random.nextInt(50), "unknown-device"));
+
+            List<Outage> expected = records.stream()
+                    .filter(r -> deviceIds.contains(r.id()) && window.contains(r.begin()))
+                    .map(OutageRecord::outage)
+                    .toList();
+
+            assertEquals(expected, index.outagesFor(deviceIds, window));
+        }
+    }
+
+    @Test
+    void givenRandomOutages_whenJoiningWithDowntime_thenMatchSeparateJoinAndDowntime(){
+        Random random = new Random(11);
+        List<OutageRecord> records = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            long begin = random.nextLong(1_600_000_000_000L, 1_700_000_000_000L);
+            String end = random.nextInt(10) == 0 ? null : Instant.ofEpochMilli(begin + random.nextLong(1, 50_000_000_000L)).toString();
+            records.add(OutageRecord.of(new Outage("device-" + random.nextInt(50), Instant.ofEpochMilli(begin).toString(), end)));
+        }
+        OutageIndex index = OutageIndex.of(records);
+        long now = 1_750_000_000_000L;
+
+        for (int q = 0; q < 200; q++) {
+            long from = random.nextLong(1_590_000_000_000L, 1_710_000_000_000L);
+            TimeWindow window = q % 3 == 0 ? TimeWindow.since(from) : TimeWindow.between(from, from + random.nextLong(1, 20_000_000_000L));
+            List<String> deviceIds = List.of("device-" + random.nextInt(50), "unknown-device", "device-" + random.nextInt(50));
+
+            OutageIndex.Joined<String, String> joined = index.joinWithDowntime(deviceIds, window, now,
+                    (device, outage) -> device + outage.begin(), (device, downtime) -> device + ":" + downtime);
+
+            assertEquals(index.join(deviceIds, window, (device, outage) -> device + outage.begin()), joined.rows());
+            assertEquals(index.downtime(deviceIds, window, now, (device, downtime) -> device + ":" + downtime), joined.downtime());
+        }
+    }
+
+    @Test
+    void givenUnsortedBeginsWithTies_whenSortingByBegin_thenSortStablyByBegin(){
+        Random random = new Random(5);
+        for (int n : new int[]{0, 1, 15, 16, 17, 1_000}) {
+            long[] begins = new long[n];
+            int[] positions = new int[n];
+            for (int i = 0; i < n; i++) {
+                begins[i] = random.nextInt(50);
+                positions[i] = i;
+            }
+            long[] expected = begins.clone();
+            Arrays.sort(expected);
+
+            OutageIndex.sortByBegin(begins, positions);
+
+            assertArrayEquals(expected, begins);
+            for (int i = 1; i < n; i++) {
+                assertTrue(begins[i - 1] < begins[i] || positions[i - 1] < positions[i], "ties kept in response order");
+            }
+        }
+    }
+
+    @Test
+    void givenOutagesBeginningAtBounds_whenQueryingWindow_thenIncludeFromAndExcludeUntil(){
+        OutageRecord atFrom = OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"));
+        OutageRecord beforeFrom = OutageRecord.of(new Outage("device-1", "2021-12-31T23:59:59.999Z", "2022-01-02T00:00:00.000Z"));
+        OutageRecord atUntil = OutageRecord.of(new Outage("device-1", "2022-02-01T00:00:00.000Z", "2022-02-02T00:00:00.000Z"));
+        OutageIndex index = OutageIndex.of(Arrays.asList(atUntil, atFrom, beforeFrom));
+
+        List<Outage> outages = index.outagesFor(List.of("device-1"), TimeWindow.parse("2022-01-01T00:00:00.000Z", "2022-02-01T00:00:00.000Z"));
+
+        assertEquals(Collections.singletonList(atFrom.outage()), outages);
+    }
+
+    @Test
+    void givenUnknownDevice_whenQuerying_thenReturnEmpty(){
+        OutageIndex index = OutageIndex.of(List.of(OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", null))));
+
+        assertEquals(Collections.emptyList(), index.outagesFor(List.of("device-2")));
+        assertEquals(1, index.deviceCount());
+    }
+
+    @Test
+    void givenWindowEndingBeforeItStarts_whenCreating_thenThrowIllegalArgument(){
+        assertThrows(IllegalArgumentException.class, () -> TimeWindow.between(2, 1));
+    }
+}
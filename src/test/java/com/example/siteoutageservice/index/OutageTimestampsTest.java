@@ -0,0 +1,89 @@
+package com.example.siteoutageservice.index;
+
+import com.example.siteoutageservice.dto.Outage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutageTimestampsTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2022-01-01T00:00:00.000Z",
+            "2021-12-31T23:59:59.999Z",
+            "1970-01-01T00:00:00.000Z",
+            "1969-12-31T23:59:59.999Z",
+            "2020-02-29T12:34:56.789Z",
+            "2000-02-29T00:00:00.001Z",
+            "0001-03-01T00:00:00.000Z",
+            "9999-12-31T23:59:59.999Z"})
+    void givenFixedShape_whenParsing_thenMatchZonedDateTime(String value){
+        assertEquals(ZonedDateTime.parse(value).toInstant().toEpochMilli(), OutageTimestamps.parseEpochMillis(value));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2022-01-01T00:00:00.000Z",
+            "1969-12-31T23:59:59.999Z",
+            "2020-02-29T12:34:56.789Z"})
+    void givenEpochMillis_whenFormatting_thenRoundTripKrakenShape(String value){
+        assertEquals(value, OutageTimestamps.formatEpochMillis(OutageTimestamps.parseEpochMillis(value)));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2022-01-01T01:00:00.000+01:00",
+            "2022-01-01T00:00:00Z",
+            "2022-01-01T00:00:00.5Z",
+            "2022-01-01T00:00:00.000000Z"})
+    void givenOtherIsoShapes_whenParsing_thenFallBackToZonedDateTime(String value){
+        assertEquals(ZonedDateTime.parse(value).toInstant().toEpochMilli(), OutageTimestamps.parseEpochMillis(value));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "2022-13-01T00:00:00.000Z",
+            "2021-02-29T00:00:00.000Z",
+            "2022-01-01T24:00:00.000Z",
+            "2022-01-0xT00:00:00.000Z",
+            "not a date"})
+    void givenInvalidTimestamp_whenParsing_thenThrow(String value){
+        assertThrows(DateTimeParseException.class, () -> OutageTimestamps.parseEpochMillis(value));
+    }
+
+    @Test
+    void givenRandomInstants_whenParsing_thenMatchZonedDateTime(){
+        Random random = new Random(42);
+        for (int i = 0; i < 10_000; i++) {
+            String value = Instant.ofEpochMilli(random.nextLong(-62_135_596_800_000L, 253_402_300_799_999L)).toString();
+            if (value.length() == 24) {
+                assertEquals(ZonedDateTime.parse(value).toInstant().toEpochMilli(), OutageTimestamps.parseEpochMillis(value), value);
+            }
+        }
+    }
+
+    @Test
+    void givenOutage_whenCreatingRecord_thenKeepOriginalStrings(){
+        Outage outage = new Outage("device-1", "2022-01-01T01:00:00.000+01:00", "2022-01-02T00:00:00.000Z");
+
+        OutageRecord record = OutageRecord.of(outage);
+
+        assertSame(outage, record.outage());
+        assertEquals("2022-01-01T01:00:00.000+01:00", record.outage().begin());
+        assertEquals(ZonedDateTime.parse("2022-01-01T00:00:00.000Z").toInstant().toEpochMilli(), record.begin());
+    }
+
+    @Test
+    void givenOutageWithoutEnd_whenCreatingRecord_thenTreatAsOngoing(){
+        OutageRecord record = OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", null));
+
+        assertEquals(Long.MAX_VALUE, record.end());
+    }
+}
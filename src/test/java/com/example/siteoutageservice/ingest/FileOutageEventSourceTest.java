@@ -0,0 +1,128 @@
+package com.example.siteoutageservice.ingest;
+
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.OutageEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.Disposable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileOutageEventSourceTest {
+
+    private final ObjectMapper mapper = Jackson2ObjectMapperBuilder.json().build();
+
+    @TempDir
+    Path dir;
+
+    private final OutageEvent created = new OutageEvent(OutageEvent.Type.CREATED, new Outage("device-1", "2022-01-01T00:00:00.000Z", null));
+    private final OutageEvent updated = new OutageEvent(OutageEvent.Type.UPDATED, new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"));
+
+    @Test
+    void givenEventsInFile_whenTailing_thenEmitExistingThenAppendedEvents() throws Exception {
+        Path path = dir.resolve("events.ndjson");
+        append(path, line(created));
+        List<OutageEvent> events = new CopyOnWriteArrayList<>();
+
+        Disposable tail = source(path).events().subscribe(events::add);
+        try {
+            await(() -> events.size() == 1);
+            append(path, line(updated));
+            await(() -> events.size() == 2);
+        } finally {
+            tail.dispose();
+        }
+
+        assertEquals(List.of(created, updated), events);
+    }
+
+    @Test
+    void givenHalfWrittenLine_whenTailing_thenEmitItOnceComplete() throws Exception {
+        Path path = dir.resolve("events.ndjson");
+        String line = line(updated);
+        append(path, line(created) + line.substring(0, 20));
+        List<OutageEvent> events = new CopyOnWriteArrayList<>();
+
+        Disposable tail = source(path).events().subscribe(events::add);
+        try {
+            await(() -> events.size() == 1);
+            Thread.sleep(50);
+            assertEquals(1, events.size());
+
+            append(path, line.substring(20));
+            await(() -> events.size() == 2);
+        } finally {
+            tail.dispose();
+        }
+
+        assertEquals(List.of(created, updated), events);
+    }
+
+    @Test
+    void givenUndecodableLineAndMissingFile_whenTailing_thenSkipLineAndWaitForFile() throws Exception {
+        Path path = dir.resolve("events.ndjson");
+        List<OutageEvent> events = new CopyOnWriteArrayList<>();
+
+        Disposable tail = source(path).events().subscribe(events::add);
+        try {
+            Thread.sleep(50);
+            append(path, "not json\n\n" + line(created));
+            await(() -> events.size() == 1);
+        } finally {
+            tail.dispose();
+        }
+
+        assertEquals(List.of(created), events);
+    }
+
+    @Test
+    void givenFileReplacedWithShorterOne_whenTailing_thenReadFromStart() throws Exception {
+        Path path = dir.resolve("events.ndjson");
+        append(path, line(created) + line(created));
+        List<OutageEvent> events = new CopyOnWriteArrayList<>();
+
+        Disposable tail = source(path).events().subscribe(events::add);
+        try {
+            await(() -> events.size() == 2);
+            Files.writeString(path, line(updated), StandardOpenOption.TRUNCATE_EXISTING);
+            await(() -> events.size() == 3);
+        } finally {
+            tail.dispose();
+        }
+
+        assertEquals(updated, events.get(2));
+    }
+
+    private FileOutageEventSource source(Path path){
+        return new FileOutageEventSource(mapper, path, Duration.ofMillis(10));
+    }
+
+    private String line(OutageEvent event) throws IOException {
+        return mapper.writeValueAsString(event) + "\n";
+    }
+
+    private static void append(Path path, String content) throws IOException {
+        Files.writeString(path, content, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out waiting for events");
+            Thread.sleep(5);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.example.siteoutageservice.ingest;
+
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.OutageEvent;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.publish.OutagePublisher;
+import com.example.siteoutageservice.publish.PublishFingerprintStore;
+import com.example.siteoutageservice.publish.PublishOutbox;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.ParallelJoin;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutageEventIngestorTest {
+
+    @Mock
+    private KrakenWebClient webClient;
+
+    private final QueueOutageEventSource eventSource = new QueueOutageEventSource(100);
+
+    private final Device device1 = Device.builder().id("device1-id").name("device1").build();
+    private final Device device2 = Device.builder().id("device2-id").name("device2").build();
+
+    private final Outage outage1 = Outage.builder().id("device1-id").begin("2022-02-01T00:00:00.000Z").end(null).build();
+    private final Outage outage2 = Outage.builder().id("device2-id").begin("2022-03-01T00:00:00.000Z").end("2022-03-02T00:00:00.000Z").build();
+
+    private OutageEventIngestor ingestor;
+
+    @BeforeEach
+    void setup(){
+        lenient().when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        lenient().when(webClient.getSiteInfoForAsync("site-b")).thenReturn(Mono.just(site("site-b", device1, device2)));
+        lenient().when(webClient.postOutagesForAsync(anyString(), anyList())).thenReturn(Mono.empty());
+        ingestor = ingestor(true);
+    }
+
+    @Test
+    void givenInitialLoad_whenLoading_thenPublishEverySiteFromOutages(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outage2)));
+
+        ingestor.load().block();
+
+        verify(webClient).postOutagesForAsync("site-a", List.of(new DeviceOutage(device1, outage1)));
+        verify(webClient).postOutagesForAsync("site-b", List.of(new DeviceOutage(device1, outage1), new DeviceOutage(device2, outage2)));
+    }
+
+    @Test
+    void givenEventForOneSitesDevice_whenApplying_thenPublishOnlyThatSiteWithUpdatedOutage(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outage2)));
+        ingestor.load().block();
+        clearInvocations(webClient);
+
+        Outage ended = Outage.builder().id("device2-id").begin("2022-03-01T00:00:00.000Z").end("2022-03-01T12:00:00.000Z").build();
+        ingestor.apply(List.of(new OutageEvent(OutageEvent.Type.UPDATED, ended))).block();
+
+        verify(webClient).postOutagesForAsync("site-b", List.of(new DeviceOutage(device1, outage1), new DeviceOutage(device2, ended)));
+        verify(webClient, never()).postOutagesForAsync(eq("site-a"), anyList());
+        verify(webClient, never()).getOutagesAsync();
+    }
+
+    @Test
+    void givenUnchangedOrFilteredOutOrUnknownEvents_whenApplying_thenPublishNothing(){
+        ingestor = ingestor(false);
+        ingestor.load().block();
+        ingestor.apply(List.of(new OutageEvent(OutageEvent.Type.CREATED, outage1))).block();
+        clearInvocations(webClient);
+
+        ingestor.apply(Arrays.asList(
+                new OutageEvent(OutageEvent.Type.CREATED, outage1),
+                new OutageEvent(OutageEvent.Type.CREATED, Outage.builder().id("device1-id").begin("2021-06-01T00:00:00.000Z").build()),
+                new OutageEvent(OutageEvent.Type.CREATED, Outage.builder().id("other-device").begin("2022-06-01T00:00:00.000Z").build()),
+                new OutageEvent(OutageEvent.Type.CREATED, Outage.builder().id("device1-id").begin("not a time").build()),
+                new OutageEvent(OutageEvent.Type.CREATED, null))).block();
+
+        verify(webClient, never()).postOutagesForAsync(anyString(), anyList());
+        verify(webClient, never()).getOutagesAsync();
+    }
+
+    @Test
+    void givenPublishFails_whenApplyingNextBatch_thenPublishSiteAgain(){
+        ingestor = ingestor(false);
+        ingestor.load().block();
+        when(webClient.postOutagesForAsync(eq("site-a"), anyList()))
+                .thenReturn(Mono.error(new KrakenServerException("unavailable", 503)))
+                .thenReturn(Mono.empty());
+
+        ingestor.apply(List.of(new OutageEvent(OutageEvent.Type.CREATED, outage1))).block();
+        ingestor.apply(List.of(new OutageEvent(OutageEvent.Type.CREATED, outage2))).block();
+
+        verify(webClient, times(2)).postOutagesForAsync("site-a", List.of(new DeviceOutage(device1, outage1)));
+    }
+
+    @Test
+    void givenUnknownSite_whenLoading_thenLeaveItOut(){
+        ingestor = new OutageEventIngestor(webClient, outageDetailService(), publisher(), eventSource,
+                Arrays.asList("site-a", "site-c"), "", false, 10, Duration.ofMillis(10), 2, Duration.ofMinutes(1));
+        when(webClient.getSiteInfoForAsync("site-c")).thenReturn(Mono.error(new KrakenClientException("not found", 404)));
+
+        ingestor.load().block();
+        ingestor.apply(List.of(new OutageEvent(OutageEvent.Type.CREATED, outage1))).block();
+
+        verify(webClient).postOutagesForAsync("site-a", List.of(new DeviceOutage(device1, outage1)));
+        verify(webClient, times(1)).postOutagesForAsync(anyString(), anyList());
+    }
+
+    @Test
+    void givenStarted_whenEventQueued_thenPublishAffectedSites(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(List.of(outage1)));
+
+        ingestor.start();
+        try {
+            assertTrue(eventSource.offer(new OutageEvent(OutageEvent.Type.CREATED, outage2)));
+
+            verify(webClient, timeout(2000)).postOutagesForAsync("site-b", List.of(new DeviceOutage(device1, outage1), new DeviceOutage(device2, outage2)));
+            assertTrue(ingestor.isRunning());
+        } finally {
+            ingestor.stop();
+        }
+        verify(webClient, times(1)).postOutagesForAsync(eq("site-a"), anyList());
+    }
+
+    @Test
+    void givenPublishFailsAndNoMoreEvents_whenRetryIntervalPasses_thenPublishSiteAgain(){
+        ingestor = ingestor(false, eventSource, Duration.ofMillis(50));
+        when(webClient.postOutagesForAsync(eq("site-a"), anyList()))
+                .thenReturn(Mono.error(new KrakenServerException("unavailable", 503)))
+                .thenReturn(Mono.empty());
+
+        ingestor.start();
+        try {
+            assertTrue(eventSource.offer(new OutageEvent(OutageEvent.Type.CREATED, outage1)));
+
+            verify(webClient, timeout(2000).times(2)).postOutagesForAsync("site-a", List.of(new DeviceOutage(device1, outage1)));
+        } finally {
+            ingestor.stop();
+        }
+        verify(webClient, times(1)).postOutagesForAsync(eq("site-b"), anyList());
+    }
+
+    @Test
+    void givenEventSourceFails_whenStarted_thenSubscribeAgainAndKeepIngesting(){
+        AtomicInteger subscriptions = new AtomicInteger();
+        OutageEventSource failingOnce = () -> Flux.defer(() -> subscriptions.getAndIncrement() == 0
+                ? Flux.error(new IllegalStateException("broken"))
+                : eventSource.events());
+        ingestor = ingestor(false, failingOnce, Duration.ofMinutes(1));
+
+        ingestor.start();
+        try {
+            assertTrue(eventSource.offer(new OutageEvent(OutageEvent.Type.CREATED, outage1)));
+
+            verify(webClient, timeout(5000)).postOutagesForAsync("site-a", List.of(new DeviceOutage(device1, outage1)));
+            assertEquals(2, subscriptions.get());
+        } finally {
+            ingestor.stop();
+        }
+    }
+
+    @Test
+    void givenSlowPublish_whenManyBatchesArriveMeanwhile_thenQueueThemWithoutSubscribingAgain() throws InterruptedException {
+        AtomicInteger subscriptions = new AtomicInteger();
+        OutageEventSource counting = () -> Flux.defer(() -> {
+            subscriptions.incrementAndGet();
+            return eventSource.events();
+        });
+        ingestor = ingestor(false, counting, Duration.ofMinutes(1));
+        when(webClient.postOutagesForAsync(eq("site-a"), anyList()))
+                .thenReturn(Mono.delay(Duration.ofSeconds(1)).then())
+                .thenReturn(Mono.empty());
+
+        ingestor.start();
+        try {
+            //each event lands in its own 10ms batch, far more than are prefetched while the first publish stalls
+            Outage last = null;
+            for (int day = 1; day <= 50; day++) {
+                last = Outage.builder().id("device1-id").begin(String.format("2022-02-%02dT00:00:00.000Z", (day - 1) % 28 + 1))
+                        .end(String.format("2022-02-%02dT01:%02d:00.000Z", (day - 1) % 28 + 1, day)).build();
+                assertTrue(eventSource.offer(new OutageEvent(OutageEvent.Type.UPDATED, last)));
+                Thread.sleep(15);
+            }
+
+            DeviceOutage latest = new DeviceOutage(device1, last);
+            verify(webClient, timeout(5000).atLeastOnce()).postOutagesForAsync(eq("site-a"), ArgumentMatchers.<List<DeviceOutage>>argThat(outages -> outages.contains(latest)));
+            assertEquals(1, subscriptions.get());
+        } finally {
+            ingestor.stop();
+        }
+    }
+
+    @Test
+    void givenSubscriberLeft_whenSubscribingAgain_thenReceiveEventsOfferedInBetween(){
+        QueueOutageEventSource queue = new QueueOutageEventSource(10);
+        assertTrue(queue.offer(new OutageEvent(OutageEvent.Type.CREATED, outage1)));
+        assertEquals(outage1, queue.events().blockFirst().outage());
+
+        assertTrue(queue.offer(new OutageEvent(OutageEvent.Type.CREATED, outage2)));
+
+        assertEquals(outage2, queue.events().blockFirst(Duration.ofSeconds(2)).outage());
+    }
+
+    @Test
+    void givenFullQueue_whenOffering_thenRefuseEvent(){
+        QueueOutageEventSource queue = new QueueOutageEventSource(1);
+
+        assertTrue(queue.offer(new OutageEvent(OutageEvent.Type.CREATED, outage1)));
+        assertFalse(queue.offer(new OutageEvent(OutageEvent.Type.CREATED, outage2)));
+    }
+
+    private OutageEventIngestor ingestor(boolean initialLoad){
+        return ingestor(initialLoad, eventSource, Duration.ofMinutes(1));
+    }
+
+    private OutageEventIngestor ingestor(boolean initialLoad, OutageEventSource source, Duration retryInterval){
+        return new OutageEventIngestor(webClient, outageDetailService(), publisher(), source,
+                Arrays.asList("site-a", "site-b"), "", initialLoad, 10, Duration.ofMillis(10), 2, retryInterval);
+    }
+
+    private OutageDetailService outageDetailService(){
+        return new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+    }
+
+    private OutagePublisher publisher(){
+        OutageDetailService outageDetailService = outageDetailService();
+        PublishFingerprintStore fingerprintStore = new PublishFingerprintStore(false, Path.of("unused"));
+        return new OutagePublisher(outageDetailService, fingerprintStore,
+                new PublishOutbox(outageDetailService, fingerprintStore, KrakenMetrics.disabled(), Jackson2ObjectMapperBuilder.json().build(), false, Path.of("unused"), false, 1, Duration.ofSeconds(1), Duration.ofSeconds(1)));
+    }
+
+    private Site site(String id, Device... devices){
+        return Site.builder()
+                .id(id)
+                .name(id)
+                .devices(Arrays.asList(devices))
+                .build();
+    }
+}
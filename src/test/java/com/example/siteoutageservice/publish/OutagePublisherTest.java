@@ -0,0 +1,135 @@
+package com.example.siteoutageservice.publish;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.ParallelJoin;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutagePublisherTest {
+
+    @Mock
+    private KrakenWebClient webClient;
+
+    @TempDir
+    Path dir;
+
+    private OutageDetailService outageDetailService;
+
+    private final DeviceOutage outage1 = new DeviceOutage("device-1", "Battery 1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z");
+    private final DeviceOutage outage2 = new DeviceOutage("device-2", "Battery 2", "2022-02-01T00:00:00.000Z", "2022-02-02T00:00:00.000Z");
+
+    @BeforeEach
+    void setup(){
+        outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+    }
+
+    @Test
+    void givenUnchangedOutages_whenPublishingAgain_thenSkipPost(){
+        OutagePublisher publisher = publisher();
+
+        assertTrue(publisher.publishDeviceOutages("site-1", Arrays.asList(outage1, outage2)));
+        assertFalse(publisher.publishDeviceOutages("site-1", Arrays.asList(outage2, outage1)));
+
+        verify(webClient, times(1)).postOutagesFor(eq("site-1"), anyList());
+    }
+
+    @Test
+    void givenChangedOutages_whenPublishingAgain_thenPost(){
+        OutagePublisher publisher = publisher();
+
+        assertTrue(publisher.publishDeviceOutages("site-1", List.of(outage1)));
+        assertTrue(publisher.publishDeviceOutages("site-1", Arrays.asList(outage1, outage2)));
+        assertTrue(publisher.publishDeviceOutages("site-2", Arrays.asList(outage1, outage2)));
+
+        verify(webClient, times(3)).postOutagesFor(anyString(), anyList());
+    }
+
+    @Test
+    void givenFingerprintsPersisted_whenRestarting_thenSkipUnchangedSites(){
+        publisher().publishDeviceOutages("site-1", List.of(outage1));
+        publisher().publishDeviceOutages("site-1", List.of(outage2));
+
+        OutagePublisher restarted = publisher();
+
+        assertFalse(restarted.publishDeviceOutages("site-1", List.of(outage2)));
+        assertTrue(restarted.publishDeviceOutages("site-1", List.of(outage1)));
+        verify(webClient, times(3)).postOutagesFor(eq("site-1"), anyList());
+    }
+
+    @Test
+    void givenClosedStore_whenRecordingAgain_thenReopenAndPersist(){
+        PublishFingerprintStore store = new PublishFingerprintStore(true, dir.resolve("fingerprints.log"));
+        store.record("site-1", 1);
+        store.close();
+        store.close();
+
+        store.record("site-2", 2);
+        store.close();
+
+        PublishFingerprintStore reloaded = new PublishFingerprintStore(true, dir.resolve("fingerprints.log"));
+        assertTrue(reloaded.isUnchanged("site-1", 1));
+        assertTrue(reloaded.isUnchanged("site-2", 2));
+    }
+
+    @Test
+    void givenPostFails_whenPublishingAsync_thenDoNotRecordAndPostNextTime(){
+        OutagePublisher publisher = publisher();
+        when(webClient.postOutagesForAsync(eq("site-1"), anyList()))
+                .thenReturn(Mono.error(new KrakenServerException("down", 503)))
+                .thenReturn(Mono.empty());
+
+        assertThrows(KrakenServerException.class, () -> publisher.publishDeviceOutagesAsync("site-1", List.of(outage1)).block());
+        assertEquals(Boolean.TRUE, publisher.publishDeviceOutagesAsync("site-1", List.of(outage1)).block());
+        assertEquals(Boolean.FALSE, publisher.publishDeviceOutagesAsync("site-1", List.of(outage1)).block());
+
+        verify(webClient, times(2)).postOutagesForAsync(eq("site-1"), anyList());
+    }
+
+    @Test
+    void givenIncrementalDisabled_whenPublishingUnchangedOutages_thenAlwaysPost(){
+        OutagePublisher publisher = publisher(new PublishFingerprintStore(false, dir.resolve("fingerprints.log")));
+
+        assertTrue(publisher.publishDeviceOutages("site-1", Collections.emptyList()));
+        assertTrue(publisher.publishDeviceOutages("site-1", Collections.emptyList()));
+
+        verify(webClient, times(2)).postOutagesFor("site-1", Collections.emptyList());
+    }
+
+    @Test
+    void givenSameRecordsInAnyOrder_whenFingerprinting_thenMatch(){
+        DeviceOutage shifted = new DeviceOutage("device-1", "Battery", " 1", outage1.begin());
+
+        assertEquals(PublishFingerprintStore.fingerprint(Arrays.asList(outage1, outage2)), PublishFingerprintStore.fingerprint(Arrays.asList(outage2, outage1)));
+        assertNotEquals(PublishFingerprintStore.fingerprint(List.of(outage1)), PublishFingerprintStore.fingerprint(List.of(shifted)));
+        assertNotEquals(PublishFingerprintStore.fingerprint(List.of(outage1)), PublishFingerprintStore.fingerprint(Arrays.asList(outage1, outage1)));
+    }
+
+    private OutagePublisher publisher(){
+        return publisher(new PublishFingerprintStore(true, dir.resolve("fingerprints.log")));
+    }
+
+    private OutagePublisher publisher(final PublishFingerprintStore fingerprintStore){
+        return new OutagePublisher(outageDetailService, fingerprintStore,
+                new PublishOutbox(outageDetailService, fingerprintStore, KrakenMetrics.disabled(), Jackson2ObjectMapperBuilder.json().build(), false, Path.of("unused"), false, 1, Duration.ofSeconds(1), Duration.ofSeconds(1)));
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.siteoutageservice.publish;
+
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.ParallelJoin;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PublishOutboxTest {
+
+    @Mock
+    private KrakenWebClient webClient;
+
+    @TempDir
+    Path dir;
+
+    private final List<PublishOutbox> outboxes = new ArrayList<>();
+
+    private final DeviceOutage outage1 = new DeviceOutage("device-1", "Battery 1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z");
+    private final DeviceOutage outage2 = new DeviceOutage("device-2", "Battery 2", "2022-02-01T00:00:00.000Z", "2022-02-02T00:00:00.000Z");
+
+    private OutageDetailService outageDetailService;
+    private PublishFingerprintStore fingerprintStore;
+
+    @BeforeEach
+    void setup(){
+        outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        fingerprintStore = new PublishFingerprintStore(true, dir.resolve("fingerprints.log"));
+    }
+
+    @AfterEach
+    void tearDown(){
+        outboxes.forEach(PublishOutbox::stop);
+    }
+
+    @Test
+    void givenQueuedOutages_whenDraining_thenPostAndRecordFingerprint() throws Exception {
+        when(webClient.postOutagesForAsync(eq("site-1"), anyList())).thenReturn(Mono.empty());
+        PublishOutbox outbox = started(outbox());
+
+        outbox.enqueue("site-1", List.of(outage1));
+
+        assertTrue(outbox.awaitDrained(Duration.ofSeconds(5)));
+        verify(webClient).postOutagesForAsync("site-1", List.of(outage1));
+        assertTrue(fingerprintStore.isUnchanged("site-1", PublishFingerprintStore.fingerprint(List.of(outage1))));
+        assertEquals(0, outbox().pendingCount());
+    }
+
+    @Test
+    void givenUndeliveredOutages_whenRestarting_thenPostThemWithoutRequeueing() throws Exception {
+        outbox().enqueue("site-1", List.of(outage1, outage2));
+        when(webClient.postOutagesForAsync(eq("site-1"), anyList())).thenReturn(Mono.empty());
+
+        PublishOutbox restarted = outbox();
+        assertEquals(1, restarted.pendingCount());
+        started(restarted);
+
+        assertTrue(restarted.awaitDrained(Duration.ofSeconds(5)));
+        verify(webClient).postOutagesForAsync("site-1", List.of(outage1, outage2));
+    }
+
+    @Test
+    void givenNewerOutagesQueuedBeforeDraining_whenDraining_thenPostOnlyNewest() throws Exception {
+        when(webClient.postOutagesForAsync(eq("site-1"), anyList())).thenReturn(Mono.empty());
+        PublishOutbox outbox = outbox();
+
+        outbox.enqueue("site-1", List.of(outage1));
+        outbox.enqueue("site-1", List.of(outage2));
+        started(outbox);
+
+        assertTrue(outbox.awaitDrained(Duration.ofSeconds(5)));
+        verify(webClient).postOutagesForAsync("site-1", List.of(outage2));
+        verify(webClient, times(1)).postOutagesForAsync(eq("site-1"), anyList());
+    }
+
+    @Test
+    void givenKrakenFailing_whenDraining_thenRetryWithBackoffUntilPosted() throws Exception {
+        when(webClient.postOutagesForAsync(eq("site-1"), anyList()))
+                .thenReturn(Mono.error(new KrakenServerException("down", 503)))
+                .thenReturn(Mono.error(new KrakenClientException("slow down", 429)))
+                .thenReturn(Mono.empty());
+        PublishOutbox outbox = started(outbox());
+
+        outbox.enqueue("site-1", List.of(outage1));
+
+        assertTrue(outbox.awaitDrained(Duration.ofSeconds(5)));
+        verify(webClient, times(3)).postOutagesForAsync("site-1", List.of(outage1));
+    }
+
+    @Test
+    void givenKrakenRejectsOutages_whenDraining_thenDropThem() throws Exception {
+        when(webClient.postOutagesForAsync(eq("site-1"), anyList())).thenReturn(Mono.error(new KrakenClientException("bad request", 400)));
+        PublishOutbox outbox = started(outbox());
+
+        outbox.enqueue("site-1", List.of(outage1));
+
+        assertTrue(outbox.awaitDrained(Duration.ofSeconds(5)));
+        verify(webClient, times(1)).postOutagesForAsync(eq("site-1"), anyList());
+        assertFalse(fingerprintStore.isUnchanged("site-1", PublishFingerprintStore.fingerprint(List.of(outage1))));
+        assertEquals(0, outbox().pendingCount());
+    }
+
+    @Test
+    void givenLineCutShortByCrash_whenRestarting_thenSkipItAndKeepEarlierOutages() throws IOException {
+        outbox().enqueue("site-1", List.of(outage1));
+        Files.writeString(dir.resolve("outbox.ndjson"), "{\"type\":\"PENDING\",\"seq\":2,\"siteId\":\"site-2\",\"outa",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        PublishOutbox restarted = outbox();
+
+        assertEquals(1, restarted.pendingCount());
+        assertEquals(1, Files.readAllLines(dir.resolve("outbox.ndjson")).size());
+    }
+
+    @Test
+    void givenOutboxEnabled_whenPublishing_thenQueueInsteadOfPosting(){
+        PublishOutbox outbox = outbox();
+        OutagePublisher publisher = new OutagePublisher(outageDetailService, fingerprintStore, outbox);
+
+        assertTrue(publisher.publishDeviceOutages("site-1", List.of(outage1)));
+        assertEquals(Boolean.TRUE, publisher.publishDeviceOutagesAsync("site-2", List.of(outage2)).block());
+
+        assertEquals(2, outbox.pendingCount());
+        verifyNoInteractions(webClient);
+    }
+
+    @Test
+    void givenOlderOutagesPendingAfterLastDelivery_whenPublishingLastDeliveredAgain_thenQueueThemToReplacePending() throws Exception {
+        when(webClient.postOutagesForAsync(eq("site-1"), anyList())).thenReturn(Mono.empty());
+        fingerprintStore.record("site-1", PublishFingerprintStore.fingerprint(List.of(outage1)));
+        PublishOutbox outbox = outbox();
+        OutagePublisher publisher = new OutagePublisher(outageDetailService, fingerprintStore, outbox);
+        outbox.enqueue("site-1", List.of(outage2));
+
+        assertTrue(publisher.publishDeviceOutages("site-1", List.of(outage1)));
+        started(outbox);
+
+        assertTrue(outbox.awaitDrained(Duration.ofSeconds(5)));
+        verify(webClient).postOutagesForAsync("site-1", List.of(outage1));
+        verify(webClient, never()).postOutagesForAsync("site-1", List.of(outage2));
+        assertFalse(publisher.publishDeviceOutagesAsync("site-1", List.of(outage1)).block());
+    }
+
+    private PublishOutbox outbox(){
+        PublishOutbox outbox = new PublishOutbox(outageDetailService, fingerprintStore, KrakenMetrics.disabled(), Jackson2ObjectMapperBuilder.json().build(), true, dir.resolve("outbox.ndjson"),
+                true, 2, Duration.ofMillis(10), Duration.ofMillis(50));
+        outboxes.add(outbox);
+        return outbox;
+    }
+
+    private PublishOutbox started(PublishOutbox outbox){
+        outbox.start();
+        return outbox;
+    }
+}
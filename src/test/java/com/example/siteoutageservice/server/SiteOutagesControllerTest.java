@@ -0,0 +1,182 @@
+package com.example.siteoutageservice.server;
+
+import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceOutage;
+import com.example.siteoutageservice.dto.ErrorMessage;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import com.example.siteoutageservice.service.ParallelJoin;
+import com.example.siteoutageservice.snapshot.OutageSnapshotStore;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import reactor.core.publisher.Mono;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class SiteOutagesControllerTest {
+
+    @Mock
+    private KrakenWebClient webClient;
+
+    private OutageDetailService outageDetailService;
+    private OutageIndexProvider outageIndexProvider;
+    private OutageQueryCache outageQueryCache;
+    private WebTestClient client;
+
+    private final Device device1 = Device.builder().id("device1-id").name("device1").build();
+    private final Device device2 = Device.builder().id("device2-id").name("device2").build();
+
+    private final Outage outage1 = Outage.builder().id("device1-id").begin("2022-02-01T00:00:00.000Z").end("2022-02-02T00:00:00.000Z").build();
+    private final Outage outage2 = Outage.builder().id("device2-id").begin("2022-03-01T00:00:00.000Z").end("2022-03-02T00:00:00.000Z").build();
+    private final Outage outageBefore = Outage.builder().id("device1-id").begin("2021-03-01T00:00:00.000Z").end("2021-03-02T00:00:00.000Z").build();
+
+    @BeforeEach
+    void setup(){
+        outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        outageIndexProvider = new OutageIndexProvider(webClient, outageDetailService, new OutageSnapshotStore(false, Path.of("unused"), Duration.ZERO), false);
+        outageQueryCache = new OutageQueryCache(webClient, outageDetailService, outageIndexProvider, List.of("site-a"), Duration.ofMinutes(1), 2, Duration.ofHours(1));
+        client = WebTestClient.bindToController(new SiteOutagesController(outageQueryCache, outageDetailService)).build();
+    }
+
+    @Test
+    void givenRefreshedSite_whenQuerying_thenServeFromMemoryWithoutCallingKraken(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outageBefore, outage2)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1, device2)));
+        outageQueryCache.refresh().block();
+
+        assertEquals(List.of(new DeviceOutage(device1, outage1), new DeviceOutage(device2, outage2)), getOutages("/sites/site-a/outages"));
+        assertEquals(List.of(new DeviceOutage(device1, outageBefore)), getOutages("/sites/site-a/outages?since=2021-01-01T00:00:00.000Z&until=2022-01-01T00:00:00.000Z"));
+
+        verify(webClient, times(1)).getSiteInfoForAsync("site-a");
+    }
+
+    @Test
+    void givenSiteNotSeenYet_whenQuerying_thenFetchItOnceAndKeepIt(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outage2)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        when(webClient.getSiteInfoForAsync("site-b")).thenReturn(Mono.just(site("site-b", device2)));
+        outageQueryCache.refresh().block();
+
+        assertEquals(List.of(new DeviceOutage(device2, outage2)), getOutages("/sites/site-b/outages"));
+        assertEquals(List.of(new DeviceOutage(device2, outage2)), getOutages("/sites/site-b/outages"));
+
+        verify(webClient, times(1)).getSiteInfoForAsync("site-b");
+        assertEquals(2, outageQueryCache.siteCount());
+    }
+
+    @Test
+    void givenUnknownSite_whenQuerying_thenRespond404AndDoNotKeepIt(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(List.of(outage1)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        when(webClient.getSiteInfoForAsync("site-x")).thenReturn(Mono.error(new KrakenClientException("not found", 404)));
+        outageQueryCache.refresh().block();
+
+        client.get().uri("/sites/site-x/outages").exchange()
+                .expectStatus().isNotFound();
+        assertEquals(1, outageQueryCache.siteCount());
+    }
+
+    @Test
+    void givenOutagesNotLoaded_whenQuerying_thenRespond503(){
+        client.get().uri("/sites/site-a/outages").exchange()
+                .expectStatus().isEqualTo(503);
+    }
+
+    @Test
+    void givenUnexpectedIllegalState_whenQuerying_thenRespond500(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(List.of(outage1)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        when(webClient.getSiteInfoForAsync("site-b")).thenReturn(Mono.error(new IllegalStateException("bug")));
+        outageQueryCache.refresh().block();
+
+        client.get().uri("/sites/site-b/outages").exchange()
+                .expectStatus().isEqualTo(500);
+    }
+
+    @Test
+    void givenInvalidSince_whenQuerying_thenRespond400(){
+        client.get().uri("/sites/site-a/outages?since=yesterday").exchange()
+                .expectStatus().isBadRequest()
+                .expectBody(ErrorMessage.class);
+    }
+
+    @Test
+    void givenRefreshFails_whenQuerying_thenKeepServingPreviousData(){
+        when(webClient.getOutagesAsync())
+                .thenReturn(Mono.just(List.of(outage1)))
+                .thenReturn(Mono.error(new KrakenServerException("down", 503)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        outageQueryCache.refresh().block();
+
+        outageQueryCache.refreshOnce();
+
+        assertEquals(List.of(new DeviceOutage(device1, outage1)), getOutages("/sites/site-a/outages"));
+    }
+
+    @Test
+    void givenSiteNotQueriedWithinIdleTimeout_whenRefreshing_thenDropItButKeepPreloadedSites() throws InterruptedException {
+        outageQueryCache = new OutageQueryCache(webClient, outageDetailService, outageIndexProvider, List.of("site-a"), Duration.ofMinutes(1), 2, Duration.ofMillis(50));
+        client = WebTestClient.bindToController(new SiteOutagesController(outageQueryCache, outageDetailService)).build();
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outage2)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        when(webClient.getSiteInfoForAsync("site-b")).thenReturn(Mono.just(site("site-b", device2)));
+        outageQueryCache.refresh().block();
+        getOutages("/sites/site-b/outages");
+        assertEquals(2, outageQueryCache.siteCount());
+
+        Thread.sleep(100);
+        outageQueryCache.refresh().block();
+
+        assertEquals(1, outageQueryCache.siteCount());
+        verify(webClient, times(2)).getSiteInfoForAsync("site-a");
+        verify(webClient, times(1)).getSiteInfoForAsync("site-b");
+    }
+
+    @Test
+    void givenSiteQueriedWithinIdleTimeout_whenRefreshing_thenKeepRefreshingIt(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outage1, outage2)));
+        when(webClient.getSiteInfoForAsync("site-a")).thenReturn(Mono.just(site("site-a", device1)));
+        when(webClient.getSiteInfoForAsync("site-b")).thenReturn(Mono.just(site("site-b", device2)));
+        outageQueryCache.refresh().block();
+        getOutages("/sites/site-b/outages");
+
+        outageQueryCache.refresh().block();
+
+        assertEquals(2, outageQueryCache.siteCount());
+        verify(webClient, times(2)).getSiteInfoForAsync("site-b");
+    }
+
+    private List<DeviceOutage> getOutages(String uri){
+        return client.get().uri(uri).exchange()
+                .expectStatus().isOk()
+                .expectBody(new ParameterizedTypeReference<List<DeviceOutage>>() {})
+                .returnResult()
+                .getResponseBody();
+    }
+
+    private Site site(String id, Device... devices){
+        return Site.builder()
+                .id(id)
+                .name(id)
+                .devices(Arrays.asList(devices))
+                .build();
+    }
+}
@@ -1,23 +1,33 @@
 package com.example.siteoutageservice.service;
 
 import com.example.siteoutageservice.dto.Device;
+import com.example.siteoutageservice.dto.DeviceDowntime;
 import com.example.siteoutageservice.dto.DeviceOutage;
 import com.example.siteoutageservice.dto.Outage;
 import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.dto.SiteOutages;
+import com.example.siteoutageservice.index.OutageIndex;
+import com.example.siteoutageservice.index.TimeWindow;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
 import com.example.siteoutageservice.web.KrakenWebClient;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
@@ -46,7 +56,7 @@ class OutageDetailServiceTest {
 
     @BeforeEach
     public void setup(){
-        outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z");
+        outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
 
         device1 = Device.builder()
                 .id(device1Id)
@@ -200,6 +210,225 @@ class OutageDetailServiceTest {
         assertEquals(expectedDeviceOutages, actualDeviceOutages);
     }
 
+    @Test
+    void givenOutageIndex_whenGettingOutages_thenMatchUnindexedResult() throws IOException {
+        List<Outage> outages = mapper.readValue(new File("src/test/resources/outages.json"), new TypeReference<>() {});
+        Site siteInfo = mapper.readValue(new File("src/test/resources/site-info-kingfisher.json"), Site.class);
+        when(webClient.getSiteInfoFor(siteId)).thenReturn(Optional.of(siteInfo));
+
+        List<DeviceOutage> expectedDeviceOutages = mapper.readValue(new File("src/test/resources/site-outages.json"), new TypeReference<>() {});
+
+        List<DeviceOutage> actualDeviceOutages = outageDetailService.getDeviceOutagesFor(siteId, outageDetailService.indexOutages(outages));
+
+        assertEquals(expectedDeviceOutages, actualDeviceOutages);
+        verify(webClient, never()).getOutages();
+    }
+
+    @Test
+    void givenSiteOutagesBeganBeforeAndAfter_whenGettingOutagesAsync_thenReturnSameAsBlocking() throws IOException {
+        List<Outage> outages = mapper.readValue(new File("src/test/resources/outages.json"), new TypeReference<>() {});
+        Site siteInfo = mapper.readValue(new File("src/test/resources/site-info-kingfisher.json"), Site.class);
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(Mono.just(siteInfo));
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(outages));
+
+        List<DeviceOutage> expectedDeviceOutages = mapper.readValue(new File("src/test/resources/site-outages.json"), new TypeReference<>() {});
+
+        List<DeviceOutage> actualDeviceOutages = outageDetailService.getDeviceOutagesForAsync(siteId).block();
+
+        assertEquals(expectedDeviceOutages, actualDeviceOutages);
+    }
+
+    @Test
+    void givenSiteOutagesBeganBeforeAndAfter_whenStreamingOutages_thenReturnSameAsBlocking() throws IOException {
+        List<Outage> outages = mapper.readValue(new File("src/test/resources/outages.json"), new TypeReference<>() {});
+        Site siteInfo = mapper.readValue(new File("src/test/resources/site-info-kingfisher.json"), Site.class);
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(Mono.just(siteInfo));
+        when(webClient.streamOutages()).thenReturn(Flux.fromIterable(outages));
+
+        List<DeviceOutage> expectedDeviceOutages = mapper.readValue(new File("src/test/resources/site-outages.json"), new TypeReference<>() {});
+
+        List<DeviceOutage> actualDeviceOutages = outageDetailService.streamDeviceOutagesForAsync(siteId).block();
+
+        assertEquals(expectedDeviceOutages, actualDeviceOutages);
+    }
+
+    @Test
+    void givenSiteIdDoesNotExist_whenStreamingOutages_thenReturnEmptyList(){
+        when(webClient.streamOutages()).thenReturn(Flux.just(outageJustAfter, outageWayAfter));
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(Mono.empty());
+
+        List<DeviceOutage> outages = outageDetailService.streamDeviceOutagesForAsync(siteId).block();
+
+        assertEquals(Collections.emptyList(), outages);
+    }
+
+    @Test
+    void givenOverlappingOutages_whenGettingDowntimeFromIndex_thenMergeIntervalsPerDevice(){
+        when(webClient.getSiteInfoFor(siteId)).thenReturn(Optional.of(site));
+        OutageIndex index = outageDetailService.indexOutages(Arrays.asList(
+                new Outage(device1Id, "2022-01-01T10:00:00.000Z", "2022-01-01T12:00:00.000Z"),
+                new Outage(device1Id, "2022-01-01T11:00:00.000Z", "2022-01-01T13:00:00.000Z"),
+                new Outage(device1Id, "2022-01-02T00:00:00.000Z", "2022-01-02T00:30:00.000Z"),
+                new Outage(device2Id, "2022-01-03T00:00:00.000Z", "2022-01-03T01:00:00.000Z"),
+                outageWayBefore));
+
+        List<DeviceDowntime> downtime = outageDetailService.getDeviceDowntimeFor(siteId, index, outageDetailService.getOutagesTimeFilter());
+
+        assertEquals(List.of(
+                new DeviceDowntime(device1Id, "device1", 3, 3 * 3_600_000L + 1_800_000L, 3 * 3_600_000L, List.of(
+                        new DeviceDowntime.Interval("2022-01-01T10:00:00.000Z", "2022-01-01T13:00:00.000Z"),
+                        new DeviceDowntime.Interval("2022-01-02T00:00:00.000Z", "2022-01-02T00:30:00.000Z"))),
+                new DeviceDowntime(device2Id, "device2", 1, 3_600_000L, 3_600_000L, List.of(
+                        new DeviceDowntime.Interval("2022-01-03T00:00:00.000Z", "2022-01-03T01:00:00.000Z")))),
+                downtime);
+    }
+
+    @Test
+    void givenSiteOutages_whenStreamingDowntime_thenReturnSameAsIndex() throws IOException {
+        List<Outage> outages = mapper.readValue(new File("src/test/resources/outages.json"), new TypeReference<>() {});
+        Site siteInfo = mapper.readValue(new File("src/test/resources/site-info-kingfisher.json"), Site.class);
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(Mono.just(siteInfo));
+        when(webClient.streamOutages()).thenReturn(Flux.fromIterable(outages));
+
+        List<DeviceDowntime> expected = outageDetailService.getDeviceDowntimeForAsync(siteId, outageDetailService.indexOutages(outages),
+                outageDetailService.getOutagesTimeFilter()).block();
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, outageDetailService.streamDeviceDowntimeForAsync(siteId).block());
+    }
+
+    @Test
+    void givenOutageIndex_whenGettingSiteOutages_thenReturnOutagesAndDowntimeFromOneSiteInfoCall() throws IOException {
+        List<Outage> outages = mapper.readValue(new File("src/test/resources/outages.json"), new TypeReference<>() {});
+        Site siteInfo = mapper.readValue(new File("src/test/resources/site-info-kingfisher.json"), Site.class);
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(Mono.just(siteInfo));
+        OutageIndex index = outageDetailService.indexOutages(outages);
+
+        List<DeviceOutage> expectedDeviceOutages = mapper.readValue(new File("src/test/resources/site-outages.json"), new TypeReference<>() {});
+
+        SiteOutages siteOutages = outageDetailService.getSiteOutagesForAsync(siteId, index, outageDetailService.getOutagesTimeFilter()).block();
+
+        assertEquals(expectedDeviceOutages, siteOutages.outages());
+        assertEquals(expectedDeviceOutages.size(), siteOutages.downtime().stream().mapToInt(DeviceDowntime::outageCount).sum());
+        verify(webClient, times(1)).getSiteInfoForAsync(siteId);
+    }
+
+    @Test
+    void givenStreamedOutages_whenIndexing_thenKeepEveryOutageInResponseOrder(){
+        OutageIndex index = outageDetailService.indexOutages(Flux.just(outageWayAfter, outageWayBefore, outageJustAfter, outageJustBefore)).block();
+
+        assertEquals(4, index.size());
+        assertEquals(Arrays.asList(outageWayAfter, outageWayBefore, outageJustAfter, outageJustBefore), index.outagesFor(Arrays.asList(device1Id, device2Id)));
+    }
+
+    @Test
+    void givenOutageWithUnparseableEnd_whenIndexing_thenSkipOnlyThatOutage(){
+        Outage badEnd = Outage.builder().id(device1Id).begin("2022-01-01T00:00:00.000Z").end("not a time").build();
+
+        OutageIndex index = outageDetailService.indexOutages(Arrays.asList(outageWayBefore, badEnd, outageWayAfter));
+        OutageIndex streamed = outageDetailService.indexOutages(Flux.just(outageWayBefore, badEnd, outageWayAfter)).block();
+
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList(outageWayBefore, outageWayAfter), index.outagesFor(Arrays.asList(device1Id, device2Id)));
+        assertEquals(2, streamed.size());
+    }
+
+    @Test
+    void givenOutagesWithUnparseableTimes_whenGettingOutagesInEveryMode_thenSkipThemAlike(){
+        Outage badBegin = Outage.builder().id(device1Id).begin("not a time").end("2022-01-02T00:00:00.000Z").build();
+        Outage badEnd = Outage.builder().id(device2Id).begin("2022-01-01T00:00:00.000Z").end("not a time").build();
+        List<Outage> outages = Arrays.asList(outageJustAfter, badBegin, badEnd, outageWayAfter);
+        when(webClient.getOutages()).thenReturn(outages);
+        when(webClient.streamOutages()).thenReturn(Flux.fromIterable(outages));
+        when(webClient.getSiteInfoFor(siteId)).thenReturn(Optional.of(site));
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(Mono.just(site));
+
+        List<DeviceOutage> expected = Arrays.asList(new DeviceOutage(device1, outageJustAfter), new DeviceOutage(device2, outageWayAfter));
+
+        assertEquals(expected, outageDetailService.getDeviceOutagesFor(siteId));
+        assertEquals(expected, outageDetailService.streamDeviceOutagesForAsync(siteId).block());
+        assertEquals(expected, outageDetailService.getDeviceOutagesFor(siteId, outageDetailService.indexOutages(outages)));
+    }
+
+    @Test
+    void givenTimeWindow_whenGettingOutagesFromIndex_thenReturnOnlyOutagesBeganInWindow(){
+        when(webClient.getSiteInfoFor(siteId)).thenReturn(Optional.of(site));
+        OutageIndex index = outageDetailService.indexOutages(Arrays.asList(
+                outageWayBefore, outageJustBefore, outageOverFilter, outageEqual, outageJustAfter, outageWayAfter));
+
+        TimeWindow window = TimeWindow.parse("2021-12-31T23:59:59.999Z", "2022-01-01T00:00:00.001Z");
+        List<DeviceOutage> outages = outageDetailService.getDeviceOutagesFor(siteId, index, window);
+
+        assertEquals(Arrays.asList(new DeviceOutage(device1, outageOverFilter), new DeviceOutage(device2, outageEqual)), outages);
+    }
+
+    @Test
+    void givenUpperTimeFilter_whenGettingOutages_thenExcludeOutagesBeganAtOrAfterIt(){
+        outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "2022-12-31T00:00:00.000Z", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        when(webClient.getOutages()).thenReturn(Arrays.asList(outageEqual, outageJustAfter, outageWayAfter));
+        when(webClient.getSiteInfoFor(siteId)).thenReturn(Optional.of(site));
+
+        List<DeviceOutage> outages = outageDetailService.getDeviceOutagesFor(siteId);
+
+        assertEquals(Arrays.asList(new DeviceOutage(device2, outageEqual), new DeviceOutage(device1, outageJustAfter)), outages);
+    }
+
+    @Test
+    void givenMetrics_whenGettingAndPublishingOutages_thenTimeEachStage(){
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        outageDetailService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", new KrakenMetrics(meterRegistry), 0, 1, ParallelJoin.disabled());
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outageWayBefore, outageEqual)));
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(Mono.just(site));
+        when(webClient.postOutagesForAsync(eq(siteId), anyList())).thenReturn(Mono.empty());
+
+        outageDetailService.getDeviceOutagesForAsync(siteId)
+                .flatMap(outages -> outageDetailService.publishDeviceOutagesAsync(siteId, outages))
+                .block();
+
+        assertEquals(1, meterRegistry.get("kraken.pipeline.stage").tag("stage", "filter").timer().count());
+        assertEquals(1, meterRegistry.get("kraken.pipeline.stage").tag("stage", "join").timer().count());
+        assertEquals(1, meterRegistry.get("kraken.pipeline.stage").tag("stage", "publish").timer().count());
+        assertEquals(0, meterRegistry.get("kraken.pipeline.stage").tag("stage", "index").timer().count());
+    }
+
+    @Test
+    void givenSiteIdDoesNotExist_whenGettingOutagesAsync_thenReturnEmptyList(){
+        when(webClient.getOutagesAsync()).thenReturn(Mono.just(Arrays.asList(outageOverFilter, outageEqual)));
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(Mono.empty());
+
+        List<DeviceOutage> outages = outageDetailService.getDeviceOutagesForAsync(siteId).block();
+
+        assertEquals(Collections.emptyList(), outages);
+    }
+
+    @Test
+    void givenSlowResponses_whenGettingOutagesAsync_thenBothRequestsAreInFlightTogether(){
+        Sinks.One<List<Outage>> outagesResponse = Sinks.one();
+        Sinks.One<Site> siteResponse = Sinks.one();
+        when(webClient.getOutagesAsync()).thenReturn(outagesResponse.asMono());
+        when(webClient.getSiteInfoForAsync(siteId)).thenReturn(siteResponse.asMono());
+
+        Mono<List<DeviceOutage>> result = outageDetailService.getDeviceOutagesForAsync(siteId).cache();
+        result.subscribe();
+
+        //neither response has arrived yet, but both requests have been subscribed to
+        assertEquals(1, outagesResponse.currentSubscriberCount());
+        assertEquals(1, siteResponse.currentSubscriberCount());
+
+        siteResponse.tryEmitValue(site);
+        outagesResponse.tryEmitValue(Collections.singletonList(outageWayAfter));
+
+        assertEquals(Collections.singletonList(new DeviceOutage(device2, outageWayAfter)), result.block());
+    }
+
+    @Test
+    void givenBlankSiteId_whenGettingOutagesAsync_thenThrowIllegalArgument(){
+        assertThrows(IllegalArgumentException.class,
+                () -> outageDetailService.getDeviceOutagesForAsync(" "));
+
+        verifyNoInteractions(webClient);
+    }
+
     @Test
     void givenMultipleDevicesWithSameId_whenGettingOutages_thenShouldUseFirstName(){
         //given - two devices with id=device2Id
@@ -265,6 +494,21 @@ class OutageDetailServiceTest {
         verify(webClient).postOutagesFor(siteId, deviceOutages);
     }
 
+    @Test
+    void givenMoreOutagesThanChunkSize_whenPublishingOutagesAsync_thenShouldPostInChunks(){
+        OutageDetailService chunkingService = new OutageDetailService(webClient, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 1, 4, ParallelJoin.disabled());
+        List<DeviceOutage> deviceOutages = Arrays.asList(
+                new DeviceOutage(device1, outageJustAfter),
+                new DeviceOutage(device2, outageWayAfter));
+        when(webClient.postOutagesInChunksAsync(eq(siteId), any(), eq(1), eq(4))).thenReturn(Mono.empty());
+
+        chunkingService.publishDeviceOutagesAsync(siteId, deviceOutages).block();
+        chunkingService.publishDeviceOutagesAsync(siteId, deviceOutages.subList(0, 1));
+
+        verify(webClient).postOutagesInChunksAsync(eq(siteId), any(), eq(1), eq(4));
+        verify(webClient).postOutagesForAsync(siteId, deviceOutages.subList(0, 1));
+    }
+
     @Test
     void givenSiteIdAndEmptyDeviceOutages_whenPublishingOutages_thenShouldPublishOutages(){
         List<DeviceOutage> deviceOutages = Collections.emptyList();
@@ -274,6 +518,20 @@ class OutageDetailServiceTest {
         verify(webClient).postOutagesFor(siteId, deviceOutages);
     }
 
+    @Test
+    void givenSiteIdAndDeviceOutages_whenPublishingOutagesAsync_thenShouldPublishOnSubscribe(){
+        List<DeviceOutage> deviceOutages = Collections.singletonList(new DeviceOutage(device1, outageJustAfter));
+        Sinks.Empty<Void> postResponse = Sinks.empty();
+        when(webClient.postOutagesForAsync(siteId, deviceOutages)).thenReturn(postResponse.asMono());
+
+        Mono<Void> publish = outageDetailService.publishDeviceOutagesAsync(siteId, deviceOutages);
+
+        assertEquals(0, postResponse.currentSubscriberCount());
+        publish.subscribe();
+        assertEquals(1, postResponse.currentSubscriberCount());
+        assertFalse(postResponse.tryEmitEmpty().isFailure());
+    }
+
     @Test
     void givenNullDeviceOutages_whenPublishingOutages_thenThrowIllegalArgument(){
         assertThrows(IllegalArgumentException.class,
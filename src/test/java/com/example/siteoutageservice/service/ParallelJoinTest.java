@@ -0,0 +1,49 @@
+package com.example.siteoutageservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParallelJoinTest {
+
+    private final ParallelJoin parallelJoin = new ParallelJoin(true, 4, 1000);
+
+    @AfterEach
+    void shutdown(){
+        parallelJoin.shutdown();
+    }
+
+    @Test
+    void givenListAboveThreshold_whenMapping_thenMatchSequentialOrderOnPoolThreads(){
+        List<Integer> items = IntStream.range(0, 100_000).boxed().toList();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        List<String> mapped = parallelJoin.map(items, i -> {
+            threads.add(Thread.currentThread().getName());
+            return i % 3 == 0 ? null : "item-" + i;
+        });
+
+        assertEquals(ParallelJoin.disabled().map(items, i -> i % 3 == 0 ? null : "item-" + i), mapped);
+        assertTrue(threads.stream().allMatch(name -> name.startsWith("outage-join-")));
+    }
+
+    @Test
+    void givenListBelowThreshold_whenMapping_thenMapOnCallingThread(){
+        List<Integer> items = IntStream.range(0, 999).boxed().toList();
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+
+        List<Integer> mapped = parallelJoin.map(items, i -> {
+            threads.add(Thread.currentThread().getName());
+            return i;
+        });
+
+        assertEquals(items, mapped);
+        assertEquals(Set.of(Thread.currentThread().getName()), threads);
+    }
+}
@@ -0,0 +1,376 @@
+package com.example.siteoutageservice.simulator;
+
+import com.example.siteoutageservice.dto.ErrorMessage;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Builder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+import reactor.netty.resources.LoopResources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+import static com.example.siteoutageservice.config.WebConfiguration.OUTAGES_ENDPOINT;
+import static com.example.siteoutageservice.config.WebConfiguration.SITE_INFO_ENDPOINT;
+import static com.example.siteoutageservice.config.WebConfiguration.SITE_OUTAGES_ENDPOINT;
+
+/**
+ * Local stand-in for Kraken serving {@code GET /outages}, {@code GET /site-info/{siteId}} and
+ * {@code POST /site-outages/{siteId}} over HTTP, for tests and load tests that need more than a few fixed bodies.
+ * <p>
+ * Sites, devices and outages are generated from {@link Settings#seed()}, so the same settings always serve the same
+ * data. Every request waits out a delay drawn from its endpoint's {@link Latency}, then fails with a 503 or a 429
+ * (with Retry-After) at the configured rates. Delays and failures are drawn in the order requests arrive.
+ * <p>
+ * The simulator runs on its own {@code kraken-sim} threads, so it can share a JVM with the application under test
+ * and still be told apart from it.
+ */
+public final class KrakenSimulator implements AutoCloseable {
+
+    public static final String THREAD_PREFIX = "kraken-sim";
+
+    private static final DateTimeFormatter KRAKEN_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+    private static final long FROM = Instant.parse("2021-01-01T00:00:00Z").toEpochMilli();
+    private static final long UNTIL = Instant.parse("2023-01-01T00:00:00Z").toEpochMilli();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final Settings settings;
+    private final byte[] outagesBody;
+    private final SplittableRandom faults;
+    private final Map<String, LongAdder> requests = new ConcurrentHashMap<>();
+    private final Map<Integer, LongAdder> failures = new ConcurrentHashMap<>();
+    private final Map<String, Integer> posted = new ConcurrentHashMap<>();
+    private final LoopResources loops;
+    private final Scheduler delays;
+    private final DisposableServer server;
+
+    private KrakenSimulator(final Settings settings){
+        Assert.isTrue(settings.siteCount() > 0, "siteCount must be greater than 0.");
+        Assert.isTrue(settings.devicesPerSite() > 0, "devicesPerSite must be greater than 0.");
+        Assert.isTrue(settings.outageCount() >= 0, "outageCount cannot be negative.");
+        Assert.isTrue(settings.serverErrorRate() + settings.tooManyRequestsRate() <= 1, "serverErrorRate and tooManyRequestsRate cannot add up to more than 1.");
+        this.settings = settings;
+        this.outagesBody = outagesBody(settings);
+        this.faults = new SplittableRandom(settings.seed() + 1);
+
+        this.loops = LoopResources.create(THREAD_PREFIX, LoopResources.DEFAULT_IO_WORKER_COUNT, true);
+        this.delays = Schedulers.newParallel(THREAD_PREFIX + "-delay", LoopResources.DEFAULT_IO_WORKER_COUNT, true);
+        this.server = HttpServer.create()
+                .host("localhost")
+                .port(settings.port())
+                .runOn(loops)
+                .route(routes -> routes
+                        .get(OUTAGES_ENDPOINT, this::getOutages)
+                        .get(SITE_INFO_ENDPOINT, this::getSiteInfo)
+                        .post(SITE_OUTAGES_ENDPOINT, this::postSiteOutages))
+                .bindNow();
+    }
+
+    public static KrakenSimulator start(final Settings settings){
+        return new KrakenSimulator(settings);
+    }
+
+    public String baseUrl(){
+        return "http://localhost:" + server.port();
+    }
+
+    public Settings settings(){
+        return settings;
+    }
+
+    public List<String> siteIds(){
+        return IntStream.range(0, settings.siteCount()).mapToObj(KrakenSimulator::siteId).toList();
+    }
+
+    public int outagesBodySize(){
+        return outagesBody.length;
+    }
+
+    /**
+     * @param endpoint one of the {@code WebConfiguration} endpoint templates
+     */
+    public long requestCount(final String endpoint){
+        final LongAdder count = requests.get(endpoint);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return failures injected with the given status, 503 or 429
+     */
+    public long failureCount(final int status){
+        final LongAdder count = failures.get(status);
+        return count == null ? 0 : count.sum();
+    }
+
+    /**
+     * @return the number of outages in the last accepted post for each site, by site id
+     */
+    public Map<String, Integer> posted(){
+        return Map.copyOf(posted);
+    }
+
+    @Override
+    public void close(){
+        server.disposeNow();
+        delays.dispose();
+        loops.dispose();
+    }
+
+    static String siteId(final int site){
+        return "site-" + site;
+    }
+
+    static String deviceId(final int site, final int device){
+        return "site-" + site + "-device-" + device;
+    }
+
+    private Mono<Void> getOutages(final HttpServerRequest request, final HttpServerResponse response){
+        return respond(OUTAGES_ENDPOINT, request, response, settings.outagesLatency(), () -> outagesBody);
+    }
+
+    private Mono<Void> getSiteInfo(final HttpServerRequest request, final HttpServerResponse response){
+        final int site = siteIndex(request.param("siteId"));
+        return respond(SITE_INFO_ENDPOINT, request, response, settings.siteInfoLatency(),
+                site < 0 ? null : () -> siteBody(site));
+    }
+
+    /**
+     * The body is read before the delay, as Kraken has to receive a post before it can answer it.
+     */
+    private Mono<Void> postSiteOutages(final HttpServerRequest request, final HttpServerResponse response){
+        final String siteId = request.param("siteId");
+        final int site = siteIndex(siteId);
+        return request.receive().aggregate().asByteArray()
+                .defaultIfEmpty(new byte[0])
+                .flatMap(body -> respond(SITE_OUTAGES_ENDPOINT, request, response, settings.siteOutagesLatency(),
+                        site < 0 ? null : () -> {
+                            posted.put(siteId, outageCount(body));
+                            return new byte[0];
+                        }));
+    }
+
+    /**
+     * @param body the success body, or null when the site is unknown
+     */
+    private Mono<Void> respond(final String endpoint, final HttpServerRequest request, final HttpServerResponse response,
+                               final Latency latency, final Supplier<byte[]> body){
+        requests.computeIfAbsent(endpoint, key -> new LongAdder()).increment();
+        if (!request.requestHeaders().contains("x-api-key")) {
+            return send(response, HttpStatus.FORBIDDEN, error("Forbidden"));
+        }
+
+        final long delay;
+        final double fault;
+        synchronized (faults) {
+            delay = latency.sampleNanos(faults);
+            fault = faults.nextDouble();
+        }
+
+        return Mono.delay(Duration.ofNanos(delay), delays)
+                .then(Mono.defer(() -> {
+                    if (fault < settings.serverErrorRate()) {
+                        return fail(response, HttpStatus.SERVICE_UNAVAILABLE);
+                    } else if (fault < settings.serverErrorRate() + settings.tooManyRequestsRate()) {
+                        response.header(HttpHeaders.RETRY_AFTER, Long.toString(settings.retryAfter().toSeconds()));
+                        return fail(response, HttpStatus.TOO_MANY_REQUESTS);
+                    }
+                    return body == null
+                            ? send(response, HttpStatus.NOT_FOUND, error("Site not found"))
+                            : send(response, HttpStatus.OK, body.get());
+                }));
+    }
+
+    private Mono<Void> fail(final HttpServerResponse response, final HttpStatus status){
+        failures.computeIfAbsent(status.value(), key -> new LongAdder()).increment();
+        return send(response, status, error(status.getReasonPhrase()));
+    }
+
+    private static Mono<Void> send(final HttpServerResponse response, final HttpStatus status, final byte[] body){
+        return response.status(status.value())
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .sendByteArray(Mono.just(body))
+                .then();
+    }
+
+    private byte[] error(final String message){
+        try {
+            return mapper.writeValueAsBytes(new ErrorMessage(message));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private int siteIndex(final String siteId){
+        if (siteId == null || !siteId.startsWith("site-")) {
+            return -1;
+        }
+        try {
+            final int site = Integer.parseInt(siteId.substring("site-".length()));
+            return site < settings.siteCount() && siteId.equals(siteId(site)) ? site : -1;
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+
+    private int outageCount(final byte[] body){
+        try {
+            return body.length == 0 ? 0 : mapper.readTree(body).size();
+        } catch (IOException ex) {
+            return -1;
+        }
+    }
+
+    private byte[] siteBody(final int site){
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64 + settings.devicesPerSite() * (48 + settings.paddingBytes()));
+        try (JsonGenerator json = mapper.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("id", siteId(site));
+            json.writeStringField("name", "Site " + site);
+            json.writeArrayFieldStart("devices");
+            for (int device = 0; device < settings.devicesPerSite(); device++) {
+                json.writeStartObject();
+                json.writeStringField("id", deviceId(site, device));
+                json.writeStringField("name", "Device " + device);
+                writePadding(json, settings.paddingBytes());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+            json.writeEndObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Outages spread evenly over 2021-2022, so about half are before the default time filter. {@link Settings#matchRatio()}
+     * of them belong to a device of a simulated site, the rest to devices no site has. One in fifty is still ongoing.
+     */
+    private byte[] outagesBody(final Settings settings){
+        final SplittableRandom random = new SplittableRandom(settings.seed());
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(32, settings.outageCount() * (110 + settings.paddingBytes())));
+        try (JsonGenerator json = mapper.getFactory().createGenerator(out)) {
+            json.writeStartArray();
+            for (int i = 0; i < settings.outageCount(); i++) {
+                final String id = random.nextDouble() < settings.matchRatio()
+                        ? deviceId(random.nextInt(settings.siteCount()), random.nextInt(settings.devicesPerSite()))
+                        : "unknown-device-" + random.nextInt(Math.max(1_000, settings.outageCount() / 10));
+                final long begin = random.nextLong(FROM, UNTIL);
+                final long end = begin + random.nextLong(60_000L, 7 * 86_400_000L);
+
+                json.writeStartObject();
+                json.writeStringField("id", id);
+                json.writeStringField("begin", KRAKEN_FORMAT.format(Instant.ofEpochMilli(begin)));
+                if (random.nextInt(50) == 0) {
+                    json.writeNullField("end");
+                } else {
+                    json.writeStringField("end", KRAKEN_FORMAT.format(Instant.ofEpochMilli(end)));
+                }
+                writePadding(json, settings.paddingBytes());
+                json.writeEndObject();
+            }
+            json.writeEndArray();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Inflates the body with a field the client ignores, to simulate larger payloads.
+     */
+    private static void writePadding(final JsonGenerator json, final int bytes) throws IOException {
+        if (bytes > 0) {
+            json.writeStringField("notes", "x".repeat(bytes));
+        }
+    }
+
+    /**
+     * @param seed              seeds the generated data, and separately the order of delays and failures
+     * @param siteCount         sites {@code site-0} to {@code site-(siteCount-1)}
+     * @param devicesPerSite    devices on every site
+     * @param outageCount       outages in the {@code /outages} body
+     * @param matchRatio        fraction of outages belonging to a simulated site's device
+     * @param serverErrorRate   fraction of requests answered with a 503
+     * @param tooManyRequestsRate fraction of requests answered with a 429 and {@code retryAfter}
+     * @param paddingBytes      size of an extra field on every outage and device
+     * @param port              port to listen on, 0 for any free port
+     */
+    @Builder(toBuilder = true)
+    public record Settings(long seed, int siteCount, int devicesPerSite, int outageCount, double matchRatio,
+                           Latency outagesLatency, Latency siteInfoLatency, Latency siteOutagesLatency,
+                           double serverErrorRate, double tooManyRequestsRate, Duration retryAfter,
+                           int paddingBytes, int port) {
+
+        public static final Settings DEFAULTS = Settings.builder()
+                .seed(42)
+                .siteCount(10)
+                .devicesPerSite(10)
+                .outageCount(1_000)
+                .matchRatio(0.5)
+                .outagesLatency(Latency.none())
+                .siteInfoLatency(Latency.none())
+                .siteOutagesLatency(Latency.none())
+                .retryAfter(Duration.ofSeconds(1))
+                .build();
+    }
+
+    /**
+     * How long the simulator waits before answering a request.
+     */
+    @FunctionalInterface
+    public interface Latency {
+
+        long sampleNanos(SplittableRandom random);
+
+        static Latency none(){
+            return random -> 0;
+        }
+
+        static Latency fixed(final Duration delay){
+            final long nanos = delay.toNanos();
+            return random -> nanos;
+        }
+
+        static Latency uniform(final Duration min, final Duration max){
+            Assert.isTrue(min.compareTo(max) <= 0, "min cannot be longer than max.");
+            final long from = min.toNanos();
+            final long until = max.toNanos();
+            return random -> from == until ? from : random.nextLong(from, until);
+        }
+
+        /**
+         * Log-normal delays with the given median and 99th percentile, the long tail typical of a loaded service.
+         */
+        static Latency logNormal(final Duration median, final Duration p99){
+            Assert.isTrue(!median.isNegative() && !median.isZero(), "median must be positive.");
+            Assert.isTrue(p99.compareTo(median) >= 0, "p99 cannot be shorter than the median.");
+            final double mu = Math.log(median.toNanos());
+            //2.326 is the standard normal's 99th percentile
+            final double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / 2.326;
+            return random -> (long) Math.exp(mu + sigma * random.nextGaussian());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.siteoutageservice.simulator;
+
+import com.example.siteoutageservice.batch.BatchOutageService;
+import com.example.siteoutageservice.batch.BatchReport;
+import com.example.siteoutageservice.batch.SiteResult;
+import com.example.siteoutageservice.breaker.KrakenCircuitBreakers;
+import com.example.siteoutageservice.config.WebConfiguration;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.exception.KrakenClientException;
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.publish.DowntimeReportWriter;
+import com.example.siteoutageservice.publish.OutagePublisher;
+import com.example.siteoutageservice.publish.PublishFingerprintStore;
+import com.example.siteoutageservice.publish.PublishOutbox;
+import com.example.siteoutageservice.service.OutageDetailService;
+import com.example.siteoutageservice.service.OutageIndexProvider;
+import com.example.siteoutageservice.service.ParallelJoin;
+import com.example.siteoutageservice.snapshot.OutageSnapshotStore;
+import com.example.siteoutageservice.throttle.KrakenThrottle;
+import com.example.siteoutageservice.web.KrakenWebClient;
+import com.example.siteoutageservice.web.RequestCoalescer;
+import com.example.siteoutageservice.web.ResponseCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.util.unit.DataSize;
+import reactor.netty.http.client.HttpClient;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.stream.Collectors;
+
+import static com.example.siteoutageservice.config.WebConfiguration.OUTAGES_ENDPOINT;
+import static org.junit.jupiter.api.Assertions.*;
+
+class KrakenSimulatorTest {
+
+    private final List<KrakenSimulator> simulators = new ArrayList<>();
+
+    @AfterEach
+    void tearDown(){
+        simulators.forEach(KrakenSimulator::close);
+    }
+
+    @Test
+    void givenSameSeed_whenStarting_thenServeSameData(){
+        KrakenSimulator.Settings settings = KrakenSimulator.Settings.DEFAULTS;
+
+        List<Outage> outages = client(simulator(settings), 0).getOutages();
+
+        assertEquals(settings.outageCount(), outages.size());
+        assertEquals(outages, client(simulator(settings), 0).getOutages());
+        assertNotEquals(outages, client(simulator(settings.toBuilder().seed(7).build()), 0).getOutages());
+    }
+
+    @Test
+    void givenSimulatedSites_whenRunningBatch_thenPublishEverySite(){
+        KrakenSimulator kraken = simulator(KrakenSimulator.Settings.DEFAULTS.toBuilder()
+                .siteCount(20)
+                .devicesPerSite(5)
+                .outageCount(2_000)
+                .paddingBytes(100)
+                .build());
+        KrakenWebClient client = client(kraken, 0);
+        OutageDetailService outageDetailService = new OutageDetailService(client, "2022-01-01T00:00:00.000Z", "", KrakenMetrics.disabled(), 0, 1, ParallelJoin.disabled());
+        PublishFingerprintStore fingerprintStore = new PublishFingerprintStore(false, Path.of("unused"));
+        OutagePublisher outagePublisher = new OutagePublisher(outageDetailService, fingerprintStore,
+                new PublishOutbox(outageDetailService, fingerprintStore, KrakenMetrics.disabled(), Jackson2ObjectMapperBuilder.json().build(), false, Path.of("unused"), false, 1, Duration.ofSeconds(1), Duration.ofSeconds(1)));
+        BatchOutageService batchOutageService = new BatchOutageService(client, outageDetailService,
+                new OutageIndexProvider(client, outageDetailService, new OutageSnapshotStore(false, Path.of("unused"), Duration.ZERO), false),
+                outagePublisher, DowntimeReportWriter.disabled(), 4);
+
+        BatchReport report = batchOutageService.run(kraken.siteIds());
+
+        assertEquals(20, report.succeeded());
+        assertEquals(new HashSet<>(kraken.siteIds()), kraken.posted().keySet());
+        assertEquals(report.results().stream().collect(Collectors.toMap(SiteResult::siteId, SiteResult::outageCount)), kraken.posted());
+        assertTrue(kraken.posted().values().stream().anyMatch(count -> count > 0));
+        assertEquals(1, kraken.requestCount(OUTAGES_ENDPOINT));
+    }
+
+    @Test
+    void givenFailureRates_whenCalling_thenFailWithInjectedStatus(){
+        KrakenSimulator failing = simulator(KrakenSimulator.Settings.DEFAULTS.toBuilder().serverErrorRate(1).build());
+        KrakenSimulator throttling = simulator(KrakenSimulator.Settings.DEFAULTS.toBuilder().tooManyRequestsRate(1).retryAfter(Duration.ZERO).build());
+
+        KrakenServerException serverException = assertThrows(KrakenServerException.class, () -> client(failing, 1).getOutages());
+        KrakenClientException clientException = assertThrows(KrakenClientException.class, () -> client(throttling, 1).getSiteInfoFor("site-0"));
+
+        assertEquals(503, serverException.getStatus());
+        assertEquals(429, clientException.getStatus());
+        assertEquals(2, failing.failureCount(503));
+        assertEquals(2, throttling.failureCount(429));
+    }
+
+    @Test
+    void givenLatencyAndUnknownSite_whenGettingSiteInfo_thenWaitThenAnswer404(){
+        KrakenSimulator kraken = simulator(KrakenSimulator.Settings.DEFAULTS.toBuilder()
+                .siteInfoLatency(KrakenSimulator.Latency.fixed(Duration.ofMillis(100)))
+                .build());
+        KrakenWebClient client = client(kraken, 0);
+
+        long start = System.nanoTime();
+        Site site = client.getSiteInfoFor("site-3").orElseThrow();
+
+        assertTrue(System.nanoTime() - start >= Duration.ofMillis(100).toNanos());
+        assertEquals(KrakenSimulator.Settings.DEFAULTS.devicesPerSite(), site.devices().size());
+        assertEquals(404, assertThrows(KrakenClientException.class, () -> client.getSiteInfoFor("site-10")).getStatus());
+    }
+
+    @Test
+    void givenLogNormalLatency_whenSampling_thenMatchMedianAndP99(){
+        KrakenSimulator.Latency latency = KrakenSimulator.Latency.logNormal(Duration.ofMillis(20), Duration.ofMillis(200));
+        SplittableRandom random = new SplittableRandom(1);
+
+        long[] samples = new long[100_000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.sampleNanos(random);
+        }
+        Arrays.sort(samples);
+
+        assertEquals(20, samples[samples.length / 2] / 1_000_000.0, 1);
+        assertEquals(200, samples[samples.length * 99 / 100] / 1_000_000.0, 15);
+    }
+
+    private KrakenSimulator simulator(KrakenSimulator.Settings settings){
+        KrakenSimulator simulator = KrakenSimulator.start(settings);
+        simulators.add(simulator);
+        return simulator;
+    }
+
+    private static KrakenWebClient client(KrakenSimulator kraken, long maxRetries){
+        KrakenMetrics krakenMetrics = KrakenMetrics.disabled();
+        return new KrakenWebClient(new WebConfiguration().webclient(kraken.baseUrl(), "abc-123", DataSize.ofMegabytes(16), HttpClient.create(),
+                krakenMetrics, KrakenThrottle.disabled(), KrakenCircuitBreakers.disabled()), maxRetries, 0, ResponseCache.disabled(), krakenMetrics, 0.5, Duration.ofSeconds(60), RequestCoalescer.disabled());
+    }
+}
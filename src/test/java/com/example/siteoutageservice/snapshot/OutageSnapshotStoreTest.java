@@ -0,0 +1,119 @@
+package com.example.siteoutageservice.snapshot;
+
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.index.OutageRecord;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutageSnapshotStoreTest {
+
+    private final Instant now = Instant.parse("2023-04-01T12:00:00Z");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void givenWrittenSnapshot_whenLoadingWithinMaxAge_thenReturnSameOutages() throws IOException {
+        List<Outage> outages = new ObjectMapper().readValue(new File("src/test/resources/outages.json"), new TypeReference<>() {});
+        List<OutageRecord> records = outages.stream().map(OutageRecord::of).toList();
+        Path path = dir.resolve("outages.snapshot");
+
+        store(path, now).write(records);
+        Optional<List<OutageRecord>> loaded = store(path, now.plusSeconds(299)).loadFresh();
+
+        assertEquals(Optional.of(records), loaded);
+    }
+
+    @Test
+    void givenOutageWithoutEnd_whenRoundTripping_thenKeepNullEnd(){
+        OutageRecord ongoing = OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", null));
+        Path path = dir.resolve("outages.snapshot");
+
+        store(path, now).write(List.of(ongoing));
+
+        assertEquals(Optional.of(List.of(ongoing)), store(path, now).loadFresh());
+    }
+
+    @Test
+    void givenSnapshotOlderThanMaxAge_whenLoading_thenReturnEmpty(){
+        Path path = dir.resolve("outages.snapshot");
+        store(path, now).write(List.of(OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"))));
+
+        assertEquals(Optional.empty(), store(path, now.plusSeconds(301)).loadFresh());
+    }
+
+    @Test
+    void givenSnapshotWrittenInTheFuture_whenLoading_thenReturnEmpty(){
+        Path path = dir.resolve("outages.snapshot");
+        store(path, now.plusSeconds(60)).write(List.of(OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"))));
+
+        assertEquals(Optional.empty(), store(path, now).loadFresh());
+    }
+
+    @Test
+    void givenCorruptSnapshot_whenLoading_thenReturnEmpty() throws IOException {
+        Path path = dir.resolve("outages.snapshot");
+        store(path, now).write(Arrays.asList(
+                OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z")),
+                OutageRecord.of(new Outage("device-2", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"))));
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, OutageSnapshotStore.HEADER_BYTES + OutageSnapshotStore.RECORD_BYTES));
+
+        assertEquals(Optional.empty(), store(path, now).loadFresh());
+    }
+
+    @Test
+    void givenRecordCountOverflowingToAnOffsetInTheFile_whenLoading_thenReturnEmpty() throws IOException {
+        Path path = dir.resolve("outages.snapshot");
+        store(path, now).write(List.of(OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"))));
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        //1 << 30 records of 28 bytes wrap a 32-bit offset round to just past the header
+        bytes.putInt(OutageSnapshotStore.HEADER_BYTES - 4, 1 << 30);
+        Files.write(path, bytes.array());
+
+        assertEquals(Optional.empty(), store(path, now).loadFresh());
+    }
+
+    @Test
+    void givenNegativeStringLength_whenLoading_thenReturnEmpty() throws IOException {
+        Path path = dir.resolve("outages.snapshot");
+        store(path, now).write(List.of(OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", null))));
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        bytes.putInt(OutageSnapshotStore.HEADER_BYTES + OutageSnapshotStore.RECORD_BYTES + 4, -1);
+        Files.write(path, bytes.array());
+
+        assertEquals(Optional.empty(), store(path, now).loadFresh());
+    }
+
+    @Test
+    void givenDisabledStore_whenWriting_thenWriteNothing(){
+        Path path = dir.resolve("outages.snapshot");
+        OutageSnapshotStore store = new OutageSnapshotStore(false, path, Duration.ofMinutes(5), Clock.fixed(now, ZoneOffset.UTC));
+
+        store.write(List.of(OutageRecord.of(new Outage("device-1", "2022-01-01T00:00:00.000Z", null))));
+
+        assertFalse(Files.exists(path));
+        assertEquals(Optional.empty(), store.loadFresh());
+    }
+
+    private OutageSnapshotStore store(Path path, Instant at){
+        return new OutageSnapshotStore(true, path, Duration.ofMinutes(5), Clock.fixed(at, ZoneOffset.UTC));
+    }
+}
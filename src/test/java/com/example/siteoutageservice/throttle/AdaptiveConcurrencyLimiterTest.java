@@ -0,0 +1,125 @@
+package com.example.siteoutageservice.throttle;
+
+import com.example.siteoutageservice.throttle.AdaptiveConcurrencyLimiter.Outcome;
+import com.example.siteoutageservice.throttle.AdaptiveConcurrencyLimiter.Permit;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveConcurrencyLimiterTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    void givenLimitReached_whenAcquiring_thenWaitForARelease(){
+        AdaptiveConcurrencyLimiter limiter = limiter(2);
+        Permit first = limiter.acquire().block();
+        limiter.acquire().block();
+
+        AtomicReference<Permit> waiting = new AtomicReference<>();
+        limiter.acquire().subscribe(waiting::set);
+        assertNull(waiting.get());
+
+        first.release(Outcome.IGNORED);
+
+        assertNotNull(waiting.get());
+        assertEquals(2, limiter.getInFlight());
+    }
+
+    @Test
+    void givenOverloaded_whenReleasing_thenCutLimitDownToMin(){
+        AdaptiveConcurrencyLimiter limiter = limiter(10);
+
+        limiter.acquire().block().release(Outcome.OVERLOADED);
+        assertEquals(5, limiter.getLimit());
+
+        for (int i = 0; i < 10; i++) {
+            limiter.acquire().block().release(Outcome.OVERLOADED);
+        }
+        assertEquals(1, limiter.getLimit());
+    }
+
+    @Test
+    void givenSlowSuccess_whenReleasing_thenCutLimit(){
+        AdaptiveConcurrencyLimiter limiter = limiter(10);
+        Permit permit = limiter.acquire().block();
+
+        nanoTime.addAndGet(Duration.ofSeconds(2).toNanos());
+        permit.release(Outcome.SUCCESS);
+
+        assertEquals(5, limiter.getLimit());
+    }
+
+    @Test
+    void givenSaturatedAndHealthy_whenReleasing_thenRaiseLimitAdditively(){
+        AdaptiveConcurrencyLimiter limiter = limiter(2);
+
+        for (int round = 0; round < 3; round++) {
+            Permit first = limiter.acquire().block();
+            Permit second = limiter.acquire().block();
+            first.release(Outcome.SUCCESS);
+            second.release(Outcome.SUCCESS);
+        }
+
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void givenUnderusedLimit_whenReleasingSuccess_thenKeepLimit(){
+        AdaptiveConcurrencyLimiter limiter = limiter(4);
+
+        limiter.acquire().block().release(Outcome.SUCCESS);
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    @Test
+    void givenPermitReleasedTwice_whenReleasing_thenOnlyCountOnce(){
+        AdaptiveConcurrencyLimiter limiter = limiter(2);
+        Permit permit = limiter.acquire().block();
+        limiter.acquire().block();
+
+        permit.release(Outcome.IGNORED);
+        permit.release(Outcome.IGNORED);
+
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    @Test
+    void givenWaiterCancelled_whenReleasing_thenPermitNotHandedToIt(){
+        AdaptiveConcurrencyLimiter limiter = limiter(1);
+        Permit permit = limiter.acquire().block();
+        Disposable waiter = limiter.acquire().subscribe();
+
+        waiter.dispose();
+        permit.release(Outcome.IGNORED);
+
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void givenWaiterCancelledWhileBeingGranted_whenReleasing_thenGiveItsPermitBack(){
+        AdaptiveConcurrencyLimiter limiter = limiter(1);
+        Permit permit = limiter.acquire().block();
+        AtomicReference<Disposable> second = new AtomicReference<>();
+        AtomicReference<Permit> secondPermit = new AtomicReference<>();
+        //the first waiter is completed before the second, and cancels it in between, after both were granted
+        limiter.acquire().subscribe(granted -> second.get().dispose());
+        second.set(limiter.acquire().subscribe(secondPermit::set));
+
+        permit.release(Outcome.SUCCESS);
+
+        assertEquals(2, limiter.getLimit());
+        assertNull(secondPermit.get());
+        assertEquals(1, limiter.getInFlight());
+    }
+
+    private AdaptiveConcurrencyLimiter limiter(int initialLimit){
+        return new AdaptiveConcurrencyLimiter(initialLimit, 1, 20, 0.5, Duration.ofSeconds(1), nanoTime::get);
+    }
+}
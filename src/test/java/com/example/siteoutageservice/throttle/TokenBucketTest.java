@@ -0,0 +1,86 @@
+package com.example.siteoutageservice.throttle;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    private final AtomicLong nanoTime = new AtomicLong();
+
+    @Test
+    void givenTokensLeft_whenReserving_thenNoWaitUpToBurst(){
+        TokenBucket bucket = new TokenBucket(10, 3, nanoTime::get);
+
+        assertEquals(Duration.ZERO, bucket.reserve());
+        assertEquals(Duration.ZERO, bucket.reserve());
+        assertEquals(Duration.ZERO, bucket.reserve());
+        assertEquals(Duration.ofMillis(100), bucket.reserve());
+    }
+
+    @Test
+    void givenEmptyBucket_whenReservingRepeatedly_thenEachWaitsBehindThePrevious(){
+        TokenBucket bucket = new TokenBucket(10, 1, nanoTime::get);
+        bucket.reserve();
+
+        assertEquals(Duration.ofMillis(100), bucket.reserve());
+        assertEquals(Duration.ofMillis(200), bucket.reserve());
+    }
+
+    @Test
+    void givenReleasedReservation_whenReserving_thenNextCallerTakesItsPlace(){
+        TokenBucket bucket = new TokenBucket(10, 1, nanoTime::get);
+        bucket.reserve();
+        bucket.reserve();
+
+        bucket.release();
+
+        assertEquals(Duration.ofMillis(100), bucket.reserve());
+    }
+
+    @Test
+    void givenFullBucket_whenReleasing_thenHoldNoMoreThanBurst(){
+        TokenBucket bucket = new TokenBucket(10, 1, nanoTime::get);
+
+        bucket.release();
+
+        assertEquals(Duration.ZERO, bucket.reserve());
+        assertEquals(Duration.ofMillis(100), bucket.reserve());
+    }
+
+    @Test
+    void givenLongIdle_whenReserving_thenRefillNoMoreThanBurst(){
+        TokenBucket bucket = new TokenBucket(10, 2, nanoTime::get);
+        bucket.reserve();
+        bucket.reserve();
+
+        nanoTime.addAndGet(Duration.ofMinutes(1).toNanos());
+
+        assertEquals(Duration.ZERO, bucket.reserve());
+        assertEquals(Duration.ZERO, bucket.reserve());
+        assertEquals(Duration.ofMillis(100), bucket.reserve());
+    }
+
+    @Test
+    void givenNoRate_whenCreating_thenThrowIllegalArgument(){
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1, nanoTime::get));
+    }
+
+    @Test
+    void givenSecondsOrHttpDate_whenParsingRetryAfter_thenReturnTimeToWait(){
+        Clock clock = Clock.fixed(Instant.parse("2022-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+        assertEquals(Optional.of(Duration.ofSeconds(120)), RetryAfter.parse(" 120 ", clock));
+        assertEquals(Optional.of(Duration.ofSeconds(30)), RetryAfter.parse("Sat, 01 Jan 2022 00:00:30 GMT", clock));
+        assertEquals(Optional.of(Duration.ZERO), RetryAfter.parse("Fri, 31 Dec 2021 23:59:00 GMT", clock));
+        assertEquals(Optional.empty(), RetryAfter.parse("soon", clock));
+        assertEquals(Optional.empty(), RetryAfter.parse(null, clock));
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.siteoutageservice.web;
+
+import com.example.siteoutageservice.breaker.KrakenCircuitBreakers;
+import com.example.siteoutageservice.config.WebConfiguration;
+import com.example.siteoutageservice.dto.Outage;
+import com.example.siteoutageservice.dto.Site;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.throttle.KrakenThrottle;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+import reactor.netty.http.client.HttpClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingKrakenWebClientTest {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private MockWebServer mockKraken;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        mockKraken = new MockWebServer();
+        mockKraken.start();
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        mockKraken.shutdown();
+    }
+
+    @Test
+    void givenFreshEntry_whenCallingAgain_thenServeFromCacheWithoutRequest() throws JsonProcessingException {
+        KrakenWebClient krakenWebClient = client(Duration.ofMinutes(5), 10);
+        Site site = Site.builder().id("site-1").build();
+        mockKraken.enqueue(json(mapper.writeValueAsString(site)));
+
+        assertEquals(site, krakenWebClient.getSiteInfoFor("site-1").orElseThrow());
+        assertEquals(site, krakenWebClient.getSiteInfoFor("site-1").orElseThrow());
+
+        assertEquals(1, mockKraken.getRequestCount());
+        assertTrue(krakenWebClient.isCacheEnabled());
+        assertEquals(new ResponseCache.CacheStats(1, 1, 0, 0, 1), krakenWebClient.getCacheStats());
+    }
+
+    @Test
+    void givenStaleEntryWithEtag_whenServerRespondsNotModified_thenReuseCachedBody() throws Exception {
+        KrakenWebClient krakenWebClient = client(Duration.ZERO, 10);
+        List<Outage> outages = Collections.singletonList(new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"));
+        mockKraken.enqueue(json(mapper.writeValueAsString(outages))
+                .addHeader("ETag", "\"v1\"")
+                .addHeader("Last-Modified", "Sat, 01 Jan 2022 00:00:00 GMT"));
+        mockKraken.enqueue(new MockResponse().setResponseCode(304));
+
+        assertEquals(outages, krakenWebClient.getOutages());
+        assertEquals(outages, krakenWebClient.getOutages());
+
+        mockKraken.takeRequest(1, TimeUnit.SECONDS);
+        RecordedRequest conditional = mockKraken.takeRequest(1, TimeUnit.SECONDS);
+        assertEquals("\"v1\"", conditional.getHeader("If-None-Match"));
+        assertEquals("Sat, 01 Jan 2022 00:00:00 GMT", conditional.getHeader("If-Modified-Since"));
+        assertEquals(new ResponseCache.CacheStats(0, 1, 1, 0, 1), krakenWebClient.getCacheStats());
+    }
+
+    @Test
+    void givenStaleEntryWithEtag_whenServerRespondsWithNewBody_thenReplaceCachedBody() throws JsonProcessingException {
+        KrakenWebClient krakenWebClient = client(Duration.ZERO, 10);
+        List<Outage> first = Collections.singletonList(new Outage("device-1", "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"));
+        List<Outage> second = List.of(first.get(0), new Outage("device-2", "2022-02-01T00:00:00.000Z", "2022-02-02T00:00:00.000Z"));
+        mockKraken.enqueue(json(mapper.writeValueAsString(first)).addHeader("ETag", "\"v1\""));
+        mockKraken.enqueue(json(mapper.writeValueAsString(second)).addHeader("ETag", "\"v2\""));
+
+        assertEquals(first, krakenWebClient.getOutages());
+        assertEquals(second, krakenWebClient.getOutages());
+
+        assertEquals(new ResponseCache.CacheStats(0, 2, 0, 0, 1), krakenWebClient.getCacheStats());
+    }
+
+    @Test
+    void givenMoreEntriesThanMax_whenCaching_thenEvictLeastRecentlyUsed() throws JsonProcessingException {
+        KrakenWebClient krakenWebClient = client(Duration.ofMinutes(5), 1);
+        mockKraken.enqueue(json(mapper.writeValueAsString(Site.builder().id("site-1").build())));
+        mockKraken.enqueue(json(mapper.writeValueAsString(Site.builder().id("site-2").build())));
+        mockKraken.enqueue(json(mapper.writeValueAsString(Site.builder().id("site-1").build())));
+
+        krakenWebClient.getSiteInfoFor("site-1");
+        krakenWebClient.getSiteInfoFor("site-2");
+        krakenWebClient.getSiteInfoFor("site-1");
+
+        assertEquals(3, mockKraken.getRequestCount());
+        assertEquals(new ResponseCache.CacheStats(0, 3, 0, 2, 1), krakenWebClient.getCacheStats());
+    }
+
+    @Test
+    void givenMeterRegistry_whenCaching_thenExposeHitsMissesAndRevalidationsAsMeters() throws JsonProcessingException {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        KrakenWebClient krakenWebClient = client(Duration.ofMinutes(5), 10, new KrakenMetrics(meterRegistry));
+        mockKraken.enqueue(json(mapper.writeValueAsString(Site.builder().id("site-1").build())));
+
+        krakenWebClient.getSiteInfoFor("site-1");
+        krakenWebClient.getSiteInfoFor("site-1");
+
+        assertEquals(1, meterRegistry.get("kraken.client.cache.requests").tag("result", "hit").functionCounter().count());
+        assertEquals(1, meterRegistry.get("kraken.client.cache.requests").tag("result", "miss").functionCounter().count());
+        assertEquals(0, meterRegistry.get("kraken.client.cache.requests").tag("result", "revalidated").functionCounter().count());
+        assertEquals(0, meterRegistry.get("kraken.client.cache.evictions").functionCounter().count());
+        assertEquals(1, meterRegistry.get("kraken.client.cache.size").gauge().value());
+    }
+
+    private KrakenWebClient client(Duration ttl, int maxEntries){
+        return client(ttl, maxEntries, KrakenMetrics.disabled());
+    }
+
+    private KrakenWebClient client(Duration ttl, int maxEntries, KrakenMetrics krakenMetrics){
+        WebConfiguration configuration = new WebConfiguration();
+        return new KrakenWebClient(configuration.webclient("http://localhost:" + mockKraken.getPort(), "abc-123", DataSize.ofMegabytes(1), HttpClient.create(), KrakenMetrics.disabled(), KrakenThrottle.disabled(), KrakenCircuitBreakers.disabled()),
+                1, 1, new ResponseCache(true, ttl, maxEntries), krakenMetrics, 0.5, Duration.ofSeconds(60), RequestCoalescer.disabled());
+    }
+
+    private MockResponse json(String body){
+        return new MockResponse()
+                .setResponseCode(200)
+                .setBody(body)
+                .addHeader("Content-Type", "application/json");
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.siteoutageservice.web;
 
+import com.example.siteoutageservice.breaker.KrakenCircuitBreakers;
 import com.example.siteoutageservice.config.WebConfiguration;
 import com.example.siteoutageservice.dto.DeviceOutage;
 import com.example.siteoutageservice.dto.ErrorMessage;
@@ -7,20 +8,32 @@ import com.example.siteoutageservice.dto.Outage;
 import com.example.siteoutageservice.dto.Site;
 import com.example.siteoutageservice.exception.KrakenClientException;
 import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import com.example.siteoutageservice.throttle.KrakenThrottle;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBufferLimitException;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
 
 import java.io.IOException;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -33,6 +46,7 @@ public class KrakenWebClientTest {
 
     public KrakenWebClient krakenWebClient;
 
+    private SimpleMeterRegistry meterRegistry;
 
     @BeforeAll
     public static void setUp() throws IOException {
@@ -43,7 +57,10 @@ public class KrakenWebClientTest {
     @BeforeEach
     void initialize() {
         WebConfiguration configuration = new WebConfiguration();
-        krakenWebClient = new KrakenWebClient(configuration.webclient("http://localhost:"+ mockKraken.getPort(), "abc-123"),1, 1);
+        meterRegistry = new SimpleMeterRegistry();
+        KrakenMetrics krakenMetrics = new KrakenMetrics(meterRegistry);
+        krakenWebClient = new KrakenWebClient(configuration.webclient("http://localhost:"+ mockKraken.getPort(), "abc-123", DataSize.ofKilobytes(1), HttpClient.create(), krakenMetrics, KrakenThrottle.disabled(), KrakenCircuitBreakers.disabled()),
+                1, 1, ResponseCache.disabled(), krakenMetrics, 0.5, Duration.ofSeconds(60), RequestCoalescer.disabled());
     }
 
     @AfterAll
@@ -83,6 +100,26 @@ public class KrakenWebClientTest {
         assertTrue(outageResponse.isEmpty());
     }
 
+    @Test
+    void givenBodyLargerThanMaxInMemorySize_whenStreamingOutages_thenShouldEmitEveryOutage() throws JsonProcessingException {
+        List<Outage> outages = IntStream.range(0, 200)
+                .mapToObj(i -> new Outage("device-" + i, "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"))
+                .toList();
+        String body = mapper.writeValueAsString(outages);
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(body)
+                .addHeader("Content-Type", "application/json"));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(body)
+                .addHeader("Content-Type", "application/json"));
+
+        assertEquals(outages, krakenWebClient.streamOutages().collectList().block());
+        Exception exception = assertThrows(WebClientResponseException.class, () -> krakenWebClient.getOutages());
+        assertInstanceOf(DataBufferLimitException.class, exception.getCause());
+    }
+
     @Test
     void given200_whenCallingGetSite_thenShouldDeserialise() throws JsonProcessingException {
         Site site = Site.builder()
@@ -112,6 +149,38 @@ public class KrakenWebClientTest {
     }
 
 
+    @Test
+    void given200_whenCallingGetSiteAsync_thenShouldEmitSite() throws JsonProcessingException {
+        Site site = Site.builder()
+                .id("site-id-1")
+                .build();
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(mapper.writeValueAsString(site))
+                .addHeader("Content-Type", "application/json"));
+
+        Mono<Site> siteResponse = krakenWebClient.getSiteInfoForAsync("site-id-1");
+
+        assertEquals(site, siteResponse.block());
+    }
+
+    @Test
+    void given5xxAfterRetriesExhausted_whenCallingGetOutagesAsync_thenShouldEmitServerException() throws JsonProcessingException {
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(500)
+                .setBody(mapper.writeValueAsString(new ErrorMessage("error 1")))
+                .addHeader("Content-Type", "application/json"));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(503)
+                .setBody(mapper.writeValueAsString(new ErrorMessage("error 2")))
+                .addHeader("Content-Type", "application/json"));
+
+        Mono<List<Outage>> outageResponse = krakenWebClient.getOutagesAsync();
+
+        Exception exception = assertThrows(KrakenServerException.class, outageResponse::block);
+        assertTrue(exception.getMessage().contains("error 2"));
+    }
+
     @Test
     void given5xx_thenShouldRetry() throws JsonProcessingException {
         Outage outage = Outage.builder()
@@ -183,6 +252,74 @@ public class KrakenWebClientTest {
         assertTrue(actualMessage.contains("error 1"));
     }
 
+    @Test
+    void given429WithRetryAfter_whenCallingGetOutages_thenShouldWaitAndRetry() throws JsonProcessingException {
+        Outage outage = Outage.builder()
+                .id("outage-1")
+                .build();
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(429)
+                .setBody(mapper.writeValueAsString(new ErrorMessage("slow down")))
+                .addHeader("Content-Type", "application/json")
+                .addHeader("Retry-After", "1"));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(mapper.writeValueAsString(Collections.singletonList(outage)))
+                .addHeader("Content-Type", "application/json"));
+
+        long start = System.nanoTime();
+        List<Outage> outageResponse = krakenWebClient.getOutages();
+
+        assertEquals(Collections.singletonList(outage), outageResponse);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) >= 0);
+    }
+
+    @Test
+    void givenBodiless429WithRetryAfter_whenCallingGetOutages_thenShouldWaitAndRetry() throws JsonProcessingException {
+        Outage outage = Outage.builder()
+                .id("outage-1")
+                .build();
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(429)
+                .addHeader("Retry-After", "1"));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(mapper.writeValueAsString(Collections.singletonList(outage)))
+                .addHeader("Content-Type", "application/json"));
+
+        long start = System.nanoTime();
+        List<Outage> outageResponse = krakenWebClient.getOutages();
+
+        assertEquals(Collections.singletonList(outage), outageResponse);
+        assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(1)) >= 0);
+    }
+
+    @Test
+    void givenBodiless5xxAfterRetriesExhausted_whenCallingGetOutages_thenShouldThrowServerExceptionWithStatus() {
+        mockKraken.enqueue(new MockResponse().setResponseCode(503));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(503)
+                .setBody("<html>Service Unavailable</html>")
+                .addHeader("Content-Type", "text/html"));
+
+        KrakenServerException exception = assertThrows(KrakenServerException.class,
+                () -> krakenWebClient.getOutages());
+
+        assertEquals(503, exception.getStatus());
+        assertTrue(exception.getMessage().contains("503"));
+    }
+
+    @Test
+    void givenBodiless429_whenCallingPost_thenShouldThrowClientException() {
+        DeviceOutage deviceOutage = new DeviceOutage("deviceID", "some-name", "", "");
+        mockKraken.enqueue(new MockResponse().setResponseCode(429));
+
+        KrakenClientException exception = assertThrows(KrakenClientException.class,
+                () -> krakenWebClient.postOutagesFor("siteId", Collections.singletonList(deviceOutage)));
+
+        assertEquals(429, exception.getStatus());
+    }
+
     @Test
     void given200_whenCallingPost_thenShouldNotThrow() {
         DeviceOutage deviceOutage = new DeviceOutage("deviceID", "some-name", "", "");
@@ -193,4 +330,99 @@ public class KrakenWebClientTest {
 
         assertDoesNotThrow(() -> krakenWebClient.postOutagesFor("siteId", Collections.singletonList(deviceOutage)));
     }
-}
\ No newline at end of file
+
+    @Test
+    void givenChunkFails_whenPostingInChunks_thenShouldRetryOnlyThatChunk() throws Exception {
+        while (mockKraken.takeRequest(0, TimeUnit.MILLISECONDS) != null) {
+            //drop requests left by earlier tests
+        }
+        List<DeviceOutage> deviceOutages = IntStream.range(0, 5)
+                .mapToObj(i -> new DeviceOutage("device-" + i, "device " + i, "2022-01-01T00:00:00.000Z", "2022-01-02T00:00:00.000Z"))
+                .toList();
+        mockKraken.enqueue(new MockResponse().setResponseCode(200));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(503)
+                .setBody(mapper.writeValueAsString(new ErrorMessage("unavailable")))
+                .addHeader("Content-Type", "application/json"));
+        mockKraken.enqueue(new MockResponse().setResponseCode(200));
+        mockKraken.enqueue(new MockResponse().setResponseCode(200));
+
+        krakenWebClient.postOutagesInChunksAsync("siteId", Flux.fromIterable(deviceOutages), 2, 1).block();
+
+        List<String> bodies = IntStream.range(0, 4)
+                .mapToObj(i -> takeRequestBody())
+                .toList();
+        assertEquals(mapper.writeValueAsString(deviceOutages.subList(0, 2)), bodies.get(0));
+        assertEquals(mapper.writeValueAsString(deviceOutages.subList(2, 4)), bodies.get(1));
+        assertEquals(bodies.get(1), bodies.get(2));
+        assertEquals(mapper.writeValueAsString(deviceOutages.subList(4, 5)), bodies.get(3));
+    }
+
+    @Test
+    void given5xxThen200_whenCallingGetOutages_thenShouldRecordRequestsRetryAndResponseSize() throws JsonProcessingException {
+        String body = mapper.writeValueAsString(Collections.singletonList(Outage.builder().id("outage-1").build()));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(503)
+                .setBody(mapper.writeValueAsString(new ErrorMessage("error")))
+                .addHeader("Content-Type", "application/json"));
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setBody(body)
+                .addHeader("Content-Type", "application/json"));
+
+        krakenWebClient.getOutages();
+
+        assertEquals(1, meterRegistry.get("kraken.client.requests").tags("endpoint", "/outages", "method", "GET", "status", "503").timer().count());
+        assertEquals(1, meterRegistry.get("kraken.client.requests").tags("endpoint", "/outages", "method", "GET", "status", "200").timer().count());
+        assertEquals(1, meterRegistry.get("kraken.client.responses").tags("endpoint", "/outages", "status", "200").counter().count());
+        assertEquals(1, meterRegistry.get("kraken.client.retries").tag("endpoint", "/outages").counter().count());
+        //min backoff is one second, less jitter
+        assertTrue(meterRegistry.get("kraken.client.retry.backoff").tag("endpoint", "/outages").timer().totalTime(TimeUnit.MILLISECONDS) >= 500);
+        assertEquals(body.length(), meterRegistry.get("kraken.client.response.size").tag("endpoint", "/outages").summary().max());
+        assertEquals(1, meterRegistry.get("kraken.client.decode").tag("endpoint", "/outages").timer().count());
+    }
+
+    @Test
+    void given4xx_whenCallingGetSite_thenShouldTagEndpointWithoutSiteId() throws JsonProcessingException {
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(404)
+                .setBody(mapper.writeValueAsString(new ErrorMessage("error 1")))
+                .addHeader("Content-Type", "application/json"));
+
+        assertThrows(KrakenClientException.class, () -> krakenWebClient.getSiteInfoFor("site-id-1"));
+
+        assertEquals(1, meterRegistry.get("kraken.client.responses").tags("endpoint", "/site-info", "status", "404").counter().count());
+        assertTrue(meterRegistry.find("kraken.client.retries").counters().isEmpty());
+    }
+
+    @Test
+    void givenConcurrentIdenticalGets_whenCoalescing_thenMakeOneRequestAndShareResult() throws JsonProcessingException {
+        WebConfiguration configuration = new WebConfiguration();
+        KrakenMetrics krakenMetrics = new KrakenMetrics(meterRegistry);
+        KrakenWebClient coalescing = new KrakenWebClient(configuration.webclient("http://localhost:" + mockKraken.getPort(), "abc-123", DataSize.ofKilobytes(1), HttpClient.create(), krakenMetrics, KrakenThrottle.disabled(), KrakenCircuitBreakers.disabled()),
+                1, 1, ResponseCache.disabled(), krakenMetrics, 0.5, Duration.ofSeconds(60), new RequestCoalescer(true, krakenMetrics));
+        Site site = Site.builder().id("site-1").name("site").build();
+        mockKraken.enqueue(new MockResponse()
+                .setResponseCode(200)
+                .setHeadersDelay(300, TimeUnit.MILLISECONDS)
+                .setBody(mapper.writeValueAsString(site))
+                .addHeader("Content-Type", "application/json"));
+        int requestsBefore = mockKraken.getRequestCount();
+
+        List<Site> sites = Flux.merge(IntStream.range(0, 3).mapToObj(i -> coalescing.getSiteInfoForAsync("site-1")).toList())
+                .collectList()
+                .block(Duration.ofSeconds(5));
+
+        assertEquals(List.of(site, site, site), sites);
+        assertEquals(1, mockKraken.getRequestCount() - requestsBefore);
+        assertEquals(2, meterRegistry.get("kraken.client.coalesced").tag("endpoint", "/site-info").counter().count());
+    }
+
+    private String takeRequestBody(){
+        try {
+            return mockKraken.takeRequest(5, TimeUnit.SECONDS).getBody().readUtf8();
+        } catch (InterruptedException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.siteoutageservice.web;
+
+import com.example.siteoutageservice.exception.KrakenServerException;
+import com.example.siteoutageservice.metrics.KrakenMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestCoalescerTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RequestCoalescer coalescer = new RequestCoalescer(true, new KrakenMetrics(meterRegistry));
+
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Test
+    void givenCallInFlight_whenSameKeyRequested_thenShareOneCallAndResult(){
+        Sinks.One<String> response = Sinks.one();
+
+        Mono<String> first = coalescer.coalesce("/site-info/{siteId}", "site-1", call(response));
+        Mono<String> second = coalescer.coalesce("/site-info/{siteId}", "site-1", call(Sinks.one()));
+        Sinks.One<String> firstResult = subscribe(first);
+        Sinks.One<String> secondResult = subscribe(second);
+
+        response.tryEmitValue("site");
+
+        assertEquals("site", firstResult.asMono().block());
+        assertEquals("site", secondResult.asMono().block());
+        assertEquals(1, calls.get());
+        assertEquals(1, coalescer.getCoalesced());
+        assertEquals(1, meterRegistry.get("kraken.client.coalesced").tag("endpoint", "/site-info").counter().count());
+    }
+
+    @Test
+    void givenSharedCallFails_whenWaiting_thenEveryCallerGetsTheError(){
+        Sinks.One<String> response = Sinks.one();
+
+        Sinks.One<String> firstResult = subscribe(coalescer.coalesce("/outages", "outages", call(response)));
+        Sinks.One<String> secondResult = subscribe(coalescer.coalesce("/outages", "outages", call(response)));
+
+        response.tryEmitError(new KrakenServerException("down", 500));
+
+        assertThrows(KrakenServerException.class, () -> firstResult.asMono().block());
+        assertThrows(KrakenServerException.class, () -> secondResult.asMono().block());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void givenCallFinished_whenSameKeyRequestedAgain_thenMakeNewCall(){
+        assertEquals("first", coalescer.coalesce("/outages", "outages", call(Mono.just("first"))).block());
+        assertEquals("second", coalescer.coalesce("/outages", "outages", call(Mono.just("second"))).block());
+
+        assertEquals(2, calls.get());
+        assertEquals(0, coalescer.getCoalesced());
+    }
+
+    @Test
+    void givenDifferentKeys_whenInFlightTogether_thenMakeOneCallEach(){
+        Sinks.One<String> response = Sinks.one();
+
+        subscribe(coalescer.coalesce("/site-info/{siteId}", "site-1", call(response)));
+        subscribe(coalescer.coalesce("/site-info/{siteId}", "site-2", call(response)));
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void givenDisabled_whenSameKeyRequested_thenMakeEveryCall(){
+        RequestCoalescer disabled = RequestCoalescer.disabled();
+        Sinks.One<String> response = Sinks.one();
+
+        subscribe(disabled.coalesce("/outages", "outages", call(response)));
+        subscribe(disabled.coalesce("/outages", "outages", call(response)));
+
+        assertEquals(2, calls.get());
+    }
+
+    private Mono<String> call(Sinks.One<String> response){
+        return call(response.asMono());
+    }
+
+    private Mono<String> call(Mono<String> response){
+        return Mono.defer(() -> {
+            calls.incrementAndGet();
+            return response;
+        });
+    }
+
+    private static Sinks.One<String> subscribe(Mono<String> mono){
+        Sinks.One<String> result = Sinks.one();
+        mono.subscribe(result::tryEmitValue, result::tryEmitError, result::tryEmitEmpty);
+        return result;
+    }
+}